@@ -0,0 +1,35 @@
+package br.com.renatoschlogel.libraryapi.benchmark;
+
+import br.com.renatoschlogel.libraryapi.api.dto.BookDTO;
+import br.com.renatoschlogel.libraryapi.model.entity.Book;
+
+/**
+ * Massa de dados comum aos benchmarks.
+ */
+final class BenchmarkData {
+
+	private static final String[] TOPICS = {"Java", "Spring", "Arquitetura", "Testes", "Banco de Dados", "Algoritmos", "Redes", "Segurança"};
+	private static final String[] AUTHORS = {"Robert Martin", "Martin Fowler", "Kent Beck", "Eric Evans", "Joshua Bloch"};
+
+	private BenchmarkData() {
+	}
+
+	static Book book(int i) {
+		return Book.builder()
+				   .title(TOPICS[i % TOPICS.length] + " Volume " + i)
+				   .author(AUTHORS[i % AUTHORS.length])
+				   .isbn(String.format("978%010d", i))
+				   .build();
+	}
+
+	static BookDTO bookDTO(int i) {
+		Book book = book(i);
+		return BookDTO.builder()
+					  .id((long) i)
+					  .title(book.getTitle())
+					  .author(book.getAuthor())
+					  .isbn(book.getIsbn())
+					  .build();
+	}
+
+}
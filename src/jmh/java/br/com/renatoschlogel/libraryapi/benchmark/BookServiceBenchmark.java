@@ -0,0 +1,58 @@
+package br.com.renatoschlogel.libraryapi.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
+
+import br.com.renatoschlogel.libraryapi.model.entity.Book;
+import br.com.renatoschlogel.libraryapi.model.repository.BookView;
+import br.com.renatoschlogel.libraryapi.service.BookService;
+
+/**
+ * {@code BookServiceImpl.find} pelo índice de pesquisa e, com ordenação, pelo banco.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class BookServiceBenchmark {
+
+	private BookService bookService;
+
+	private final Book filter = Book.builder().title("java").build();
+
+	@Setup
+	public void setUp(SeededApplicationState application) {
+		bookService = application.getBean(BookService.class);
+	}
+
+	@Benchmark
+	public Page<BookView> findBySearchIndex() {
+		return bookService.find(filter, PageRequest.of(0, 20));
+	}
+
+	@Benchmark
+	public Page<BookView> findByDatabase() {
+		return bookService.find(filter, PageRequest.of(0, 20, Sort.by("title")));
+	}
+
+	@Benchmark
+	public Page<BookView> findByDatabaseLastPage() {
+		return bookService.find(filter, PageRequest.of(SeededApplicationState.BOOKS / 8 / 20 - 1, 20, Sort.by("title")));
+	}
+
+}
@@ -0,0 +1,71 @@
+package br.com.renatoschlogel.libraryapi.benchmark;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.springframework.transaction.support.TransactionOperations;
+
+import br.com.renatoschlogel.libraryapi.service.impl.CheckoutCoordinator;
+
+/**
+ * Vazão do {@link CheckoutCoordinator} com vários balcões ao mesmo tempo, sem banco: cada operação
+ * consome {@value #WORK_TOKENS} tokens de CPU com o lock do livro. Com livros diferentes a vazão deve
+ * crescer com o número de threads; com o mesmo livro ela fica limitada a uma operação por vez.
+ * Compare, por exemplo, {@code -Djmh.args="CheckoutCoordinatorBenchmark -t 1"} com {@code -t 4}.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class CheckoutCoordinatorBenchmark {
+
+	static final int WORK_TOKENS = 500;
+
+	private final AtomicLong nextBookId = new AtomicLong();
+	private CheckoutCoordinator checkoutCoordinator;
+
+	@State(Scope.Thread)
+	public static class Desk {
+
+		long bookId;
+
+		@Setup
+		public void setUp(CheckoutCoordinatorBenchmark benchmark) {
+			bookId = benchmark.nextBookId.incrementAndGet();
+		}
+	}
+
+	@Setup
+	public void setUp() {
+		checkoutCoordinator = new CheckoutCoordinator(256, TransactionOperations.withoutTransaction());
+	}
+
+	@Benchmark
+	public Object differentBooks(Desk desk) {
+		return checkoutCoordinator.execute(desk.bookId, this::work);
+	}
+
+	@Benchmark
+	public Object sameBook() {
+		return checkoutCoordinator.execute(1l, this::work);
+	}
+
+	private Object work() {
+		Blackhole.consumeCPU(WORK_TOKENS);
+		return null;
+	}
+
+}
@@ -0,0 +1,103 @@
+package br.com.renatoschlogel.libraryapi.benchmark;
+
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+import javax.validation.Validation;
+
+import org.mockito.Mockito;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.request.MockMvcRequestBuilders;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+
+import br.com.renatoschlogel.libraryapi.AplicationControllerAdvice;
+import br.com.renatoschlogel.libraryapi.api.mapper.BookMapper;
+import br.com.renatoschlogel.libraryapi.api.mapper.BookMapperImpl;
+import br.com.renatoschlogel.libraryapi.api.mapper.LoanMapper;
+import br.com.renatoschlogel.libraryapi.api.mapper.LoanMapperImpl;
+import br.com.renatoschlogel.libraryapi.api.resource.BookController;
+import br.com.renatoschlogel.libraryapi.exception.BusinessException;
+import br.com.renatoschlogel.libraryapi.model.entity.Book;
+import br.com.renatoschlogel.libraryapi.service.BookService;
+import br.com.renatoschlogel.libraryapi.service.ExportService;
+import br.com.renatoschlogel.libraryapi.service.LoanService;
+
+/**
+ * Respostas de erro montadas pelo {@link AplicationControllerAdvice}: validação do corpo,
+ * regra de negócio e recurso não encontrado. Os serviços são stubs, para medir apenas a camada web.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ErrorHandlingBenchmark {
+
+	private static final String INVALID_BOOK = "{}";
+	private static final String DUPLICATED_BOOK = "{\"title\":\"Clean Code\",\"author\":\"Robert Martin\",\"isbn\":\"123\"}";
+
+	private AnnotationConfigApplicationContext mappers;
+	private MockMvc mvc;
+
+	@Setup
+	public void setUp() {
+		mappers = new AnnotationConfigApplicationContext(BookMapperImpl.class, LoanMapperImpl.class);
+
+		BookService bookService = Mockito.mock(BookService.class, Mockito.withSettings().stubOnly());
+		Mockito.when(bookService.incluir(Mockito.any(Book.class))).thenThrow(new BusinessException("Isbn já utilizado por outro livro!"));
+		Mockito.when(bookService.getById(Mockito.anyLong())).thenReturn(Optional.empty());
+
+		BookController controller = new BookController(Mockito.mock(LoanService.class, Mockito.withSettings().stubOnly()),
+													   bookService,
+													   Mockito.mock(ExportService.class, Mockito.withSettings().stubOnly()),
+													   mappers.getBean(BookMapper.class),
+													   mappers.getBean(LoanMapper.class),
+													   Validation.buildDefaultValidatorFactory().getValidator());
+
+		mvc = MockMvcBuilders.standaloneSetup(controller)
+							 .setControllerAdvice(new AplicationControllerAdvice())
+							 .build();
+	}
+
+	@TearDown
+	public void tearDown() {
+		mappers.close();
+	}
+
+	@Benchmark
+	public MvcResult validationError() throws Exception {
+		return mvc.perform(MockMvcRequestBuilders.post("/api/books")
+												 .contentType(MediaType.APPLICATION_JSON)
+												 .content(INVALID_BOOK))
+				  .andReturn();
+	}
+
+	@Benchmark
+	public MvcResult businessError() throws Exception {
+		return mvc.perform(MockMvcRequestBuilders.post("/api/books")
+												 .contentType(MediaType.APPLICATION_JSON)
+												 .content(DUPLICATED_BOOK))
+				  .andReturn();
+	}
+
+	@Benchmark
+	public MvcResult notFound() throws Exception {
+		return mvc.perform(MockMvcRequestBuilders.get("/api/books/1")).andReturn();
+	}
+
+}
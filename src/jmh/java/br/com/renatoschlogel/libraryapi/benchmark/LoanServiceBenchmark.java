@@ -0,0 +1,71 @@
+package br.com.renatoschlogel.libraryapi.benchmark;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import br.com.renatoschlogel.libraryapi.model.entity.Book;
+import br.com.renatoschlogel.libraryapi.model.entity.Loan;
+import br.com.renatoschlogel.libraryapi.model.repository.LoanRepository;
+import br.com.renatoschlogel.libraryapi.service.LoanService;
+
+/**
+ * {@code LoanServiceImpl.save}: cada iteração empresta {@value #LOANS_PER_ITERATION} livros diferentes,
+ * pois um livro emprestado não pode ser emprestado de novo. O score é o tempo do lote inteiro.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, batchSize = LoanServiceBenchmark.LOANS_PER_ITERATION)
+@Measurement(iterations = 10, batchSize = LoanServiceBenchmark.LOANS_PER_ITERATION)
+@Fork(1)
+@State(Scope.Benchmark)
+public class LoanServiceBenchmark {
+
+	static final int LOANS_PER_ITERATION = 1000;
+
+	private LoanService loanService;
+	private LoanRepository loanRepository;
+	private JdbcTemplate jdbcTemplate;
+	private List<Book> books;
+	private int next;
+
+	@Setup(Level.Trial)
+	public void setUp(SeededApplicationState application) {
+		loanService = application.getBean(LoanService.class);
+		loanRepository = application.getBean(LoanRepository.class);
+		jdbcTemplate = application.getBean(JdbcTemplate.class);
+		books = application.getBooks();
+	}
+
+	@Setup(Level.Iteration)
+	public void returnAllBooks() {
+		jdbcTemplate.update("update book set active_loan_id = null");
+		loanRepository.deleteAllInBatch();
+		next = 0;
+	}
+
+	@Benchmark
+	public Loan save() {
+		Book book = books.get(next++);
+		return loanService.save(Loan.builder()
+									.book(book)
+									.customer("Renato")
+									.customerEmail("renato@email.com")
+									.loanDate(LocalDate.now())
+									.build());
+	}
+
+}
@@ -0,0 +1,79 @@
+package br.com.renatoschlogel.libraryapi.benchmark;
+
+import java.time.LocalDate;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+
+import br.com.renatoschlogel.libraryapi.api.dto.BookDTO;
+import br.com.renatoschlogel.libraryapi.api.dto.LoanDTO;
+import br.com.renatoschlogel.libraryapi.api.mapper.BookMapper;
+import br.com.renatoschlogel.libraryapi.api.mapper.BookMapperImpl;
+import br.com.renatoschlogel.libraryapi.api.mapper.LoanMapper;
+import br.com.renatoschlogel.libraryapi.api.mapper.LoanMapperImpl;
+import br.com.renatoschlogel.libraryapi.model.entity.Book;
+import br.com.renatoschlogel.libraryapi.model.entity.Loan;
+
+/**
+ * Conversão entidade/DTO feita pelos controllers em cada linha das listagens.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class MappingBenchmark {
+
+	private AnnotationConfigApplicationContext context;
+	private BookMapper bookMapper;
+	private LoanMapper loanMapper;
+
+	private Book book;
+	private BookDTO bookDTO;
+	private Loan loan;
+
+	@Setup
+	public void setUp() {
+		context = new AnnotationConfigApplicationContext(BookMapperImpl.class, LoanMapperImpl.class);
+		bookMapper = context.getBean(BookMapper.class);
+		loanMapper = context.getBean(LoanMapper.class);
+
+		book = Book.builder().id(1l).title("Clean Code").author("Robert Martin").isbn("9780132350884").build();
+		bookDTO = BookDTO.builder().title("Clean Code").author("Robert Martin").isbn("9780132350884").build();
+		loan = Loan.builder().id(1l).book(book).customer("Renato").customerEmail("renato@email.com")
+							 .loanDate(LocalDate.now()).returned(false).build();
+	}
+
+	@TearDown
+	public void tearDown() {
+		context.close();
+	}
+
+	@Benchmark
+	public BookDTO bookToDTO() {
+		return bookMapper.toDTO(book);
+	}
+
+	@Benchmark
+	public Book dtoToBook() {
+		return bookMapper.toEntity(bookDTO);
+	}
+
+	@Benchmark
+	public LoanDTO loanToDTO() {
+		return loanMapper.toDTO(loan);
+	}
+
+}
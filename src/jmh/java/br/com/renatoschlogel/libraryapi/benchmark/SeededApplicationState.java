@@ -0,0 +1,65 @@
+package br.com.renatoschlogel.libraryapi.benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import br.com.renatoschlogel.libraryapi.LibraryApiApplication;
+import br.com.renatoschlogel.libraryapi.model.entity.Book;
+import br.com.renatoschlogel.libraryapi.service.BookService;
+
+/**
+ * Aplicação completa, em porta aleatória, sobre um H2 em memória com {@value #BOOKS} livros cadastrados.
+ */
+@State(Scope.Benchmark)
+public class SeededApplicationState {
+
+	static final int BOOKS = 10_000;
+	private static final int CHUNK = 500;
+
+	private ConfigurableApplicationContext context;
+	private List<Book> books;
+
+	@Setup(Level.Trial)
+	public void start() {
+		context = new SpringApplicationBuilder(LibraryApiApplication.class)
+						.profiles("test")
+						.properties("server.port=0",
+									"spring.datasource.url=jdbc:h2:mem:benchmark;DB_CLOSE_DELAY=-1;DB_CLOSE_ON_EXIT=FALSE",
+									"spring.boot.admin.client.enabled=false",
+									"logging.level.root=WARN")
+						.run();
+
+		BookService bookService = getBean(BookService.class);
+		books = new ArrayList<>(BOOKS);
+		for (int start = 0; start < BOOKS; start += CHUNK) {
+			List<Book> chunk = IntStream.range(start, Math.min(start + CHUNK, BOOKS))
+										.mapToObj(BenchmarkData::book)
+										.collect(Collectors.toList());
+			books.addAll(bookService.incluirLote(chunk));
+		}
+	}
+
+	@TearDown(Level.Trial)
+	public void stop() {
+		context.close();
+	}
+
+	<T> T getBean(Class<T> type) {
+		return context.getBean(type);
+	}
+
+	List<Book> getBooks() {
+		return books;
+	}
+
+}
@@ -0,0 +1,78 @@
+package br.com.renatoschlogel.libraryapi.benchmark;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import br.com.renatoschlogel.libraryapi.api.dto.BookDTO;
+import br.com.renatoschlogel.libraryapi.api.dto.LoanDTO;
+
+/**
+ * Serialização das páginas retornadas por GET /api/books e GET /api/loans.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SerializationBenchmark {
+
+	@Param({"20", "100"})
+	private int pageSize;
+
+	private ObjectMapper objectMapper;
+	private Page<BookDTO> booksPage;
+	private Page<LoanDTO> loansPage;
+
+	@Setup
+	public void setUp() {
+		objectMapper = Jackson2ObjectMapperBuilder.json().build();
+
+		List<BookDTO> books = IntStream.range(0, pageSize)
+									   .mapToObj(BenchmarkData::bookDTO)
+									   .collect(Collectors.toList());
+		List<LoanDTO> loans = IntStream.range(0, pageSize)
+									   .mapToObj(i -> LoanDTO.builder()
+															 .id((long) i)
+															 .customer("Cliente " + i)
+															 .customerEmail("cliente" + i + "@email.com")
+															 .book(BenchmarkData.bookDTO(i))
+															 .build())
+									   .collect(Collectors.toList());
+
+		booksPage = new PageImpl<>(books, PageRequest.of(0, pageSize), 10_000);
+		loansPage = new PageImpl<>(loans, PageRequest.of(0, pageSize), 10_000);
+	}
+
+	@Benchmark
+	public byte[] booksPage() throws JsonProcessingException {
+		return objectMapper.writeValueAsBytes(booksPage);
+	}
+
+	@Benchmark
+	public byte[] loansPage() throws JsonProcessingException {
+		return objectMapper.writeValueAsBytes(loansPage);
+	}
+
+}
@@ -1,5 +1,6 @@
 package br.com.renatoschlogel.libraryapi;
 
+import org.springframework.dao.OptimisticLockingFailureException;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.validation.BindingResult;
@@ -28,6 +29,12 @@ public class AplicationControllerAdvice {
 		return new ApiErros(exception);
 	}
 	
+	@ExceptionHandler(OptimisticLockingFailureException.class)
+	@ResponseStatus(HttpStatus.PRECONDITION_FAILED)
+	public ApiErros handleOptimisticLockingFailure(OptimisticLockingFailureException exception){
+		return new ApiErros("Registro alterado por outra requisição, consulte novamente.");
+	}
+	
 	@ExceptionHandler(ResponseStatusException.class)
 	@ResponseStatus
 	private ResponseEntity<ApiErros> handleResponseStatusException(ResponseStatusException exception) {
@@ -1,20 +1,13 @@
 package br.com.renatoschlogel.libraryapi;
 
-import org.modelmapper.ModelMapper;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
-import org.springframework.context.annotation.Bean;
 import org.springframework.scheduling.annotation.EnableScheduling;
 
 @SpringBootApplication
 @EnableScheduling
 public class LibraryApiApplication {
 	
-	@Bean
-	public ModelMapper modelMapper() {
-		return new ModelMapper();
-	}
-	
 	public static void main(String[] args) {
 		SpringApplication.run(LibraryApiApplication.class, args);
 	}
@@ -0,0 +1,29 @@
+package br.com.renatoschlogel.libraryapi.api.dto;
+
+import java.util.List;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+@Getter
+@Setter
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class BookBatchItemDTO {
+	
+	public static final String CREATED = "CREATED";
+	public static final String REJECTED = "REJECTED";
+	
+	private Integer index;
+	
+	private String status;
+	
+	private BookDTO book;
+	
+	private List<String> errors;
+
+}
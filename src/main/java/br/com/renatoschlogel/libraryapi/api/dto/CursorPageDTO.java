@@ -0,0 +1,25 @@
+package br.com.renatoschlogel.libraryapi.api.dto;
+
+import java.util.List;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+@Getter
+@Setter
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class CursorPageDTO<T> {
+	
+	private List<T> content;
+	
+	private int size;
+	
+	/** Valor a enviar no parâmetro after para obter a próxima página; nulo na última página. */
+	private String next;
+
+}
@@ -0,0 +1,20 @@
+package br.com.renatoschlogel.libraryapi.api.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+@Getter
+@Setter
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class ImportRejectionDTO {
+	
+	private long row;
+	
+	private String error;
+
+}
@@ -0,0 +1,28 @@
+package br.com.renatoschlogel.libraryapi.api.dto;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+@Getter
+@Setter
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class ImportResultDTO {
+	
+	private long processed;
+	
+	private long imported;
+	
+	private long rejected;
+	
+	@Builder.Default
+	private List<ImportRejectionDTO> rejections = new ArrayList<>();
+
+}
@@ -0,0 +1,30 @@
+package br.com.renatoschlogel.libraryapi.api.dto;
+
+import java.util.List;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+@Getter
+@Setter
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class LoanBatchItemDTO {
+	
+	public static final String CREATED = "CREATED";
+	public static final String UPDATED = "UPDATED";
+	public static final String REJECTED = "REJECTED";
+	
+	private Integer index;
+	
+	private String status;
+	
+	private Long id;
+	
+	private List<String> errors;
+
+}
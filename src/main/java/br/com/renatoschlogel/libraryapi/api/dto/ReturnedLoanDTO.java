@@ -11,6 +11,9 @@ import lombok.NoArgsConstructor;
 @Data
 public class ReturnedLoanDTO {
 	
+	/** Usado apenas na devolução em lote, onde cada item indica o seu empréstimo. */
+	private Long id;
+	
 	private Boolean retorned;
 
 }
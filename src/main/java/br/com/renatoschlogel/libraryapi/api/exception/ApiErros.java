@@ -22,6 +22,10 @@ public class ApiErros {
 		this.errors = Arrays.asList(exception.getMessage());
 	}
 
+	public ApiErros(String message) {
+		this.errors = Arrays.asList(message);
+	}
+
 	public ApiErros(ResponseStatusException exception) {
 		this.errors = Arrays.asList(exception.getReason());
 	}
@@ -0,0 +1,25 @@
+package br.com.renatoschlogel.libraryapi.api.mapper;
+
+import org.mapstruct.Mapper;
+import org.mapstruct.Mapping;
+
+import br.com.renatoschlogel.libraryapi.api.dto.BookDTO;
+import br.com.renatoschlogel.libraryapi.model.entity.Book;
+import br.com.renatoschlogel.libraryapi.model.repository.BookView;
+
+/**
+ * Conversão entre livro e DTO gerada em tempo de compilação, sem reflexão a cada chamada.
+ */
+@Mapper(componentModel = "spring")
+public interface BookMapper {
+
+	BookDTO toDTO(Book book);
+
+	BookDTO toDTO(BookView book);
+
+	@Mapping(target = "loans", ignore = true)
+	@Mapping(target = "activeLoanId", ignore = true)
+	@Mapping(target = "version", ignore = true)
+	Book toEntity(BookDTO bookDTO);
+
+}
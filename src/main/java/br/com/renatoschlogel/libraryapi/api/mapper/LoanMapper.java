@@ -0,0 +1,26 @@
+package br.com.renatoschlogel.libraryapi.api.mapper;
+
+import org.mapstruct.Mapper;
+import org.mapstruct.Mapping;
+
+import br.com.renatoschlogel.libraryapi.api.dto.LoanDTO;
+import br.com.renatoschlogel.libraryapi.model.entity.Loan;
+import br.com.renatoschlogel.libraryapi.model.repository.LoanView;
+
+@Mapper(componentModel = "spring", uses = BookMapper.class)
+public interface LoanMapper {
+
+	/**
+	 * O isbn do DTO é usado apenas na criação do empréstimo; na resposta ele vem dentro do livro.
+	 */
+	@Mapping(target = "isbn", ignore = true)
+	LoanDTO toDTO(Loan loan);
+
+	@Mapping(target = "isbn", ignore = true)
+	@Mapping(target = "book.id", source = "bookId")
+	@Mapping(target = "book.title", source = "bookTitle")
+	@Mapping(target = "book.author", source = "bookAuthor")
+	@Mapping(target = "book.isbn", source = "bookIsbn")
+	LoanDTO toDTO(LoanView loan);
+
+}
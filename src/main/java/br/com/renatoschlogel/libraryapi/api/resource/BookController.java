@@ -1,32 +1,52 @@
 package br.com.renatoschlogel.libraryapi.api.resource;
 
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
-import java.util.Optional;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
 
+import javax.validation.ConstraintViolation;
 import javax.validation.Valid;
+import javax.validation.Validator;
 
-import org.modelmapper.ModelMapper;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageImpl;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.DeleteMapping;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.PutMapping;
 import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.ResponseStatus;
 import org.springframework.web.bind.annotation.RestController;
 import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import br.com.renatoschlogel.libraryapi.api.dto.BookBatchItemDTO;
 import br.com.renatoschlogel.libraryapi.api.dto.BookDTO;
+import br.com.renatoschlogel.libraryapi.api.dto.CursorPageDTO;
 import br.com.renatoschlogel.libraryapi.api.dto.LoanDTO;
+import br.com.renatoschlogel.libraryapi.api.mapper.BookMapper;
+import br.com.renatoschlogel.libraryapi.api.mapper.LoanMapper;
 import br.com.renatoschlogel.libraryapi.model.entity.Book;
-import br.com.renatoschlogel.libraryapi.model.entity.Loan;
+import br.com.renatoschlogel.libraryapi.model.repository.BookView;
+import br.com.renatoschlogel.libraryapi.model.repository.LoanView;
 import br.com.renatoschlogel.libraryapi.service.BookService;
+import br.com.renatoschlogel.libraryapi.service.DataFormat;
+import br.com.renatoschlogel.libraryapi.service.ExportService;
 import br.com.renatoschlogel.libraryapi.service.LoanService;
 import io.swagger.annotations.Api;
 import io.swagger.annotations.ApiOperation;
@@ -44,7 +64,10 @@ public class BookController {
 	
 	private final LoanService loanService;
 	private final BookService bookService;
-	private final ModelMapper modelMapper; 
+	private final ExportService exportService;
+	private final BookMapper bookMapper;
+	private final LoanMapper loanMapper;
+	private final Validator validator;
 	
 	@PostMapping
 	@ApiOperation("Cria um novo livro")
@@ -53,79 +76,221 @@ public class BookController {
 		
 		log.info("Criando um livro para o isbn {}", bookDTO.getIsbn());
 		
-		Book book = modelMapper.map(bookDTO, Book.class);
+		Book book = bookMapper.toEntity(bookDTO);
 		book = bookService.incluir(book);
-		return modelMapper.map(book, BookDTO.class);
+		return bookMapper.toDTO(book);
 	}
 
+	@PostMapping("batch")
+	@ApiOperation("Cria livros em lote, informando o resultado de cada item")
+	public List<BookBatchItemDTO> createBatch(@RequestBody List<BookDTO> booksDTO) {
+		
+		log.info("Criando {} livros em lote", booksDTO.size());
+		
+		List<BookBatchItemDTO> items = new ArrayList<>(booksDTO.size());
+		List<Book> books = new ArrayList<>(booksDTO.size());
+		
+		for (int index = 0; index < booksDTO.size(); index++) {
+			BookDTO bookDTO = booksDTO.get(index);
+			Set<ConstraintViolation<BookDTO>> violations = validator.validate(bookDTO);
+			
+			BookBatchItemDTO item = BookBatchItemDTO.builder().index(index).book(bookDTO).build();
+			if (violations.isEmpty()) {
+				books.add(bookMapper.toEntity(bookDTO));
+			} else {
+				books.add(null);
+				item.setStatus(BookBatchItemDTO.REJECTED);
+				item.setErrors(violations.stream().map(ConstraintViolation::getMessage).collect(Collectors.toList()));
+			}
+			items.add(item);
+		}
+		
+		bookService.incluirLote(books.stream().filter(book -> book != null).collect(Collectors.toList()));
+		
+		for (int index = 0; index < books.size(); index++) {
+			Book book = books.get(index);
+			if (book == null) {
+				continue;
+			}
+			
+			BookBatchItemDTO item = items.get(index);
+			if (book.getId() != null) {
+				item.setStatus(BookBatchItemDTO.CREATED);
+				item.setBook(bookMapper.toDTO(book));
+			} else {
+				item.setStatus(BookBatchItemDTO.REJECTED);
+				item.setErrors(Arrays.asList("Isbn já utilizado por outro livro!"));
+			}
+		}
+		
+		return items;
+	}
+
+	@GetMapping("export")
+	@ApiOperation("Exporta todo o catálogo em NDJSON ou CSV")
+	public ResponseEntity<StreamingResponseBody> export(@RequestParam(defaultValue = "ndjson") String format) {
+		DataFormat dataFormat = DataFormat.fromName(format);
+		
+		StreamingResponseBody body = outputStream -> exportService.exportBooks(outputStream, dataFormat);
+		
+		return ResponseEntity.ok()
+							 .contentType(MediaType.parseMediaType(dataFormat.getContentType()))
+							 .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=books." + dataFormat.getExtension())
+							 .body(body);
+	}
+	
 	@GetMapping("{id}")
-	public BookDTO get(@PathVariable Long id) {
+	@ApiOperation("Consulta o livro; com If-None-Match, responde 304 pela versão sem carregá-lo")
+	public ResponseEntity<BookDTO> get(@PathVariable Long id, 
+									   @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
 		
 		log.info("Consultandoo Livro com id {}", id);
 		
+		if (ifNoneMatch != null) {
+			String eTag = ETags.of(getVersion(id));
+			if (ETags.matches(ifNoneMatch, eTag)) {
+				return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(eTag).build();
+			}
+		}
+		
 		return  bookService.getById(id)
-				            .map(book -> modelMapper.map(book, BookDTO.class))
+				            .map(book -> ResponseEntity.ok().eTag(ETags.of(book.getVersion())).body(bookMapper.toDTO(book)))
 				            .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND));
 	}
 	
 	@DeleteMapping("{id}")
 	@ResponseStatus(HttpStatus.NO_CONTENT)
 	@ApiResponses({
-		@ApiResponse(code = 204, message = "Book successfully deleted")
+		@ApiResponse(code = 204, message = "Book successfully deleted"),
+		@ApiResponse(code = 412, message = "Book changed since the If-Match version")
 	})
-	public void delete(@PathVariable Long id) {
+	public void delete(@PathVariable Long id, @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch) {
 		
-		log.info("deletando Livro com id {0}", id);
+		log.info("deletando Livro com id {}", id);
 		
-		Optional<Book> optBook = bookService.getById(id);
-		if(!optBook.isPresent()) {
+		if (!bookService.delete(id, ETags.version(ifMatch))) {
 			throw new ResponseStatusException(HttpStatus.NOT_FOUND);
 		}
-		
-		bookService.delete(optBook.get());
 	}
 	
 	@PutMapping("{id}")
-	public BookDTO update(@PathVariable Long id, @RequestBody @Valid BookDTO bookDTO) {
-		return bookService.getById(id)
-				          .map(book -> {
-				        	  book.setTitle(bookDTO.getTitle());
-				        	  book.setAuthor(bookDTO.getAuthor());
-				        	  book = bookService.update(book);
-				        	  return modelMapper.map(book, BookDTO.class);
-				          })
-						  .orElseThrow( () -> new ResponseStatusException(HttpStatus.NOT_FOUND));
+	@ApiOperation("Altera título e autor do livro; com If-Match, apenas se a versão ainda for a informada. Responde com o livro gravado")
+	public ResponseEntity<BookDTO> update(@PathVariable Long id, @RequestBody @Valid BookDTO bookDTO, 
+										  @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch) {
+		Book book = Book.builder().id(id).title(bookDTO.getTitle()).author(bookDTO.getAuthor()).build();
+		
+		return bookService.update(book, ETags.version(ifMatch))
+						  .map(stored -> ResponseEntity.ok().eTag(ETags.of(stored.getVersion())).body(bookMapper.toDTO(stored)))
+						  .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND));
 	}
 	
 	@GetMapping
+	@ApiOperation("Filtra livros. Sem sort e sem id, cada termo casa com o início das palavras, sem acentos, "
+				+ "ou com a palavra inteira se tiver menos de 3 caracteres, por relevância; com sort ou id, "
+				+ "casa com qualquer trecho do campo")
 	public Page<BookDTO> find (BookDTO bookDTO, Pageable pageRequest){
-		Book filter = modelMapper.map(bookDTO, Book.class);
-		Page<Book> result = bookService.find(filter, pageRequest);
+		Book filter = bookMapper.toEntity(bookDTO);
+		Page<BookView> result = bookService.find(filter, pageRequest);
 		
 		List<BookDTO> listBookDTO = result.getContent()
 		      .stream()
-		      .map(book -> modelMapper.map(book, BookDTO.class))
+		      .map(bookMapper::toDTO)
 		      .collect(Collectors.toList());
 		
 		return new PageImpl<BookDTO>(listBookDTO, pageRequest, result.getTotalElements());
 	}
 	
-	@GetMapping("{id}/loans")
-	public Page<LoanDTO> loansByBook(@PathVariable Long id, Pageable pageable){
-		Book book = bookService.getById(id).orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND));
+	@GetMapping(params = "mode=slice")
+	@ApiOperation("Filtra livros como a listagem paginada, sem calcular o total, informando apenas se existe a próxima página")
+	public Slice<BookDTO> findSlice(BookDTO bookDTO, Pageable pageRequest) {
+		Book filter = bookMapper.toEntity(bookDTO);
 		
-		Page<Loan> result = loanService.getloansByBook(book, pageable);
+		return bookService.findSlice(filter, pageRequest)
+						  .map(bookMapper::toDTO);
+	}
+	
+	@GetMapping(params = "after")
+	@ApiOperation("Lista livros por cursor, ordenados por id; informe after vazio para a primeira página")
+	public CursorPageDTO<BookDTO> findAfter(BookDTO bookDTO, @RequestParam String after, Pageable pageRequest) {
+		String[] cursor = CursorCodec.decode(after, 1);
+		Long afterId = cursor == null ? null : CursorCodec.parse(cursor[0], Long::valueOf);
 		
-		List<LoanDTO> listLoanDTO = result.getContent()
-		      .stream()
-		      .map(loan -> {
-		    	  LoanDTO loanDTO = modelMapper.map(loan, LoanDTO.class);
-		    	  loanDTO.setBook(modelMapper.map(loan.getBook(), BookDTO.class));
-		    	  return loanDTO;
-		      })
-		      .collect(Collectors.toList());
+		Book filter = bookMapper.toEntity(bookDTO);
+		Slice<BookView> result = bookService.findAfter(filter, afterId, pageRequest.getPageSize());
+		
+		List<BookDTO> listBookDTO = result.getContent()
+			  .stream()
+			  .map(bookMapper::toDTO)
+			  .collect(Collectors.toList());
 		
-		return new PageImpl<LoanDTO>(listLoanDTO, pageable, result.getTotalElements());
+		String next = result.hasNext() ? CursorCodec.encode(listBookDTO.get(listBookDTO.size() - 1).getId()) : null;
+		
+		return CursorPageDTO.<BookDTO>builder().content(listBookDTO).size(listBookDTO.size()).next(next).build();
+	}
+	
+	@GetMapping("{id}/loans")
+	public ResponseEntity<Page<LoanDTO>> loansByBook(@PathVariable Long id, Pageable pageable, 
+													 @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch){
+		return loansOfBook(id, ifNoneMatch, ETags::weak, () -> {
+			Page<LoanView> result = loanService.getloansByBook(id, pageable);
+			
+			List<LoanDTO> listLoanDTO = result.getContent()
+			      .stream()
+			      .map(loanMapper::toDTO)
+			      .collect(Collectors.toList());
+			
+			return new PageImpl<LoanDTO>(listLoanDTO, pageable, result.getTotalElements());
+		});
+	}
+	
+	@GetMapping(value = "{id}/loans", params = "mode=slice")
+	public ResponseEntity<Slice<LoanDTO>> loansByBookSlice(@PathVariable Long id, Pageable pageable, 
+														   @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch){
+		return loansOfBook(id, ifNoneMatch, ETags::of, () -> loanService.getLoansByBookSlice(id, pageable)
+															 .map(loanMapper::toDTO));
+	}
+	
+	@GetMapping(value = "{id}/loans", params = "after")
+	public ResponseEntity<CursorPageDTO<LoanDTO>> loansByBookAfter(@PathVariable Long id, @RequestParam String after, Pageable pageable, 
+																   @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch){
+		String[] cursor = CursorCodec.decode(after, 2);
+		LocalDate loanDate = cursor == null ? null : CursorCodec.parse(cursor[0], LocalDate::parse);
+		Long loanId = cursor == null ? null : CursorCodec.parse(cursor[1], Long::valueOf);
+		
+		return loansOfBook(id, ifNoneMatch, ETags::of, () -> {
+			Slice<LoanView> result = loanService.getLoansByBookAfter(id, loanDate, loanId, pageable.getPageSize());
+			
+			List<LoanDTO> listLoanDTO = result.getContent()
+				  .stream()
+				  .map(loanMapper::toDTO)
+				  .collect(Collectors.toList());
+			
+			String next = null;
+			if (result.hasNext()) {
+				LoanView last = result.getContent().get(result.getNumberOfElements() - 1);
+				next = CursorCodec.encode(last.getLoanDate(), last.getId());
+			}
+			
+			return CursorPageDTO.<LoanDTO>builder().content(listLoanDTO).size(listLoanDTO.size()).next(next).build();
+		});
+	}
+	
+	/**
+	 * Todo empréstimo incluído no livro, devolvido ou reaberto incrementa a versão do livro, assim como
+	 * as alterações do próprio livro, então a ETag sai da versão, lida antes da lista; se o cliente já
+	 * tem a versão atual, os empréstimos nem são consultados. A página traz o total das listagens, que
+	 * pode vir do cache e mudar sem nova versão, por isso recebe ETag fraca.
+	 */
+	private <T> ResponseEntity<T> loansOfBook(Long id, String ifNoneMatch, Function<Long, String> eTagOf, Supplier<T> loans) {
+		String eTag = eTagOf.apply(getVersion(id));
+		if (ETags.matches(ifNoneMatch, eTag)) {
+			return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(eTag).build();
+		}
+		return ResponseEntity.ok().eTag(eTag).body(loans.get());
+	}
+	
+	private Long getVersion(Long id) {
+		return bookService.getVersion(id).orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND));
 	}
 	
 }
@@ -0,0 +1,56 @@
+package br.com.renatoschlogel.libraryapi.api.resource;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.function.Function;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.server.ResponseStatusException;
+
+/**
+ * Codifica a posição da última linha de uma página em um token opaco para o cliente.
+ */
+final class CursorCodec {
+
+	private static final String SEPARATOR = "|";
+
+	private CursorCodec() {
+	}
+
+	static String encode(Object... values) {
+		String raw = Stream.of(values).map(String::valueOf).collect(Collectors.joining(SEPARATOR));
+		return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+	}
+
+	/**
+	 * @return os valores do token, ou null quando o token estiver vazio (primeira página)
+	 */
+	static String[] decode(String token, int expectedValues) {
+		if (token == null || token.isEmpty()) {
+			return null;
+		}
+
+		try {
+			String raw = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8);
+			String[] values = raw.split(Pattern.quote(SEPARATOR), -1);
+			if (values.length != expectedValues) {
+				throw new IllegalArgumentException(raw);
+			}
+			return values;
+		} catch (IllegalArgumentException e) {
+			throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Cursor inválido.");
+		}
+	}
+
+	static <T> T parse(String value, Function<String, T> parser) {
+		try {
+			return parser.apply(value);
+		} catch (RuntimeException e) {
+			throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Cursor inválido.");
+		}
+	}
+
+}
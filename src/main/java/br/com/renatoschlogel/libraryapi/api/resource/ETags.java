@@ -0,0 +1,71 @@
+package br.com.renatoschlogel.libraryapi.api.resource;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.server.ResponseStatusException;
+
+/**
+ * ETags derivadas da versão da entidade. A ETag forte promete a mesma representação para a mesma versão;
+ * a fraca, apenas uma equivalente.
+ */
+final class ETags {
+
+	private ETags() {
+	}
+
+	static String of(Long version) {
+		return "\"" + version + "\"";
+	}
+
+	static String weak(Long version) {
+		return "W/" + of(version);
+	}
+
+	/**
+	 * Versão exigida pelo If-Match, comparada pelo critério forte.
+	 * @return null quando o cabeçalho não foi informado ou é *, aceitando qualquer versão
+	 */
+	static Long version(String ifMatch) {
+		if (ifMatch == null || ifMatch.trim().equals("*")) {
+			return null;
+		}
+
+		String value = ifMatch.trim();
+		if (value.startsWith("W/")) {
+			throw new ResponseStatusException(HttpStatus.PRECONDITION_FAILED, "ETag fraca não é aceita no If-Match.");
+		}
+		if (value.length() < 2 || !value.startsWith("\"") || !value.endsWith("\"")) {
+			throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "If-Match inválido.");
+		}
+
+		try {
+			return Long.valueOf(value.substring(1, value.length() - 1));
+		} catch (NumberFormatException e) {
+			throw new ResponseStatusException(HttpStatus.PRECONDITION_FAILED, "ETag desconhecida.");
+		}
+	}
+
+	/**
+	 * Compara pelo critério fraco do If-None-Match: aceita lista de ETags, prefixo W/ e *.
+	 */
+	static boolean matches(String ifNoneMatch, String eTag) {
+		if (ifNoneMatch == null) {
+			return false;
+		}
+
+		if (eTag.startsWith("W/")) {
+			eTag = eTag.substring(2);
+		}
+
+		for (String candidate : ifNoneMatch.split(",")) {
+			String value = candidate.trim();
+			if (value.startsWith("W/")) {
+				value = value.substring(2);
+			}
+			if (value.equals("*") || value.equals(eTag)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+}
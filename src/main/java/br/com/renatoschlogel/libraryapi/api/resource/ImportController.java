@@ -0,0 +1,53 @@
+package br.com.renatoschlogel.libraryapi.api.resource;
+
+import java.io.InputStream;
+
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import br.com.renatoschlogel.libraryapi.api.dto.ImportResultDTO;
+import br.com.renatoschlogel.libraryapi.service.DataFormat;
+import br.com.renatoschlogel.libraryapi.service.ImportService;
+import io.swagger.annotations.Api;
+import io.swagger.annotations.ApiOperation;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+
+@RestController
+@RequestMapping("/api/imports")
+@RequiredArgsConstructor
+@Slf4j
+@Api("Import API")
+public class ImportController {
+	
+	static final String TEXT_CSV = "text/csv";
+	
+	private final ImportService importService;
+	
+	@PostMapping(value = "books", consumes = { TEXT_CSV, MediaType.APPLICATION_NDJSON_VALUE })
+	@ApiOperation("Importa livros a partir de um CSV ou NDJSON, lido à medida que chega")
+	public ImportResultDTO importBooks(InputStream body, @RequestHeader(HttpHeaders.CONTENT_TYPE) MediaType contentType) {
+		
+		log.info("Iniciando importação de livros em {}", contentType);
+		
+		return importService.importBooks(body, formatOf(contentType));
+	}
+	
+	@PostMapping(value = "loans", consumes = { TEXT_CSV, MediaType.APPLICATION_NDJSON_VALUE })
+	@ApiOperation("Importa o histórico de empréstimos a partir de um CSV ou NDJSON, lido à medida que chega")
+	public ImportResultDTO importLoans(InputStream body, @RequestHeader(HttpHeaders.CONTENT_TYPE) MediaType contentType) {
+		
+		log.info("Iniciando importação de empréstimos em {}", contentType);
+		
+		return importService.importLoans(body, formatOf(contentType));
+	}
+
+	private DataFormat formatOf(MediaType contentType) {
+		return MediaType.valueOf(TEXT_CSV).isCompatibleWith(contentType) ? DataFormat.CSV : DataFormat.NDJSON;
+	}
+	
+}
@@ -1,31 +1,46 @@
 package br.com.renatoschlogel.libraryapi.api.resource;
 
 import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.stream.Collectors;
 
-import org.modelmapper.ModelMapper;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageImpl;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PatchMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.ResponseStatus;
 import org.springframework.web.bind.annotation.RestController;
 import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
-import br.com.renatoschlogel.libraryapi.api.dto.BookDTO;
+import br.com.renatoschlogel.libraryapi.api.dto.CursorPageDTO;
+import br.com.renatoschlogel.libraryapi.api.dto.LoanBatchItemDTO;
 import br.com.renatoschlogel.libraryapi.api.dto.LoanDTO;
 import br.com.renatoschlogel.libraryapi.api.dto.LoanFilterDTO;
 import br.com.renatoschlogel.libraryapi.api.dto.ReturnedLoanDTO;
+import br.com.renatoschlogel.libraryapi.api.mapper.LoanMapper;
 import br.com.renatoschlogel.libraryapi.model.entity.Book;
 import br.com.renatoschlogel.libraryapi.model.entity.Loan;
+import br.com.renatoschlogel.libraryapi.model.repository.LoanView;
 import br.com.renatoschlogel.libraryapi.service.BookService;
+import br.com.renatoschlogel.libraryapi.service.DataFormat;
+import br.com.renatoschlogel.libraryapi.service.ExportService;
 import br.com.renatoschlogel.libraryapi.service.LoanService;
 import lombok.RequiredArgsConstructor;
 
@@ -36,7 +51,8 @@ public class LoanController{
 	
 	private final LoanService loanService;
 	private final BookService bookService;
-	private final ModelMapper modelMapper;
+	private final ExportService exportService;
+	private final LoanMapper loanMapper;
 	
 	
 	@PostMapping
@@ -55,24 +71,146 @@ public class LoanController{
 		return loan.getId();
 	}
 	
+	@PostMapping("batch")
+	public List<LoanBatchItemDTO> createBatch(@RequestBody List<LoanDTO> loansDTO) {
+		
+		Map<String, Long> bookIdsByIsbn = bookService.getIdsByIsbn(loansDTO.stream()
+																		   .map(LoanDTO::getIsbn)
+																		   .collect(Collectors.toList()));
+		
+		List<LoanBatchItemDTO> items = new ArrayList<>(loansDTO.size());
+		List<Loan> loans = new ArrayList<>(loansDTO.size());
+		
+		for (int index = 0; index < loansDTO.size(); index++) {
+			LoanDTO loanDTO = loansDTO.get(index);
+			Long bookId = bookIdsByIsbn.get(loanDTO.getIsbn());
+			
+			LoanBatchItemDTO item = LoanBatchItemDTO.builder().index(index).build();
+			if (bookId != null) {
+				loans.add(Loan.builder().book(Book.builder().id(bookId).build())
+										.customer(loanDTO.getCustomer())
+										.customerEmail(loanDTO.getCustomerEmail())
+										.loanDate(LocalDate.now())
+										.build());
+			} else {
+				loans.add(null);
+				item.setStatus(LoanBatchItemDTO.REJECTED);
+				item.setErrors(Arrays.asList("Book not found fot passad isbn."));
+			}
+			items.add(item);
+		}
+		
+		loanService.saveBatch(loans.stream().filter(loan -> loan != null).collect(Collectors.toList()));
+		
+		for (int index = 0; index < loans.size(); index++) {
+			Loan loan = loans.get(index);
+			if (loan == null) {
+				continue;
+			}
+			
+			LoanBatchItemDTO item = items.get(index);
+			if (loan.getId() != null) {
+				item.setStatus(LoanBatchItemDTO.CREATED);
+				item.setId(loan.getId());
+			} else {
+				item.setStatus(LoanBatchItemDTO.REJECTED);
+				item.setErrors(Arrays.asList("Book already loaned."));
+			}
+		}
+		
+		return items;
+	}
+	
+	@PatchMapping("batch")
+	public List<LoanBatchItemDTO> returnedBooks(@RequestBody List<ReturnedLoanDTO> returnedLoansDTO) {
+		
+		Map<Long, Boolean> returnedByLoan = new LinkedHashMap<>();
+		returnedLoansDTO.stream()
+						.filter(returnedLoanDTO -> returnedLoanDTO.getId() != null)
+						.forEach(returnedLoanDTO -> returnedByLoan.put(returnedLoanDTO.getId(), returnedLoanDTO.getRetorned()));
+		
+		Map<Long, String> rejected = loanService.updateReturnedBooks(returnedByLoan);
+		
+		List<LoanBatchItemDTO> items = new ArrayList<>(returnedLoansDTO.size());
+		for (int index = 0; index < returnedLoansDTO.size(); index++) {
+			Long id = returnedLoansDTO.get(index).getId();
+			
+			LoanBatchItemDTO item = LoanBatchItemDTO.builder().index(index).id(id).build();
+			if (id == null) {
+				item.setStatus(LoanBatchItemDTO.REJECTED);
+				item.setErrors(Arrays.asList("Empréstimo não informado."));
+			} else if (rejected.containsKey(id)) {
+				item.setStatus(LoanBatchItemDTO.REJECTED);
+				item.setErrors(Arrays.asList(rejected.get(id)));
+			} else {
+				item.setStatus(LoanBatchItemDTO.UPDATED);
+			}
+			items.add(item);
+		}
+		
+		return items;
+	}
+	
 	@PatchMapping("{id}")
-	public void returnedBook(@PathVariable Long id, @RequestBody ReturnedLoanDTO returnedLoanDTO) {
-		Loan loan = loanService.findById(id).orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND));
-		loanService.updateReturnedBook(loan.getId(), returnedLoanDTO.getRetorned());
+	public ResponseEntity<Void> returnedBook(@PathVariable Long id, @RequestBody ReturnedLoanDTO returnedLoanDTO, 
+											 @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch) {
+		Long version = ETags.version(ifMatch);
+		
+		if (!loanService.updateReturnedBook(id, returnedLoanDTO.getRetorned(), version)) {
+			throw new ResponseStatusException(HttpStatus.NOT_FOUND);
+		}
+		
+		return version == null ? ResponseEntity.ok().build() 
+							   : ResponseEntity.ok().eTag(ETags.of(version + 1)).build();
+	}
+	
+	@GetMapping("export")
+	public ResponseEntity<StreamingResponseBody> export(@RequestParam(defaultValue = "ndjson") String format) {
+		DataFormat dataFormat = DataFormat.fromName(format);
+		
+		StreamingResponseBody body = outputStream -> exportService.exportLoans(outputStream, dataFormat);
+		
+		return ResponseEntity.ok()
+							 .contentType(MediaType.parseMediaType(dataFormat.getContentType()))
+							 .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=loans." + dataFormat.getExtension())
+							 .body(body);
 	}
 	
 	@GetMapping
 	public Page<LoanDTO> find(LoanFilterDTO loanFilter, Pageable pageable) {
 	
-		Page<Loan> result = loanService.find(loanFilter, pageable);
+		Page<LoanView> result = loanService.find(loanFilter, pageable);
 		List<LoanDTO> LoanDtoList = result.getContent().stream()
-						   .map( loan -> { 
-							   LoanDTO loanDTO = modelMapper.map(loan, LoanDTO.class);
-							   loanDTO.setBook(modelMapper.map(loan.getBook(), BookDTO.class));
-							return loanDTO;
-						   })
+						   .map(loanMapper::toDTO)
 						   .collect(Collectors.toList());
-		return new PageImpl<LoanDTO>(LoanDtoList, pageable, 0);
+		return new PageImpl<LoanDTO>(LoanDtoList, pageable, result.getTotalElements());
+	}
+	
+	@GetMapping(params = "mode=slice")
+	public Slice<LoanDTO> findSlice(LoanFilterDTO loanFilter, Pageable pageable) {
+		
+		return loanService.findSlice(loanFilter, pageable)
+						  .map(loanMapper::toDTO);
+	}
+	
+	@GetMapping(params = "after")
+	public CursorPageDTO<LoanDTO> findAfter(LoanFilterDTO loanFilter, @RequestParam String after, Pageable pageable) {
+		String[] cursor = CursorCodec.decode(after, 2);
+		LocalDate loanDate = cursor == null ? null : CursorCodec.parse(cursor[0], LocalDate::parse);
+		Long loanId = cursor == null ? null : CursorCodec.parse(cursor[1], Long::valueOf);
+		
+		Slice<LoanView> result = loanService.findAfter(loanFilter, loanDate, loanId, pageable.getPageSize());
+		List<LoanDTO> LoanDtoList = result.getContent().stream()
+						   .map(loanMapper::toDTO)
+						   .collect(Collectors.toList());
+		
+		String next = null;
+		if (result.hasNext()) {
+			LoanView last = result.getContent().get(result.getNumberOfElements() - 1);
+			next = CursorCodec.encode(last.getLoanDate(), last.getId());
+		}
+		
+		return CursorPageDTO.<LoanDTO>builder().content(LoanDtoList).size(LoanDtoList.size()).next(next).build();
 	}
 
 	
@@ -0,0 +1,122 @@
+package br.com.renatoschlogel.libraryapi.config;
+
+import java.time.Duration;
+import java.util.Optional;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.CacheWriter;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import com.github.benmanes.caffeine.cache.RemovalCause;
+
+import br.com.renatoschlogel.libraryapi.model.entity.Book;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+
+@Configuration
+public class CacheConfig {
+
+	public static final String BOOKS_BY_ISBN = "booksByIsbn";
+	public static final String LISTING_TOTALS = "listingTotals";
+
+	@Value("${application.cache.books-by-isbn.maximum-size}")
+	private long booksByIsbnMaximumSize;
+
+	@Value("${application.cache.books-by-isbn.expire-after-write}")
+	private Duration booksByIsbnExpireAfterWrite;
+
+	@Value("${application.cache.books-by-isbn.negative-expire-after-write}")
+	private Duration booksByIsbnNegativeExpireAfterWrite;
+
+	@Value("${application.cache.listing-totals.maximum-size}")
+	private long listingTotalsMaximumSize;
+
+	@Value("${application.cache.listing-totals.expire-after-write}")
+	private Duration listingTotalsExpireAfterWrite;
+
+	/**
+	 * Cache de livros por isbn. Isbns inexistentes também são guardados (Optional vazio),
+	 * mas por um tempo menor, para que um livro recém cadastrado em outra instância apareça logo.
+	 */
+	@Bean
+	public Cache<String, Optional<Book>> booksByIsbnCache(MeterRegistry meterRegistry, Cache<Long, String> bookIsbnsByIdCache) {
+		Cache<String, Optional<Book>> cache = Caffeine.newBuilder()
+													  .maximumSize(booksByIsbnMaximumSize)
+													  .expireAfter(expiry(booksByIsbnExpireAfterWrite, booksByIsbnNegativeExpireAfterWrite))
+													  .writer(isbnsById(bookIsbnsByIdCache))
+													  .recordStats()
+													  .build();
+
+		return CaffeineCacheMetrics.monitor(meterRegistry, cache, BOOKS_BY_ISBN);
+	}
+
+	/**
+	 * Isbn de cada livro presente no cache por isbn, para que alteração e exclusão, que só conhecem
+	 * o id, removam a entrada pela chave. Não tem limite próprio: é mantido pelo cache por isbn.
+	 */
+	@Bean
+	public Cache<Long, String> bookIsbnsByIdCache() {
+		return Caffeine.newBuilder().build();
+	}
+
+	/**
+	 * Acompanha no cache de isbns por id as remoções do cache por isbn, inclusive por expiração
+	 * e tamanho. Os valores carregados pelo cache não passam pelo write, então quem carrega também
+	 * registra o isbn do livro.
+	 */
+	public static CacheWriter<String, Optional<Book>> isbnsById(Cache<Long, String> bookIsbnsByIdCache) {
+		return new CacheWriter<String, Optional<Book>>() {
+
+			@Override
+			public void write(String isbn, Optional<Book> book) {
+				book.ifPresent(value -> bookIsbnsByIdCache.put(value.getId(), isbn));
+			}
+
+			@Override
+			public void delete(String isbn, Optional<Book> book, RemovalCause cause) {
+				if (book != null) {
+					book.ifPresent(value -> bookIsbnsByIdCache.asMap().remove(value.getId(), isbn));
+				}
+			}
+		};
+	}
+
+	/**
+	 * Totais das listagens por filtro. Os valores são aproximados durante o tempo de expiração,
+	 * evitando um count a cada página consultada.
+	 */
+	@Bean
+	public Cache<String, Long> listingTotalsCache(MeterRegistry meterRegistry) {
+		Cache<String, Long> cache = Caffeine.newBuilder()
+											.maximumSize(listingTotalsMaximumSize)
+											.expireAfterWrite(listingTotalsExpireAfterWrite)
+											.recordStats()
+											.build();
+
+		return CaffeineCacheMetrics.monitor(meterRegistry, cache, LISTING_TOTALS);
+	}
+
+	private Expiry<String, Optional<Book>> expiry(Duration hitDuration, Duration missDuration) {
+		return new Expiry<String, Optional<Book>>() {
+
+			@Override
+			public long expireAfterCreate(String key, Optional<Book> value, long currentTime) {
+				return value.isPresent() ? hitDuration.toNanos() : missDuration.toNanos();
+			}
+
+			@Override
+			public long expireAfterUpdate(String key, Optional<Book> value, long currentTime, long currentDuration) {
+				return expireAfterCreate(key, value, currentTime);
+			}
+
+			@Override
+			public long expireAfterRead(String key, Optional<Book> value, long currentTime, long currentDuration) {
+				return currentDuration;
+			}
+		};
+	}
+}
@@ -0,0 +1,34 @@
+package br.com.renatoschlogel.libraryapi.config;
+
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import br.com.renatoschlogel.libraryapi.service.impl.CheckoutCoordinator;
+import br.com.renatoschlogel.libraryapi.service.impl.MailDispatcher;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.binder.MeterBinder;
+
+@Configuration
+public class MetricsConfig {
+
+	/**
+	 * E-mails aguardando envio na fila do dispatcher.
+	 */
+	@Bean
+	public MeterBinder mailQueueMetrics(MailDispatcher mailDispatcher) {
+		return meterRegistry -> Gauge.builder("library.mail.queue", mailDispatcher, MailDispatcher::getQueueSize)
+									 .description("E-mails aguardando envio")
+									 .register(meterRegistry);
+	}
+
+	/**
+	 * Empréstimos esperando o lock do livro; as devoluções não usam o lock.
+	 */
+	@Bean
+	public MeterBinder checkoutQueueMetrics(CheckoutCoordinator checkoutCoordinator) {
+		return meterRegistry -> Gauge.builder("library.loans.checkout.waiting", checkoutCoordinator, CheckoutCoordinator::getQueueLength)
+									 .description("Empréstimos esperando o lock do livro")
+									 .register(meterRegistry);
+	}
+
+}
@@ -0,0 +1,74 @@
+package br.com.renatoschlogel.libraryapi.config;
+
+import java.lang.reflect.Method;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.Around;
+import org.aspectj.lang.annotation.Aspect;
+import org.aspectj.lang.reflect.MethodSignature;
+import org.springframework.stereotype.Component;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+/**
+ * Mede a duração das operações dos serviços, dos repositórios e das tarefas agendadas, com um timer
+ * por camada ({@code library.service}, {@code library.repository} e {@code library.job}) e a operação
+ * como tag, no formato "BookServiceImpl.incluir".
+ *
+ * <p>Cada timer é criado na primeira chamada do método e guardado, então as chamadas seguintes custam
+ * apenas a leitura do mapa e a medição. Os histogramas de percentis são ligados pelas propriedades
+ * {@code management.metrics.distribution.*} do prefixo {@code library}.</p>
+ */
+@Aspect
+@Component
+public class OperationTimingAspect {
+
+	private final MeterRegistry meterRegistry;
+	private final Map<Method, Timer> timers = new ConcurrentHashMap<>();
+
+	public OperationTimingAspect(MeterRegistry meterRegistry) {
+		this.meterRegistry = meterRegistry;
+	}
+
+	@Around("execution(public * br.com.renatoschlogel.libraryapi.service.impl.*ServiceImpl.*(..))")
+	public Object timeService(ProceedingJoinPoint joinPoint) throws Throwable {
+		return time("library.service", joinPoint);
+	}
+
+	/**
+	 * Apenas os métodos declarados nos repositórios da aplicação; os herdados do Spring Data, como save,
+	 * ficariam com o nome da interface genérica e não diriam de qual repositório vieram.
+	 */
+	@Around("execution(* br.com.renatoschlogel.libraryapi.model.repository.*Repository.*(..)) "
+		  + "&& !execution(* org.springframework.data..*.*(..))")
+	public Object timeRepository(ProceedingJoinPoint joinPoint) throws Throwable {
+		return time("library.repository", joinPoint);
+	}
+
+	@Around("@annotation(org.springframework.scheduling.annotation.Scheduled)")
+	public Object timeJob(ProceedingJoinPoint joinPoint) throws Throwable {
+		return time("library.job", joinPoint);
+	}
+
+	private Object time(String name, ProceedingJoinPoint joinPoint) throws Throwable {
+		Method method = ((MethodSignature) joinPoint.getSignature()).getMethod();
+		Timer timer = timers.get(method);
+		if (timer == null) {
+			timer = timers.computeIfAbsent(method, key -> Timer.builder(name)
+															   .tag("operation", key.getDeclaringClass().getSimpleName() + "." + key.getName())
+															   .register(meterRegistry));
+		}
+		
+		long start = System.nanoTime();
+		try {
+			return joinPoint.proceed();
+		} finally {
+			timer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+		}
+	}
+
+}
@@ -0,0 +1,144 @@
+package br.com.renatoschlogel.libraryapi.config;
+
+import java.sql.ResultSet;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import net.ttddyy.dsproxy.ExecutionInfo;
+import net.ttddyy.dsproxy.QueryInfo;
+import net.ttddyy.dsproxy.listener.MethodExecutionContext;
+import net.ttddyy.dsproxy.listener.MethodExecutionListener;
+import net.ttddyy.dsproxy.listener.QueryExecutionListener;
+
+/**
+ * Recebe os comandos SQL do proxy do DataSource e os acumula no {@link SqlStatistics} aberto na thread
+ * atual, por requisição HTTP ou por execução agendada. Ao encerrar, os totais viram métricas
+ * ({@code library.sql.*}, com o escopo e a operação como tags) e os comandos repetidos a partir de
+ * {@code application.sql.n-plus-one-threshold} vezes são registrados como suspeitos de N+1.
+ *
+ * <p>Comandos mais lentos que {@code application.sql.slow-query-threshold} são registrados no log
+ * mesmo fora de um escopo.</p>
+ */
+@Component
+@Slf4j
+public class SqlRecorder implements QueryExecutionListener, MethodExecutionListener {
+
+	private final ThreadLocal<SqlStatistics> current = new ThreadLocal<>();
+	private final ObjectProvider<MeterRegistry> meterRegistry;
+	private final long slowQueryMillis;
+	private final int nPlusOneThreshold;
+
+	/**
+	 * O registro de métricas é obtido só ao encerrar um escopo: o recorder é criado junto com o
+	 * DataSource, antes dos beans de que as métricas dependem.
+	 */
+	public SqlRecorder(ObjectProvider<MeterRegistry> meterRegistry, 
+					   @Value("${application.sql.slow-query-threshold}") Duration slowQueryThreshold, 
+					   @Value("${application.sql.n-plus-one-threshold}") int nPlusOneThreshold) {
+		this.meterRegistry = meterRegistry;
+		this.slowQueryMillis = slowQueryThreshold.toMillis();
+		this.nPlusOneThreshold = nPlusOneThreshold;
+	}
+
+	/**
+	 * Abre um escopo na thread atual. Um escopo aberto dentro de outro soma os seus totais ao de fora ao encerrar.
+	 */
+	public SqlStatistics begin() {
+		SqlStatistics statistics = new SqlStatistics(current.get());
+		current.set(statistics);
+		return statistics;
+	}
+
+	/**
+	 * Encerra o escopo, registrando as métricas e os suspeitos de N+1 da operação informada.
+	 */
+	public void end(SqlStatistics statistics, String scope, String operation) {
+		SqlStatistics previous = statistics.getPrevious();
+		if (previous == null) {
+			current.remove();
+		} else {
+			current.set(previous);
+			previous.addAll(statistics);
+		}
+		
+		MeterRegistry meterRegistry = this.meterRegistry.getObject();
+		Tags tags = Tags.of("scope", scope, "operation", operation);
+		DistributionSummary.builder("library.sql.statements").tags(tags).register(meterRegistry).record(statistics.getStatements());
+		DistributionSummary.builder("library.sql.rows").tags(tags).register(meterRegistry).record(statistics.getRows());
+		Timer.builder("library.sql.time").tags(tags).register(meterRegistry).record(statistics.getElapsedMillis(), TimeUnit.MILLISECONDS);
+		
+		Map<String, Integer> repeated = statistics.getRepeated(nPlusOneThreshold);
+		if (!repeated.isEmpty()) {
+			Counter.builder("library.sql.n_plus_one").tags(tags).register(meterRegistry).increment();
+			repeated.forEach((sql, executions) -> log.warn("Possível N+1 em {}: {} execuções de {}", operation, executions, sql));
+		}
+	}
+
+	@Override
+	public void beforeQuery(ExecutionInfo executionInfo, List<QueryInfo> queries) {
+	}
+
+	@Override
+	public void afterQuery(ExecutionInfo executionInfo, List<QueryInfo> queries) {
+		String sql = queries.size() == 1 ? queries.get(0).getQuery() 
+										 : queries.stream().map(QueryInfo::getQuery).collect(Collectors.joining("; "));
+		
+		if (executionInfo.getElapsedTime() >= slowQueryMillis) {
+			log.warn("Comando SQL lento ({} ms): {}", executionInfo.getElapsedTime(), sql);
+		}
+		
+		SqlStatistics statistics = current.get();
+		if (statistics != null) {
+			statistics.record(sql, executionInfo.getElapsedTime(), affectedRows(executionInfo.getResult()));
+		}
+	}
+
+	@Override
+	public void beforeMethod(MethodExecutionContext executionContext) {
+	}
+
+	/**
+	 * Conta as linhas lidas a cada {@code ResultSet.next()} que encontra uma linha.
+	 */
+	@Override
+	public void afterMethod(MethodExecutionContext executionContext) {
+		if (!(executionContext.getTarget() instanceof ResultSet) 
+				|| !"next".equals(executionContext.getMethod().getName()) 
+				|| !Boolean.TRUE.equals(executionContext.getResult())) {
+			return;
+		}
+		
+		SqlStatistics statistics = current.get();
+		if (statistics != null) {
+			statistics.addRows(1);
+		}
+	}
+
+	private long affectedRows(Object result) {
+		if (result instanceof Integer) {
+			return Math.max(0, (Integer) result);
+		}
+		if (result instanceof int[]) {
+			long rows = 0;
+			for (int batchRows : (int[]) result) {
+				rows += Math.max(0, batchRows);
+			}
+			return rows;
+		}
+		return 0;
+	}
+
+}
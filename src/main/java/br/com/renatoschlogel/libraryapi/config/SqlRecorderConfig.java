@@ -0,0 +1,47 @@
+package br.com.renatoschlogel.libraryapi.config;
+
+import javax.sql.DataSource;
+
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.web.servlet.FilterRegistrationBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import net.ttddyy.dsproxy.support.ProxyDataSource;
+import net.ttddyy.dsproxy.support.ProxyDataSourceBuilder;
+
+@Configuration
+public class SqlRecorderConfig {
+
+	/**
+	 * Envolve o DataSource num proxy que repassa cada comando, e cada linha lida, ao {@link SqlRecorder}.
+	 */
+	@Bean
+	public static BeanPostProcessor sqlRecorderDataSourcePostProcessor(ObjectProvider<SqlRecorder> sqlRecorder) {
+		return new BeanPostProcessor() {
+
+			@Override
+			public Object postProcessAfterInitialization(Object bean, String beanName) {
+				if (!(bean instanceof DataSource) || bean instanceof ProxyDataSource) {
+					return bean;
+				}
+				
+				SqlRecorder recorder = sqlRecorder.getObject();
+				return ProxyDataSourceBuilder.create(beanName, (DataSource) bean)
+											 .listener(recorder)
+											 .methodListener(recorder)
+											 .proxyResultSet()
+											 .build();
+			}
+		};
+	}
+
+	@Bean
+	public FilterRegistrationBean<SqlStatisticsFilter> sqlStatisticsFilter(SqlRecorder sqlRecorder, 
+																		   @Value("${application.sql.response-headers}") boolean responseHeaders) {
+		return new FilterRegistrationBean<>(new SqlStatisticsFilter(sqlRecorder, responseHeaders));
+	}
+
+}
@@ -0,0 +1,74 @@
+package br.com.renatoschlogel.libraryapi.config;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+/**
+ * Comandos SQL executados durante uma requisição HTTP ou uma execução agendada, acumulados pelo {@link SqlRecorder}.
+ */
+public class SqlStatistics {
+
+	private final SqlStatistics previous;
+	private final Map<String, Integer> executionsBySql = new HashMap<>();
+	private int statements;
+	private long rows;
+	private long elapsedMillis;
+
+	SqlStatistics(SqlStatistics previous) {
+		this.previous = previous;
+	}
+
+	SqlStatistics getPrevious() {
+		return previous;
+	}
+
+	void record(String sql, long elapsedMillis, long rows) {
+		this.statements++;
+		this.elapsedMillis += elapsedMillis;
+		this.rows += rows;
+		executionsBySql.merge(sql, 1, Integer::sum);
+	}
+
+	void addRows(long rows) {
+		this.rows += rows;
+	}
+
+	void addAll(SqlStatistics statistics) {
+		this.statements += statistics.statements;
+		this.elapsedMillis += statistics.elapsedMillis;
+		this.rows += statistics.rows;
+		statistics.executionsBySql.forEach((sql, executions) -> executionsBySql.merge(sql, executions, Integer::sum));
+	}
+
+	public int getStatements() {
+		return statements;
+	}
+
+	/** Linhas lidas pelas consultas mais as alteradas pelos inserts, updates e deletes. */
+	public long getRows() {
+		return rows;
+	}
+
+	public long getElapsedMillis() {
+		return elapsedMillis;
+	}
+
+	/** Quantas vezes cada comando foi executado; um lote JDBC conta como uma execução. */
+	public Map<String, Integer> getExecutionsBySql() {
+		return Collections.unmodifiableMap(executionsBySql);
+	}
+
+	/**
+	 * Comandos idênticos executados pelo menos {@code threshold} vezes, o sinal de uma consulta
+	 * feita para cada linha de uma consulta anterior (N+1).
+	 */
+	public Map<String, Integer> getRepeated(int threshold) {
+		return executionsBySql.entrySet()
+							  .stream()
+							  .filter(entry -> entry.getValue() >= threshold)
+							  .collect(Collectors.toMap(Map.Entry::getKey, Map.Entry::getValue));
+	}
+
+}
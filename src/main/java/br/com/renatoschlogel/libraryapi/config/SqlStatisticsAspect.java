@@ -0,0 +1,32 @@
+package br.com.renatoschlogel.libraryapi.config;
+
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.Around;
+import org.aspectj.lang.annotation.Aspect;
+import org.springframework.stereotype.Component;
+
+/**
+ * Abre um escopo do {@link SqlRecorder} para cada execução das tarefas agendadas.
+ */
+@Aspect
+@Component
+public class SqlStatisticsAspect {
+
+	private final SqlRecorder sqlRecorder;
+
+	public SqlStatisticsAspect(SqlRecorder sqlRecorder) {
+		this.sqlRecorder = sqlRecorder;
+	}
+
+	@Around("@annotation(org.springframework.scheduling.annotation.Scheduled)")
+	public Object recordJob(ProceedingJoinPoint joinPoint) throws Throwable {
+		SqlStatistics statistics = sqlRecorder.begin();
+		try {
+			return joinPoint.proceed();
+		} finally {
+			sqlRecorder.end(statistics, "job", joinPoint.getSignature().getDeclaringType().getSimpleName() 
+											   + "." + joinPoint.getSignature().getName());
+		}
+	}
+
+}
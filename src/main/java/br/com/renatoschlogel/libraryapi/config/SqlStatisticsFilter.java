@@ -0,0 +1,113 @@
+package br.com.renatoschlogel.libraryapi.config;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpServletResponseWrapper;
+
+import org.springframework.web.filter.OncePerRequestFilter;
+import org.springframework.web.servlet.HandlerMapping;
+
+/**
+ * Abre um escopo do {@link SqlRecorder} para cada requisição, com a operação no formato "GET /api/books/{id}".
+ *
+ * <p>Com os cabeçalhos ligados, os totais vão em X-Sql-Statements, X-Sql-Rows e X-Sql-Time-Ms, gravados
+ * logo antes do corpo da resposta; comandos executados enquanto o corpo é escrito entram apenas nas
+ * métricas. As exportações, escritas em outra thread, não são contadas.</p>
+ */
+public class SqlStatisticsFilter extends OncePerRequestFilter {
+
+	private final SqlRecorder sqlRecorder;
+	private final boolean responseHeaders;
+
+	public SqlStatisticsFilter(SqlRecorder sqlRecorder, boolean responseHeaders) {
+		this.sqlRecorder = sqlRecorder;
+		this.responseHeaders = responseHeaders;
+	}
+
+	@Override
+	protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+			throws ServletException, IOException {
+		SqlStatistics statistics = sqlRecorder.begin();
+		try {
+			filterChain.doFilter(request, responseHeaders ? new HeaderWritingResponse(response, statistics) : response);
+		} finally {
+			if (responseHeaders && !response.isCommitted()) {
+				writeHeaders(response, statistics);
+			}
+			sqlRecorder.end(statistics, "http", operationOf(request));
+		}
+	}
+
+	private String operationOf(HttpServletRequest request) {
+		Object pattern = request.getAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE);
+		return request.getMethod() + " " + (pattern == null ? "UNKNOWN" : pattern);
+	}
+
+	private static void writeHeaders(HttpServletResponse response, SqlStatistics statistics) {
+		response.setHeader("X-Sql-Statements", String.valueOf(statistics.getStatements()));
+		response.setHeader("X-Sql-Rows", String.valueOf(statistics.getRows()));
+		response.setHeader("X-Sql-Time-Ms", String.valueOf(statistics.getElapsedMillis()));
+	}
+
+	/**
+	 * Grava os cabeçalhos antes de qualquer escrita que possa enviar a resposta.
+	 */
+	private static class HeaderWritingResponse extends HttpServletResponseWrapper {
+
+		private final SqlStatistics statistics;
+
+		HeaderWritingResponse(HttpServletResponse response, SqlStatistics statistics) {
+			super(response);
+			this.statistics = statistics;
+		}
+
+		@Override
+		public ServletOutputStream getOutputStream() throws IOException {
+			writeHeaders();
+			return super.getOutputStream();
+		}
+
+		@Override
+		public PrintWriter getWriter() throws IOException {
+			writeHeaders();
+			return super.getWriter();
+		}
+
+		@Override
+		public void flushBuffer() throws IOException {
+			writeHeaders();
+			super.flushBuffer();
+		}
+
+		@Override
+		public void sendError(int sc) throws IOException {
+			writeHeaders();
+			super.sendError(sc);
+		}
+
+		@Override
+		public void sendError(int sc, String msg) throws IOException {
+			writeHeaders();
+			super.sendError(sc, msg);
+		}
+
+		@Override
+		public void sendRedirect(String location) throws IOException {
+			writeHeaders();
+			super.sendRedirect(location);
+		}
+
+		private void writeHeaders() {
+			if (!isCommitted()) {
+				SqlStatisticsFilter.writeHeaders((HttpServletResponse) getResponse(), statistics);
+			}
+		}
+	}
+
+}
@@ -2,17 +2,22 @@ package br.com.renatoschlogel.libraryapi.model.entity;
 
 import java.util.List;
 
+import javax.persistence.Column;
 import javax.persistence.Entity;
 import javax.persistence.GeneratedValue;
 import javax.persistence.GenerationType;
 import javax.persistence.Id;
 import javax.persistence.OneToMany;
+import javax.persistence.SequenceGenerator;
 import javax.persistence.Table;
+import javax.persistence.Version;
 
 import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Data;
+import lombok.EqualsAndHashCode;
 import lombok.NoArgsConstructor;
+import lombok.ToString;
 
 @Data
 @Builder
@@ -23,16 +28,28 @@ import lombok.NoArgsConstructor;
 public class Book {
 
 	@Id
-	@GeneratedValue(strategy = GenerationType.IDENTITY)
+	@GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "book_seq")
+	@SequenceGenerator(name = "book_seq", sequenceName = "book_seq", allocationSize = 50)
 	private Long id;
 	
 	private String title;
 	
 	private String author;
 	
+	@Column(unique = true)
 	private String isbn;
 	
+	/** Empréstimo em aberto do livro; alterado apenas pelas atualizações condicionais do BookRepository. */
+	@Column(unique = true, insertable = false, updatable = false)
+	private Long activeLoanId;
+	
+	/** Incrementada a cada alteração do livro, inclusive ao emprestar ou devolver; base da ETag do livro e dos seus empréstimos. */
+	@Version
+	private Long version;
+	
 	@OneToMany(mappedBy = "book")
+	@ToString.Exclude
+	@EqualsAndHashCode.Exclude
 	private List<Loan> loans;
 		
 }
@@ -1,19 +1,25 @@
 package br.com.renatoschlogel.libraryapi.model.entity;
 
 import java.time.LocalDate;
+import java.time.LocalDateTime;
 
 import javax.persistence.Column;
 import javax.persistence.Entity;
+import javax.persistence.FetchType;
 import javax.persistence.GeneratedValue;
 import javax.persistence.GenerationType;
 import javax.persistence.Id;
 import javax.persistence.JoinColumn;
 import javax.persistence.ManyToOne;
+import javax.persistence.SequenceGenerator;
+import javax.persistence.Version;
 
 import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Data;
+import lombok.EqualsAndHashCode;
 import lombok.NoArgsConstructor;
+import lombok.ToString;
 
 @Data
 @Builder
@@ -23,7 +29,8 @@ import lombok.NoArgsConstructor;
 public class Loan {
 	
 	@Id
-	@GeneratedValue(strategy = GenerationType.IDENTITY)
+	@GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "loan_seq")
+	@SequenceGenerator(name = "loan_seq", sequenceName = "loan_seq", allocationSize = 50)
 	private Long id;
 	
 	@Column(length = 100)
@@ -31,12 +38,28 @@ public class Loan {
 
 	private String customerEmail;
 	
+	/** Carregado sob demanda; as listagens trazem o livro junto pela própria consulta. */
 	@JoinColumn(name = "idBook")
-	@ManyToOne
+	@ManyToOne(fetch = FetchType.LAZY)
+	@ToString.Exclude
+	@EqualsAndHashCode.Exclude
 	private Book book;
 	
 	private LocalDate loanDate;
 	
-	private Boolean returned;
+	@Builder.Default
+	@Column(nullable = false)
+	private Boolean returned = false;
+
+	/** Último nível de atraso avisado ao cliente; nulo enquanto nenhum aviso foi enviado. */
+	private Integer notificationLevel;
+
+	private LocalDateTime notifiedAt;
+
+	/** Data em que o empréstimo atinge o próximo nível de atraso; nula quando não há mais níveis a avisar. */
+	private LocalDate nextNotificationDate;
+
+	@Version
+	private Long version;
 
 }
@@ -0,0 +1,9 @@
+package br.com.renatoschlogel.libraryapi.model.repository;
+
+public interface BookIsbnView {
+
+	Long getId();
+
+	String getIsbn();
+
+}
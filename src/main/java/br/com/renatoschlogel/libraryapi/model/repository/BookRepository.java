@@ -1,15 +1,161 @@
 package br.com.renatoschlogel.libraryapi.model.repository;
 
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
+import java.util.stream.Stream;
 
+import javax.persistence.QueryHint;
+
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
 
 import br.com.renatoschlogel.libraryapi.model.entity.Book;
 
 public interface BookRepository extends JpaRepository<Book, Long>{
 
+	/** Mesmo critério do filtro por exemplo: id exato e textos contidos, sem diferenciar maiúsculas. */
+	String FILTER = " (:id is null or b.id = :id) "
+				  + " and (:title is null or lower(b.title) like :title) "
+				  + " and (:author is null or lower(b.author) like :author) "
+				  + " and (:isbn is null or lower(b.isbn) like :isbn) ";
+
+	/** Colunas do livro devolvidas pelas listagens, sem montar as entidades no contexto de persistência. */
+	String VIEW = " select b.id as id, b.title as title, b.author as author, b.isbn as isbn from Book b ";
+
 	boolean existsByIsbn(String isbn);
 
 	Optional<Book> findByIsbn(String isbn);
 
+	@Query(value = " select b.id from Book b where b.isbn = :isbn ")
+	Optional<Long> findIdByIsbn(@Param("isbn") String isbn);
+
+	@Query(value = " select b.version from Book b where b.id = :id ")
+	Optional<Long> findVersionById(@Param("id") Long id);
+
+	@Query(value = " select b.isbn from Book b where b.isbn in :isbns ")
+	List<String> findIsbnByIsbnIn(@Param("isbns") Collection<String> isbns);
+
+	@Query(value = VIEW + " where b.id > :afterId and " + FILTER + " order by b.id ")
+	Slice<BookView> findAfter(@Param("afterId") Long afterId, @Param("id") Long id, @Param("title") String title, 
+							  @Param("author") String author, @Param("isbn") String isbn, Pageable pageable);
+
+	@Query(value = VIEW + " where " + FILTER)
+	Slice<BookView> findSliceByFilter(@Param("id") Long id, @Param("title") String title, @Param("author") String author, 
+									  @Param("isbn") String isbn, Pageable pageable);
+
+	@Query(value = " select count(b) from Book b where " + FILTER)
+	long countByFilter(@Param("id") Long id, @Param("title") String title, @Param("author") String author, @Param("isbn") String isbn);
+
+	@Query(value = " select b.id as id, b.isbn as isbn from Book b where b.isbn in :isbns ")
+	List<BookIsbnView> findIdByIsbnIn(@Param("isbns") Collection<String> isbns);
+
+	@Query(value = " select b from Book b order by b.id ")
+	@QueryHints(@QueryHint(name = "org.hibernate.fetchSize", value = "1000"))
+	Stream<Book> streamAll();
+
+	@Query(value = VIEW + " where b.id in :ids ")
+	List<BookView> findViewsByIdIn(@Param("ids") Collection<Long> ids);
+
+	@Query(value = VIEW)
+	@QueryHints(@QueryHint(name = "org.hibernate.fetchSize", value = "1000"))
+	Stream<BookView> streamAllViews();
+
+	/**
+	 * Marca o livro como emprestado pelo empréstimo informado, desde que não haja outro empréstimo em aberto.
+	 * A versão do livro avança junto, invalidando a ETag da sua lista de empréstimos.
+	 * @return 0 quando o livro já está emprestado
+	 */
+	@Modifying
+	@Query(value = " update Book b set b.activeLoanId = :loanId, b.version = b.version + 1 "
+				 + "  where b.id = :bookId "
+				 + "    and (b.activeLoanId is null or b.activeLoanId = :loanId) ")
+	int markLoaned(@Param("bookId") Long bookId, @Param("loanId") Long loanId);
+
+	/**
+	 * Marca de uma vez cada livro dos empréstimos informados como emprestado por eles, apenas os que
+	 * não estiverem com outro empréstimo em aberto. Cada livro deve aparecer em um único empréstimo.
+	 * @return quantidade de livros marcados; menor que a de empréstimos quando algum já estava emprestado
+	 */
+	@Modifying
+	@Query(value = " update Book b set b.activeLoanId = (select l.id from Loan l where l.id in :loanIds and l.book.id = b.id), "
+				 + "                   b.version = b.version + 1 "
+				 + "  where b.id in (select l.book.id from Loan l where l.id in :loanIds) "
+				 + "    and b.activeLoanId is null ")
+	int markLoanedByLoanIdIn(@Param("loanIds") Collection<Long> loanIds);
+
+	@Query(value = " select b.id from Book b where b.id in :ids and b.activeLoanId is null ")
+	List<Long> findAvailableIdsByIdIn(@Param("ids") Collection<Long> ids);
+
+	/**
+	 * Nova versão para os livros que ganharam empréstimos sem mudar de situação, como os já devolvidos da importação.
+	 */
+	@Modifying
+	@Query(value = " update Book b set b.version = b.version + 1 where b.id in :ids ")
+	int incrementVersionByIdIn(@Param("ids") Collection<Long> ids);
+
+	/**
+	 * Libera o livro que está com o empréstimo informado, localizado pelo próprio empréstimo em aberto.
+	 */
+	@Modifying
+	@Query(value = " update Book b set b.activeLoanId = null, b.version = b.version + 1 "
+				 + "  where b.activeLoanId = :loanId ")
+	int markReturned(@Param("loanId") Long loanId);
+
+	@Modifying
+	@Query(value = " update Book b set b.activeLoanId = null, b.version = b.version + 1 "
+				 + "  where b.activeLoanId in :loanIds ")
+	int markReturnedByLoanIdIn(@Param("loanIds") Collection<Long> loanIds);
+
+	/**
+	 * Desfaz a devolução: volta a marcar o livro do empréstimo como emprestado por ele, desde que
+	 * não tenha sido emprestado de novo nesse meio tempo.
+	 * @return 0 quando o livro já está com outro empréstimo
+	 */
+	@Modifying
+	@Query(value = " update Book b set b.activeLoanId = :loanId, b.version = b.version + 1 "
+				 + "  where b.id = (select l.book.id from Loan l where l.id = :loanId) "
+				 + "    and (b.activeLoanId is null or b.activeLoanId = :loanId) ")
+	int markReopened(@Param("loanId") Long loanId);
+
+	/**
+	 * Desfaz de uma vez a devolução dos empréstimos informados, apenas nos livros sem empréstimo em aberto.
+	 * Com mais de um empréstimo do mesmo livro, o livro volta para o de maior id.
+	 * @see #findActiveLoanIdsIn(Collection)
+	 */
+	@Modifying
+	@Query(value = " update Book b set b.activeLoanId = (select max(l.id) from Loan l where l.id in :loanIds and l.book.id = b.id), "
+				 + "                   b.version = b.version + 1 "
+				 + "  where b.id in (select l.book.id from Loan l where l.id in :loanIds) "
+				 + "    and b.activeLoanId is null ")
+	int markReopenedByLoanIdIn(@Param("loanIds") Collection<Long> loanIds);
+
+	/**
+	 * Empréstimos informados que estão em aberto em algum livro.
+	 */
+	@Query(value = " select b.activeLoanId from Book b where b.activeLoanId in :loanIds ")
+	List<Long> findActiveLoanIdsIn(@Param("loanIds") Collection<Long> loanIds);
+
+	/**
+	 * Altera apenas título e autor; com a versão informada, só atualiza se o livro ainda estiver nela.
+	 * @return 0 quando o livro não existe ou está em outra versão
+	 */
+	@Modifying
+	@Query(value = " update Book b set b.title = :title, b.author = :author, b.version = b.version + 1 "
+				 + "  where b.id = :id "
+				 + "    and (:version is null or b.version = :version) ")
+	int updateTitleAndAuthor(@Param("id") Long id, @Param("title") String title, @Param("author") String author, 
+							 @Param("version") Long version);
+
+	@Modifying
+	@Query(value = " delete from Book b "
+				 + "  where b.id = :id "
+				 + "    and (:version is null or b.version = :version) ")
+	int deleteByIdAndVersion(@Param("id") Long id, @Param("version") Long version);
+
 }
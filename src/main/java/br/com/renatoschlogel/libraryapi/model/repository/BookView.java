@@ -0,0 +1,13 @@
+package br.com.renatoschlogel.libraryapi.model.repository;
+
+public interface BookView {
+
+	Long getId();
+
+	String getTitle();
+
+	String getAuthor();
+
+	String getIsbn();
+
+}
@@ -0,0 +1,13 @@
+package br.com.renatoschlogel.libraryapi.model.repository;
+
+public interface LateLoanView {
+
+	Long getId();
+
+	String getCustomer();
+
+	String getCustomerEmail();
+
+	String getBookTitle();
+
+}
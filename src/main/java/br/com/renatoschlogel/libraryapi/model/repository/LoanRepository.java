@@ -1,39 +1,132 @@
 package br.com.renatoschlogel.libraryapi.model.repository;
 
 import java.time.LocalDate;
+import java.util.Collection;
 import java.util.List;
+import java.util.stream.Stream;
+
+import javax.persistence.QueryHint;
 
-import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
-import br.com.renatoschlogel.libraryapi.model.entity.Book;
 import br.com.renatoschlogel.libraryapi.model.entity.Loan;
 
 @Repository
 public interface LoanRepository extends JpaRepository<Loan, Long> {
 
-	@Query(value = " select case when (count(l.id) > 0) then true else false end"
-				 + "   from Loan l "
-			     + "  where l.book = :book "
-			     + "    and (l.returned is null or l.returned = false) ")
-	boolean existsByBookAndNotReturned(@Param("book") Book book);
+	/** Apenas as colunas devolvidas pelas listagens, sem montar as entidades no contexto de persistência. */
+	String VIEW = " select l.id as id, l.customer as customer, l.customerEmail as customerEmail, l.loanDate as loanDate, "
+				+ "        b.id as bookId, b.title as bookTitle, b.author as bookAuthor, b.isbn as bookIsbn "
+				+ "   from Loan l "
+				+ "   join l.book b ";
 
-	@Query(value = " select l from Loan l"
-			     + "   join l.book b "
-			     + "  where l.customer = :customer "
-			     + "     or b.isbn = :isbn ")
-	Page<Loan> findByBookIsbnOrCustomer(@Param("isbn") String isbn, @Param("customer") String customer, Pageable pageable);
+	/** Ids dos empréstimos do cliente ou do livro, com cada ramo atendido pelo seu próprio índice. */
+	String BOOK_OR_CUSTOMER_IDS = " select id, loan_date from loan where customer = :customer "
+								+ " union "
+								+ " select id, loan_date from loan where id_book = :bookId ";
 
-	Page<Loan> findByBook(Book book, Pageable pageable);
+	String BOOK_OR_CUSTOMER_IDS_AFTER = " select id, loan_date from loan "
+									  + "  where customer = :customer "
+									  + "    and (loan_date > :loanDate or (loan_date = :loanDate and id > :id)) "
+									  + " union "
+									  + " select id, loan_date from loan "
+									  + "  where id_book = :bookId "
+									  + "    and (loan_date > :loanDate or (loan_date = :loanDate and id > :id)) ";
+
+	/**
+	 * Altera apenas a devolução; com a versão informada, só atualiza se o empréstimo ainda estiver nela.
+	 * @return 0 quando o empréstimo não existe ou está em outra versão
+	 */
+	@Modifying
+	@Query(value = " update Loan l set l.returned = :returned, l.version = l.version + 1 "
+				 + "  where l.id = :id "
+				 + "    and (:version is null or l.version = :version) ")
+	int updateReturned(@Param("id") Long id, @Param("returned") boolean returned, @Param("version") Long version);
+
+	@Modifying
+	@Query(value = " update Loan l set l.returned = :returned, l.version = l.version + 1 where l.id in :ids ")
+	int updateReturnedByIdIn(@Param("ids") Collection<Long> ids, @Param("returned") boolean returned);
+
+	@Query(value = " select l.id from Loan l where l.id in :ids ")
+	List<Long> findIdsByIdIn(@Param("ids") Collection<Long> ids);
+
+	@Query(value = VIEW + " where l.customer = :customer ")
+	Slice<LoanView> findSliceByCustomer(@Param("customer") String customer, Pageable pageable);
+
+	long countByCustomer(String customer);
+
+	@Query(value = VIEW + " where l.book.id = :bookId ")
+	Slice<LoanView> findSliceByBookId(@Param("bookId") Long bookId, Pageable pageable);
+
+	long countByBookId(Long bookId);
+
+	@Query(value = " select u.id from (" + BOOK_OR_CUSTOMER_IDS + ") u order by u.loan_date, u.id limit :limit offset :offset ", 
+		   nativeQuery = true)
+	List<Long> findIdsByBookOrCustomer(@Param("bookId") Long bookId, @Param("customer") String customer, 
+									   @Param("limit") int limit, @Param("offset") long offset);
+
+	@Query(value = " select u.id from (" + BOOK_OR_CUSTOMER_IDS_AFTER + ") u order by u.loan_date, u.id limit :limit ", 
+		   nativeQuery = true)
+	List<Long> findIdsByBookOrCustomerAfter(@Param("bookId") Long bookId, @Param("customer") String customer, 
+											@Param("loanDate") LocalDate loanDate, @Param("id") Long id, @Param("limit") int limit);
+
+	@Query(value = " select count(*) from (" + BOOK_OR_CUSTOMER_IDS + ") u ", nativeQuery = true)
+	long countByBookOrCustomer(@Param("bookId") Long bookId, @Param("customer") String customer);
+
+	@Query(value = VIEW + " where l.id in :ids ")
+	List<LoanView> findViewsByIdIn(@Param("ids") Collection<Long> ids);
+
+	@Query(value = VIEW 
+				 + "  where l.customer = :customer "
+				 + "  order by l.loanDate, l.id ")
+	Slice<LoanView> findByCustomerOrderByLoanDate(@Param("customer") String customer, Pageable pageable);
+
+	@Query(value = VIEW 
+				 + "  where l.customer = :customer "
+				 + "    and (l.loanDate > :loanDate or (l.loanDate = :loanDate and l.id > :id)) "
+				 + "  order by l.loanDate, l.id ")
+	Slice<LoanView> findByCustomerAfter(@Param("customer") String customer, @Param("loanDate") LocalDate loanDate, 
+										@Param("id") Long id, Pageable pageable);
+
+	@Query(value = VIEW 
+				 + "  where l.book.id = :bookId "
+				 + "  order by l.loanDate, l.id ")
+	Slice<LoanView> findByBookIdOrderByLoanDate(@Param("bookId") Long bookId, Pageable pageable);
+
+	@Query(value = VIEW 
+				 + "  where l.book.id = :bookId "
+				 + "    and (l.loanDate > :loanDate or (l.loanDate = :loanDate and l.id > :id)) "
+				 + "  order by l.loanDate, l.id ")
+	Slice<LoanView> findByBookIdAfter(@Param("bookId") Long bookId, @Param("loanDate") LocalDate loanDate, 
+									  @Param("id") Long id, Pageable pageable);
+
+	@Query(value = " select distinct l.customerEmail from Loan l"
+				 + "  where l.nextNotificationDate <= :referenceDate "
+				 + "    and l.returned = false "
+				 + "    and l.customerEmail > :afterCustomerEmail "
+				 + "  order by l.customerEmail ")
+	List<String> findCustomersToNotify(@Param("referenceDate") LocalDate referenceDate, @Param("afterCustomerEmail") String afterCustomerEmail, 
+									   Pageable pageable);
+
+	@Query(value = " select l.id as id, l.customer as customer, l.customerEmail as customerEmail, b.title as bookTitle from Loan l"
+				 + "   join l.book b "
+				 + "  where l.customerEmail in :customerEmails "
+				 + "    and l.nextNotificationDate <= :referenceDate "
+				 + "    and l.returned = false "
+				 + "  order by l.customerEmail, l.id ")
+	List<LateLoanView> findLoansToNotify(@Param("customerEmails") Collection<String> customerEmails, @Param("referenceDate") LocalDate referenceDate);
 
-	
 	@Query(value = " select l from Loan l"
-				 + "  where l.loanDate < :maximumReturnDate "
-			     + "    and (l.returned is null or l.returned = false) ")
-	List<Loan> findByLoanDateLessThanAndNotReturned(@Param("maximumReturnDate") LocalDate maximumReturnDate );
+				 + "   join fetch l.book "
+				 + "  order by l.id ")
+	@QueryHints(@QueryHint(name = "org.hibernate.fetchSize", value = "1000"))
+	Stream<Loan> streamAll();
 	
 }
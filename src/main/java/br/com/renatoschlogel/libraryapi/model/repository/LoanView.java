@@ -0,0 +1,26 @@
+package br.com.renatoschlogel.libraryapi.model.repository;
+
+import java.time.LocalDate;
+
+/**
+ * Colunas do empréstimo e do livro devolvidas nas listagens, lidas sem carregar as entidades.
+ */
+public interface LoanView {
+
+	Long getId();
+
+	String getCustomer();
+
+	String getCustomerEmail();
+
+	LocalDate getLoanDate();
+
+	Long getBookId();
+
+	String getBookTitle();
+
+	String getBookAuthor();
+
+	String getBookIsbn();
+
+}
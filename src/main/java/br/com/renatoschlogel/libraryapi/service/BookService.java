@@ -1,23 +1,70 @@
 package br.com.renatoschlogel.libraryapi.service;
 
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 
 import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Slice;
 
 import br.com.renatoschlogel.libraryapi.model.entity.Book;
+import br.com.renatoschlogel.libraryapi.model.repository.BookView;
 
 public interface BookService {
 
 	Book incluir(Book book);
 
+	List<Book> incluirLote(List<Book> books);
+
 	Optional<Book> getById(Long id);
 
-	void delete(Book book);
+	/**
+	 * Versão atual do livro, lida sem carregar a entidade.
+	 */
+	Optional<Long> getVersion(Long id);
+
+	/**
+	 * Exclui o livro sem carregá-lo; com a versão informada, só exclui se o livro ainda estiver nela.
+	 * @return false quando o livro não existe
+	 * @throws org.springframework.dao.OptimisticLockingFailureException quando o livro está em outra versão
+	 */
+	boolean delete(Long id, Long version);
+
+	/**
+	 * Altera título e autor do livro sem carregá-lo antes; com a versão informada, só altera se o livro ainda estiver nela.
+	 * @return o livro como ficou gravado, lido na mesma transação, ou vazio quando o livro não existe
+	 * @throws org.springframework.dao.OptimisticLockingFailureException quando o livro está em outra versão
+	 */
+	Optional<Book> update(Book book, Long version);
 
-	Book update(Book book);
+	/**
+	 * Filtra os livros por título, autor e isbn. O casamento depende do caminho da pesquisa:
+	 * <ul>
+	 * <li>sem ordenação e sem id, pelo índice em memória: sem acentos, cada termo casa com o início
+	 * das palavras do campo, ou só com a palavra inteira quando tem menos de três caracteres, e os
+	 * livros vêm por relevância;</li>
+	 * <li>com ordenação ou id, pelo banco: cada filtro casa com qualquer trecho do campo, sem ignorar
+	 * acentos. Assim "clean" também encontra "Unclean" e "co" encontra "Clean Code", o que o índice não faz.</li>
+	 * </ul>
+	 */
+	Page<BookView> find(Book filter, org.springframework.data.domain.Pageable pageRequest);
 
-	Page<Book> find(Book filter, org.springframework.data.domain.Pageable pageRequest);
+	/**
+	 * Mesmo filtro e mesmo casamento do {@link #find}, sem o total.
+	 */
+	Slice<BookView> findSlice(Book filter, org.springframework.data.domain.Pageable pageRequest);
+
+	/**
+	 * Filtro do {@link #find} por cursor, sempre ordenado por id; só o filtro por id vai ao banco.
+	 */
+	Slice<BookView> findAfter(Book filter, Long afterId, int size);
 
 	Optional<Book> getBookByIsbn(String string);
 
+	/**
+	 * Ids dos livros dos isbns informados, por isbn, sem carregar as entidades; isbns sem livro ficam de fora.
+	 */
+	Map<String, Long> getIdsByIsbn(Collection<String> isbns);
+
 }
@@ -0,0 +1,36 @@
+package br.com.renatoschlogel.libraryapi.service;
+
+import br.com.renatoschlogel.libraryapi.exception.BusinessException;
+
+public enum DataFormat {
+
+	CSV("text/csv", "csv"),
+	NDJSON("application/x-ndjson", "ndjson");
+
+	private final String contentType;
+
+	private final String extension;
+
+	DataFormat(String contentType, String extension) {
+		this.contentType = contentType;
+		this.extension = extension;
+	}
+
+	public String getContentType() {
+		return contentType;
+	}
+
+	public String getExtension() {
+		return extension;
+	}
+
+	public static DataFormat fromName(String name) {
+		for (DataFormat format : values()) {
+			if (format.name().equalsIgnoreCase(name)) {
+				return format;
+			}
+		}
+		throw new BusinessException("Formato não suportado: " + name);
+	}
+
+}
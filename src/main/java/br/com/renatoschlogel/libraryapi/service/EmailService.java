@@ -1,9 +1,21 @@
 package br.com.renatoschlogel.libraryapi.service;
 
 import java.util.List;
+import java.util.function.Consumer;
 
 public interface EmailService {
 
-	void sendMails(String messageLateLoans, List<String> mails);
+	/**
+	 * Agenda o envio de uma mensagem para cada destinatário. O texto pode conter variáveis
+	 * no formato {nome}, substituídas pelos valores do destinatário.
+	 */
+	void sendMails(String messageTemplate, List<MailRecipient> recipients);
+
+	/**
+	 * Como {@link #sendMails(String, List)}, chamando {@code onSent} na thread de envio depois que o servidor
+	 * aceitar a mensagem do destinatário. Mensagens que esgotarem as tentativas ou ficarem na fila ao
+	 * encerrar a aplicação nunca são confirmadas.
+	 */
+	void sendMails(String messageTemplate, List<MailRecipient> recipients, Consumer<MailRecipient> onSent);
 	
 }
@@ -0,0 +1,11 @@
+package br.com.renatoschlogel.libraryapi.service;
+
+import java.io.OutputStream;
+
+public interface ExportService {
+
+	void exportBooks(OutputStream outputStream, DataFormat format);
+
+	void exportLoans(OutputStream outputStream, DataFormat format);
+
+}
@@ -0,0 +1,13 @@
+package br.com.renatoschlogel.libraryapi.service;
+
+import java.io.InputStream;
+
+import br.com.renatoschlogel.libraryapi.api.dto.ImportResultDTO;
+
+public interface ImportService {
+
+	ImportResultDTO importBooks(InputStream inputStream, DataFormat format);
+
+	ImportResultDTO importLoans(InputStream inputStream, DataFormat format);
+
+}
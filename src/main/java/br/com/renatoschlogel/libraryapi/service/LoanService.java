@@ -1,27 +1,68 @@
 package br.com.renatoschlogel.libraryapi.service;
 
+import java.time.LocalDate;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 
 import br.com.renatoschlogel.libraryapi.api.dto.LoanFilterDTO;
-import br.com.renatoschlogel.libraryapi.model.entity.Book;
 import br.com.renatoschlogel.libraryapi.model.entity.Loan;
+import br.com.renatoschlogel.libraryapi.model.repository.LateLoanView;
+import br.com.renatoschlogel.libraryapi.model.repository.LoanView;
 
 public interface LoanService {
 
 	public Loan save(Loan loan);
 
-	public Loan updateReturnedBook(Long idLoan, Boolean retorned);
+	/**
+	 * Grava de uma vez os empréstimos cujos livros estão disponíveis, numa única transação. Os livros
+	 * só precisam do id e cada um é emprestado no máximo uma vez por lote.
+	 * @return os mesmos empréstimos, sem id os que foram recusados por o livro já estar emprestado
+	 */
+	public List<Loan> saveBatch(List<Loan> loans);
+
+	/**
+	 * Registra ou desfaz a devolução sem carregar o empréstimo; com a versão informada, só altera
+	 * se o empréstimo ainda estiver nela.
+	 * @return false quando o empréstimo não existe
+	 * @throws org.springframework.dao.OptimisticLockingFailureException quando o empréstimo está em outra versão
+	 */
+	public boolean updateReturnedBook(Long idLoan, Boolean retorned, Long version);
+
+	/**
+	 * Registra ou desfaz a devolução de vários empréstimos numa única transação.
+	 * @return o motivo da recusa de cada empréstimo não alterado, por id
+	 */
+	public Map<Long, String> updateReturnedBooks(Map<Long, Boolean> returnedByLoan);
 
 	public Optional<Loan> findById(Long id);
 
-	public Page<Loan> find(LoanFilterDTO loan, Pageable pageable);
+	public Page<LoanView> find(LoanFilterDTO loan, Pageable pageable);
+
+	public Page<LoanView> getloansByBook(Long bookId, Pageable pageable);
+
+	public Slice<LoanView> findSlice(LoanFilterDTO loan, Pageable pageable);
 
-	public Page<Loan> getloansByBook(Book book, Pageable pageable);
+	public Slice<LoanView> getLoansByBookSlice(Long bookId, Pageable pageable);
+
+	public Slice<LoanView> findAfter(LoanFilterDTO loan, LocalDate loanDate, Long id, int size);
+
+	public Slice<LoanView> getLoansByBookAfter(Long bookId, LocalDate loanDate, Long id, int size);
 	
-	public List<Loan> getAllLateLoans();
+	/**
+	 * Empréstimos que atingiram um novo nível de atraso até a data de referência e ainda não foram avisados,
+	 * de no máximo {@code customers} clientes com e-mail após {@code afterCustomerEmail}, em ordem de e-mail
+	 * do cliente e id. Informe null para começar do primeiro cliente.
+	 */
+	public List<LateLoanView> getLoansToNotify(LocalDate referenceDate, String afterCustomerEmail, int customers);
+
+	/**
+	 * Registra o aviso dos empréstimos, avançando cada um para o nível de atraso atingido na data de referência.
+	 */
+	public void markNotified(List<Long> loanIds, LocalDate referenceDate);
 
 }
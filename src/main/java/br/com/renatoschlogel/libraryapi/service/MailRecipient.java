@@ -0,0 +1,19 @@
+package br.com.renatoschlogel.libraryapi.service;
+
+import java.util.Map;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/**
+ * Destinatário de um e-mail e os valores usados para personalizar a mensagem.
+ */
+@Getter
+@AllArgsConstructor
+public class MailRecipient {
+
+	private final String email;
+
+	private final Map<String, String> variables;
+
+}
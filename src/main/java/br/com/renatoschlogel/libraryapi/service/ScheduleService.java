@@ -1,35 +1,83 @@
 package br.com.renatoschlogel.libraryapi.service;
 
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.stream.Collectors;
 
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 
-import br.com.renatoschlogel.libraryapi.model.entity.Loan;
+import br.com.renatoschlogel.libraryapi.model.repository.LateLoanView;
 import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
 
 @Service
 @RequiredArgsConstructor
+@Slf4j
 public class ScheduleService {
 
 	private static final String CRON_LATE_LOANS = "0 0 0 1/1 * ?";
 
 	@Value("${application.mail.lateloans.message}")
 	private String messageLateLoans;
-	
+
+	@Value("${application.mail.lateloans.chunk-size}")
+	private int chunkSize;
+
 	private final LoanService loanService;
-	
+
 	private final EmailService emailService;
-	
+
+	/**
+	 * Avisa apenas os empréstimos que atingiram um novo nível de atraso, com um único e-mail por cliente
+	 * listando todos os seus livros atrasados. Os empréstimos de cada cliente só são marcados como avisados
+	 * quando o servidor de e-mail aceita a mensagem, então um envio que falhou ou ficou na fila ao encerrar
+	 * a aplicação é refeito na próxima execução. Como a marcação chega depois, os lotes avançam pelo e-mail
+	 * do último cliente, e não pelo que já foi marcado.
+	 */
 	@Scheduled(cron = CRON_LATE_LOANS)
 	public void sendMaisToLoans() {
-		List<Loan> allLateLoans = loanService.getAllLateLoans();
-	
-		List<String> mails = allLateLoans.stream()
-										 .map( loan -> loan.getCustomerEmail())
-										 .collect(Collectors.toList());
-		emailService.sendMails(messageLateLoans, mails);
+		LocalDate today = LocalDate.now();
+		int customers = 0;
+
+		List<LateLoanView> lateLoans = loanService.getLoansToNotify(today, null, chunkSize);
+		while (!lateLoans.isEmpty()) {
+			Map<String, List<LateLoanView>> loansByCustomer = lateLoans.stream()
+																	   .collect(Collectors.groupingBy(LateLoanView::getCustomerEmail, 
+																			   						  LinkedHashMap::new, 
+																			   						  Collectors.toList()));
+			Map<MailRecipient, List<Long>> loanIdsByRecipient = new HashMap<>();
+			List<MailRecipient> recipients = new ArrayList<>(loansByCustomer.size());
+			for (List<LateLoanView> customerLoans : loansByCustomer.values()) {
+				MailRecipient recipient = toRecipient(customerLoans);
+				loanIdsByRecipient.put(recipient, customerLoans.stream().map(LateLoanView::getId).collect(Collectors.toList()));
+				recipients.add(recipient);
+			}
+			emailService.sendMails(messageLateLoans, recipients, 
+								   recipient -> loanService.markNotified(loanIdsByRecipient.get(recipient), today));
+			customers += recipients.size();
+
+			if (recipients.size() < chunkSize) {
+				break;
+			}
+			String lastCustomerEmail = lateLoans.get(lateLoans.size() - 1).getCustomerEmail();
+			lateLoans = loanService.getLoansToNotify(today, lastCustomerEmail, chunkSize);
+		}
+
+		log.info("Avisos de atraso agendados para {} clientes", customers);
+	}
+
+	private MailRecipient toRecipient(List<LateLoanView> lateLoans) {
+		Map<String, String> variables = new HashMap<>();
+		variables.put("customer", lateLoans.get(0).getCustomer());
+		variables.put("count", String.valueOf(lateLoans.size()));
+		variables.put("books", lateLoans.stream().map(LateLoanView::getBookTitle).collect(Collectors.joining(", ")));
+		variables.put("loans", lateLoans.stream().map(lateLoan -> String.valueOf(lateLoan.getId())).collect(Collectors.joining(", ")));
+		return new MailRecipient(lateLoans.get(0).getCustomerEmail(), variables);
 	}
 }
@@ -0,0 +1,561 @@
+package br.com.renatoschlogel.libraryapi.service.impl;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.NavigableMap;
+import java.util.PriorityQueue;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+import org.springframework.stereotype.Component;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/**
+ * Índice invertido em memória sobre título, autor e isbn dos livros.
+ *
+ * <p>Os textos são quebrados em termos, sem acentos e em minúsculas. Cada termo
+ * pesquisado casa com os termos indexados que começam com ele, e um livro só é
+ * retornado se todos os termos pesquisados casarem no campo correspondente.
+ * Casamentos exatos pontuam mais que casamentos por prefixo. Termos pesquisados com
+ * menos de {@value #MIN_PREFIX_LENGTH} caracteres só casam com o termo inteiro, para
+ * que uma letra não percorra boa parte do índice.</p>
+ *
+ * <p>Cada termo guarda os ids dos seus livros num {@code long[]} ordenado. A pesquisa
+ * cruza essas listas avançando um cursor por termo, sem montar o conjunto de casamentos:
+ * a página por relevância conta os casamentos de cada pontuação e depois guarda só os
+ * ids da página, e a página por id para assim que tiver os ids pedidos.</p>
+ *
+ * <p>O índice é carregado na subida e mantido pelas alterações feitas nesta instância.
+ * Com várias instâncias, livros incluídos, alterados ou excluídos por outra só refletem
+ * na pesquisa desta após reiniciá-la. Os livros encontrados são sempre lidos do banco,
+ * então um livro excluído em outra instância some da página, mas continua no total.</p>
+ */
+@Component
+public class BookSearchIndex {
+
+	static final int MIN_PREFIX_LENGTH = 3;
+
+	private static final Pattern DIACRITICS = Pattern.compile("\\p{M}+");
+	private static final Pattern SEPARATORS = Pattern.compile("[^\\p{L}\\p{N}]+");
+
+	private static final String TITLE = "t:";
+	private static final String AUTHOR = "a:";
+	private static final String ISBN = "i:";
+
+	private final TreeMap<String, IdList> postings = new TreeMap<>();
+	private final TermsById termsById = new TermsById();
+	private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+	private volatile boolean loaded;
+
+	public void index(Long id, String title, String author, String isbn) {
+		if (id == null) {
+			return;
+		}
+
+		List<String> terms = new ArrayList<>();
+		terms.addAll(terms(TITLE, title));
+		terms.addAll(terms(AUTHOR, author));
+		terms.addAll(isbnTerms(isbn));
+
+		lock.writeLock().lock();
+		try {
+			removeTerms(id);
+			addTerms(id, terms);
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Reindexa título e autor mantendo os termos de isbn já indexados, para alterações que não conhecem o isbn.
+	 */
+	public void index(Long id, String title, String author) {
+		if (id == null) {
+			return;
+		}
+
+		List<String> terms = new ArrayList<>();
+		terms.addAll(terms(TITLE, title));
+		terms.addAll(terms(AUTHOR, author));
+
+		lock.writeLock().lock();
+		try {
+			String[] indexed = termsById.get(id);
+			if (indexed != null) {
+				Arrays.stream(indexed)
+					  .filter(term -> term.startsWith(ISBN))
+					  .forEach(terms::add);
+			}
+			removeTerms(id);
+			addTerms(id, terms);
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	public void remove(Long id) {
+		if (id == null) {
+			return;
+		}
+
+		lock.writeLock().lock();
+		try {
+			removeTerms(id);
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Só é possível pesquisar pelo índice quando cada campo informado gera ao menos um termo.
+	 */
+	public boolean canSearch(String title, String author, String isbn) {
+		title = blankToNull(title);
+		author = blankToNull(author);
+		isbn = blankToNull(isbn);
+
+		if (!loaded || (title == null && author == null && isbn == null)) {
+			return false;
+		}
+
+		return (title == null || !terms(TITLE, title).isEmpty())
+			&& (author == null || !terms(AUTHOR, author).isEmpty())
+			&& (isbn == null || !isbnTerms(isbn).isEmpty());
+	}
+
+	/**
+	 * @return ids dos livros encontrados, do mais relevante para o menos relevante
+	 */
+	public List<Long> search(String title, String author, String isbn) {
+		return search(title, author, isbn, 0, Integer.MAX_VALUE).getIds();
+	}
+
+	/**
+	 * Página dos livros encontrados, do mais relevante para o menos relevante; entre livros
+	 * de mesma relevância, em ordem de id.
+	 */
+	public Hits search(String title, String author, String isbn, long offset, int limit) {
+		List<String> queryTerms = queryTerms(title, author, isbn);
+
+		lock.readLock().lock();
+		try {
+			long[] countsByScore = new long[2 * queryTerms.size() + 1];
+			Matches matches = matches(queryTerms);
+			if (matches == null) {
+				return new Hits(new ArrayList<>(), 0);
+			}
+			while (matches.next()) {
+				countsByScore[matches.score()]++;
+			}
+
+			long total = 0;
+			long[] startByScore = new long[countsByScore.length];
+			for (int score = countsByScore.length - 1; score >= 0; score--) {
+				startByScore[score] = total;
+				total += countsByScore[score];
+			}
+
+			long end = Math.min(total, offset + limit);
+			if (offset >= end) {
+				return new Hits(new ArrayList<>(), total);
+			}
+
+			long[] page = new long[(int) (end - offset)];
+			long[] positionByScore = startByScore;
+			matches = matches(queryTerms);
+			while (matches.next()) {
+				long position = positionByScore[matches.score()]++;
+				if (position >= offset && position < end) {
+					page[(int) (position - offset)] = matches.id();
+				}
+			}
+			return new Hits(Arrays.stream(page).boxed().collect(Collectors.toList()), total);
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * @return até {@code limit} ids dos livros encontrados maiores que {@code afterId}, em ordem de id
+	 */
+	public List<Long> searchAfter(String title, String author, String isbn, long afterId, int limit) {
+		List<String> queryTerms = queryTerms(title, author, isbn);
+
+		lock.readLock().lock();
+		try {
+			List<Long> ids = new ArrayList<>();
+			Matches matches = matches(queryTerms);
+			if (matches == null || limit <= 0) {
+				return ids;
+			}
+			matches.skipTo(afterId + 1);
+			while (ids.size() < limit && matches.next()) {
+				ids.add(matches.id());
+			}
+			return ids;
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	public void markLoaded() {
+		loaded = true;
+	}
+
+	public boolean isLoaded() {
+		return loaded;
+	}
+
+	/**
+	 * Livros encontrados em uma página e o total de livros encontrados.
+	 */
+	@Getter
+	@AllArgsConstructor
+	public static class Hits {
+
+		private final List<Long> ids;
+
+		private final long total;
+
+	}
+
+	private List<String> queryTerms(String title, String author, String isbn) {
+		List<String> queryTerms = new ArrayList<>();
+		queryTerms.addAll(terms(TITLE, title));
+		queryTerms.addAll(terms(AUTHOR, author));
+		queryTerms.addAll(isbnTerms(isbn));
+		return queryTerms;
+	}
+
+	/**
+	 * @return os casamentos de todos os termos, ou null quando algum termo não casa com nada
+	 */
+	private Matches matches(List<String> queryTerms) {
+		if (queryTerms.isEmpty()) {
+			return null;
+		}
+
+		TermCursor[] cursors = new TermCursor[queryTerms.size()];
+		for (int i = 0; i < cursors.length; i++) {
+			cursors[i] = cursor(queryTerms.get(i));
+			if (cursors[i] == null) {
+				return null;
+			}
+		}
+		return new Matches(cursors);
+	}
+
+	private TermCursor cursor(String queryTerm) {
+		IdList exact = postings.get(queryTerm);
+
+		List<IdList> lists = new ArrayList<>();
+		if (queryTerm.length() - ISBN.length() >= MIN_PREFIX_LENGTH) {
+			NavigableMap<String, IdList> range = postings.subMap(queryTerm, true, queryTerm + Character.MAX_VALUE, true);
+			lists.addAll(range.values());
+		} else if (exact != null) {
+			lists.add(exact);
+		}
+		return lists.isEmpty() ? null : new TermCursor(lists, exact);
+	}
+
+	private void addTerms(long id, List<String> terms) {
+		String[] canonical = new String[terms.size()];
+		for (int i = 0; i < canonical.length; i++) {
+			String term = terms.get(i);
+			IdList ids = postings.get(term);
+			if (ids == null) {
+				ids = new IdList();
+				postings.put(term, ids);
+			} else {
+				term = postings.ceilingKey(term);
+			}
+			ids.add(id);
+			canonical[i] = term;
+		}
+		termsById.put(id, canonical);
+	}
+
+	private void removeTerms(long id) {
+		String[] terms = termsById.remove(id);
+		if (terms == null) {
+			return;
+		}
+
+		for (String term : terms) {
+			IdList ids = postings.get(term);
+			if (ids != null) {
+				ids.remove(id);
+				if (ids.size == 0) {
+					postings.remove(term);
+				}
+			}
+		}
+	}
+
+	private List<String> terms(String field, String text) {
+		if (text == null) {
+			return new ArrayList<>();
+		}
+
+		return SEPARATORS.splitAsStream(normalize(text))
+						 .filter(term -> !term.isEmpty())
+						 .distinct()
+						 .map(term -> field + term)
+						 .collect(Collectors.toList());
+	}
+
+	/**
+	 * O isbn é indexado sem separadores, para que "978-85" e "97885" sejam equivalentes.
+	 */
+	private List<String> isbnTerms(String isbn) {
+		List<String> terms = new ArrayList<>();
+		if (isbn != null) {
+			String compact = SEPARATORS.matcher(normalize(isbn)).replaceAll("");
+			if (!compact.isEmpty()) {
+				terms.add(ISBN + compact);
+			}
+		}
+		return terms;
+	}
+
+	private String blankToNull(String text) {
+		return text == null || text.trim().isEmpty() ? null : text;
+	}
+
+	private String normalize(String text) {
+		return DIACRITICS.matcher(Normalizer.normalize(text, Normalizer.Form.NFD))
+						 .replaceAll("")
+						 .toLowerCase(Locale.ROOT);
+	}
+
+	/**
+	 * Ids em ordem crescente. Como os ids vêm de uma sequência, quase toda inclusão acontece no fim.
+	 */
+	static class IdList {
+
+		long[] ids = new long[1];
+
+		int size;
+
+		boolean add(long id) {
+			int position = indexOf(id);
+			if (position >= 0) {
+				return false;
+			}
+
+			position = -position - 1;
+			if (size == ids.length) {
+				ids = Arrays.copyOf(ids, size + (size >> 1) + 1);
+			}
+			System.arraycopy(ids, position, ids, position + 1, size - position);
+			ids[position] = id;
+			size++;
+			return true;
+		}
+
+		int remove(long id) {
+			int position = indexOf(id);
+			if (position >= 0) {
+				System.arraycopy(ids, position + 1, ids, position, size - position - 1);
+				size--;
+				if (size < ids.length >> 2) {
+					ids = Arrays.copyOf(ids, Math.max(1, size << 1));
+				}
+			}
+			return position;
+		}
+
+		int indexOf(long id) {
+			return Arrays.binarySearch(ids, 0, size, id);
+		}
+
+		/**
+		 * @return a primeira posição a partir de {@code from} com id maior ou igual a {@code target}
+		 */
+		int seek(int from, long target) {
+			int position = Arrays.binarySearch(ids, from, size, target);
+			return position >= 0 ? position : -position - 1;
+		}
+	}
+
+	/**
+	 * Termos indexados de cada livro, em arrays paralelos ordenados por id, para que alteração e
+	 * exclusão saibam de quais listas tirar o livro.
+	 */
+	static class TermsById {
+
+		private final IdList ids = new IdList();
+
+		private String[][] terms = new String[1][];
+
+		String[] get(long id) {
+			int position = ids.indexOf(id);
+			return position >= 0 ? terms[position] : null;
+		}
+
+		void put(long id, String[] idTerms) {
+			int position = ids.indexOf(id);
+			if (position >= 0) {
+				terms[position] = idTerms;
+				return;
+			}
+
+			ids.add(id);
+			position = -position - 1;
+			if (terms.length < ids.ids.length) {
+				terms = Arrays.copyOf(terms, ids.ids.length);
+			}
+			System.arraycopy(terms, position, terms, position + 1, ids.size - position - 1);
+			terms[position] = idTerms;
+		}
+
+		String[] remove(long id) {
+			int position = ids.indexOf(id);
+			if (position < 0) {
+				return null;
+			}
+
+			String[] removed = terms[position];
+			System.arraycopy(terms, position + 1, terms, position, ids.size - position - 1);
+			terms[ids.size - 1] = null;
+			ids.remove(id);
+			if (terms.length > ids.ids.length) {
+				terms = Arrays.copyOf(terms, ids.ids.length);
+			}
+			return removed;
+		}
+	}
+
+	/**
+	 * Percorre em ordem crescente a união das listas dos termos indexados que casam com um termo pesquisado.
+	 */
+	static class TermCursor {
+
+		private final PriorityQueue<ListCursor> heads = new PriorityQueue<>((a, b) -> Long.compare(a.id(), b.id()));
+
+		private final IdList exact;
+
+		private long current = -1;
+
+		TermCursor(List<IdList> lists, IdList exact) {
+			this.exact = exact;
+			lists.forEach(list -> heads.add(new ListCursor(list)));
+		}
+
+		/**
+		 * Avança até o primeiro id maior ou igual a {@code target}.
+		 *
+		 * @return o id encontrado, ou -1 quando a lista acabou
+		 */
+		long seek(long target) {
+			if (current >= target) {
+				return current;
+			}
+
+			while (!heads.isEmpty() && heads.peek().id() < target) {
+				ListCursor head = heads.poll();
+				if (head.seek(target)) {
+					heads.add(head);
+				}
+			}
+			current = heads.isEmpty() ? -1 : heads.peek().id();
+			return current;
+		}
+
+		/** Casamento exato vale 2, por prefixo vale 1. */
+		int score() {
+			return exact != null && exact.indexOf(current) >= 0 ? 2 : 1;
+		}
+	}
+
+	static class ListCursor {
+
+		private final IdList list;
+
+		private int position;
+
+		ListCursor(IdList list) {
+			this.list = list;
+		}
+
+		long id() {
+			return list.ids[position];
+		}
+
+		boolean seek(long target) {
+			position = list.seek(position, target);
+			return position < list.size;
+		}
+	}
+
+	/**
+	 * Interseção dos cursores: cada passo leva todos ao mesmo id, pulando direto para o maior id atual.
+	 */
+	static class Matches {
+
+		private final TermCursor[] cursors;
+
+		private long next;
+
+		private long id = -1;
+
+		Matches(TermCursor[] cursors) {
+			this.cursors = cursors;
+		}
+
+		void skipTo(long target) {
+			next = Math.max(next, target);
+		}
+
+		boolean next() {
+			if (next < 0) {
+				return false;
+			}
+
+			long candidate = next;
+			int agreeing = 0;
+			while (agreeing < cursors.length) {
+				for (TermCursor cursor : cursors) {
+					long found = cursor.seek(candidate);
+					if (found < 0) {
+						next = -1;
+						return false;
+					}
+					if (found == candidate) {
+						agreeing++;
+					} else {
+						candidate = found;
+						agreeing = 0;
+						break;
+					}
+				}
+			}
+
+			id = candidate;
+			next = candidate == Long.MAX_VALUE ? -1 : candidate + 1;
+			return true;
+		}
+
+		long id() {
+			return id;
+		}
+
+		int score() {
+			int score = 0;
+			for (TermCursor cursor : cursors) {
+				score += cursor.score();
+			}
+			return score;
+		}
+	}
+
+}
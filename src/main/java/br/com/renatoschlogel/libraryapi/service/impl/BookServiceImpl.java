@@ -1,35 +1,174 @@
 package br.com.renatoschlogel.libraryapi.service.impl;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
-import org.springframework.data.domain.Example;
-import org.springframework.data.domain.ExampleMatcher;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.dao.OptimisticLockingFailureException;
 import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.SliceImpl;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import com.github.benmanes.caffeine.cache.Cache;
 
 import br.com.renatoschlogel.libraryapi.exception.BusinessException;
 import br.com.renatoschlogel.libraryapi.model.entity.Book;
 import br.com.renatoschlogel.libraryapi.model.repository.BookRepository;
+import br.com.renatoschlogel.libraryapi.model.repository.BookView;
 import br.com.renatoschlogel.libraryapi.service.BookService;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
 
 @Service
+@Slf4j
 public class BookServiceImpl implements BookService {
 
+	private static final int MAX_IN_PARAMETERS = 1000;
+
 	BookRepository bookRepository;
 	
-	public BookServiceImpl(BookRepository bookRepository) {
+	Cache<String, Optional<Book>> booksByIsbnCache;
+	
+	Cache<Long, String> bookIsbnsByIdCache;
+	
+	IsbnFilter isbnFilter;
+	
+	BookSearchIndex bookSearchIndex;
+	
+	ListingTotals listingTotals;
+	
+	/** Livros recusados por isbn já cadastrado, contando os das inclusões em lote. */
+	Counter isbnInUse;
+	
+	public BookServiceImpl(BookRepository bookRepository, Cache<String, Optional<Book>> booksByIsbnCache, 
+						   Cache<Long, String> bookIsbnsByIdCache, IsbnFilter isbnFilter, BookSearchIndex bookSearchIndex, ListingTotals listingTotals, 
+						   MeterRegistry meterRegistry) {
 		this.bookRepository = bookRepository;
+		this.booksByIsbnCache = booksByIsbnCache;
+		this.bookIsbnsByIdCache = bookIsbnsByIdCache;
+		this.isbnFilter = isbnFilter;
+		this.bookSearchIndex = bookSearchIndex;
+		this.listingTotals = listingTotals;
+		this.isbnInUse = Counter.builder("library.books.rejected").tag("reason", "isbn_in_use").register(meterRegistry);
+	}
+	
+	/**
+	 * Carrega o filtro de isbn e o índice de pesquisa com uma única leitura da tabela.
+	 */
+	@EventListener(ApplicationReadyEvent.class)
+	@Transactional(readOnly = true)
+	public void loadIndexes() {
+		long books = 0;
+		try (Stream<BookView> views = bookRepository.streamAllViews()) {
+			for (Iterator<BookView> iterator = views.iterator(); iterator.hasNext(); books++) {
+				BookView view = iterator.next();
+				isbnFilter.put(view.getIsbn());
+				bookSearchIndex.index(view.getId(), view.getTitle(), view.getAuthor(), view.getIsbn());
+			}
+		}
+		isbnFilter.markLoaded();
+		bookSearchIndex.markLoaded();
+		log.info("Filtro de isbn e índice de pesquisa carregados com {} livros", books);
 	}
 		
 	@Override
 	public Book incluir(Book book) {
 		
-		if (bookRepository.existsByIsbn(book.getIsbn())) {
+		if (isbnFilter.mightContain(book.getIsbn()) && bookRepository.existsByIsbn(book.getIsbn())) {
+			isbnInUse.increment();
+			throw new BusinessException("Isbn já utilizado por outro livro!");
+		}
+		
+		Book savedBook;
+		try {
+			savedBook = bookRepository.save(book);
+		} catch (DataIntegrityViolationException e) {
+			isbnInUse.increment();
+			throw new BusinessException("Isbn já utilizado por outro livro!");
+		}
+		
+		isbnFilter.put(book.getIsbn());
+		bookSearchIndex.index(savedBook.getId(), savedBook.getTitle(), savedBook.getAuthor(), savedBook.getIsbn());
+		if (book.getIsbn() != null) {
+			booksByIsbnCache.invalidate(book.getIsbn());
+		}
+		return savedBook;
+	}
+
+	/**
+	 * Inclui os livros em uma única transação, com os inserts enviados em lotes JDBC.
+	 * Livros com isbn já cadastrado, ou repetido na própria lista, não são incluídos
+	 * e permanecem sem id no retorno.
+	 */
+	@Override
+	@Transactional
+	public List<Book> incluirLote(List<Book> books) {
+		
+		Set<String> usedIsbns = findUsedIsbns(books);
+		
+		List<Book> newBooks = new ArrayList<>();
+		for (Book book : books) {
+			if (book.getIsbn() == null) {
+				continue;
+			}
+			if (usedIsbns.add(book.getIsbn())) {
+				newBooks.add(book);
+			} else {
+				isbnInUse.increment();
+			}
+		}
+		
+		try {
+			bookRepository.saveAll(newBooks);
+			bookRepository.flush();
+		} catch (DataIntegrityViolationException e) {
+			isbnInUse.increment(newBooks.size());
 			throw new BusinessException("Isbn já utilizado por outro livro!");
 		}
 		
-		return bookRepository.save(book);
+		newBooks.forEach(book -> {
+			isbnFilter.put(book.getIsbn());
+			bookSearchIndex.index(book.getId(), book.getTitle(), book.getAuthor(), book.getIsbn());
+			booksByIsbnCache.invalidate(book.getIsbn());
+		});
+		return books;
+	}
+
+	/**
+	 * Consulta de uma vez os isbns que já existem, deixando de fora os que o filtro
+	 * garante não existirem. A lista é quebrada para não estourar o limite de parâmetros do banco.
+	 */
+	private Set<String> findUsedIsbns(List<Book> books) {
+		List<String> candidates = books.stream()
+									   .map(Book::getIsbn)
+									   .filter(isbn -> isbn != null && isbnFilter.mightContain(isbn))
+									   .distinct()
+									   .collect(Collectors.toList());
+		
+		Set<String> usedIsbns = new HashSet<>();
+		for (int start = 0; start < candidates.size(); start += MAX_IN_PARAMETERS) {
+			List<String> chunk = candidates.subList(start, Math.min(start + MAX_IN_PARAMETERS, candidates.size()));
+			usedIsbns.addAll(bookRepository.findIsbnByIsbnIn(chunk));
+		}
+		return usedIsbns;
 	}
 
 	@Override
@@ -38,35 +177,204 @@ public class BookServiceImpl implements BookService {
 	}
 
 	@Override
-	public void delete(Book book) {
-		if (book == null || book.getId() == null) {
+	public Optional<Long> getVersion(Long id) {
+		return bookRepository.findVersionById(id);
+	}
+
+	/**
+	 * O isbn excluído continua contado no filtro, que só admite falsos positivos: a próxima
+	 * inclusão com ele apenas confirma no banco que está livre.
+	 */
+	@Override
+	@Transactional
+	public boolean delete(Long id, Long version) {
+		if (id == null) {
 			throw new IllegalArgumentException("Book id cant be null");
 		}
-		bookRepository.delete(book);
+		
+		if (bookRepository.deleteByIdAndVersion(id, version) == 0) {
+			return notChanged(id, version);
+		}
+		
+		bookSearchIndex.remove(id);
+		evictFromCache(id);
+		return true;
 	}
 
 	@Override
-	public Book update(Book book) {
+	@Transactional
+	public Optional<Book> update(Book book, Long version) {
 		if (book == null || book.getId() == null) {
 			throw new IllegalArgumentException("Book id cant be null");
 		}
 		
-		return bookRepository.save(book);
+		if (bookRepository.updateTitleAndAuthor(book.getId(), book.getTitle(), book.getAuthor(), version) == 0) {
+			notChanged(book.getId(), version);
+			return Optional.empty();
+		}
+		
+		bookSearchIndex.index(book.getId(), book.getTitle(), book.getAuthor());
+		evictFromCache(book.getId());
+		return bookRepository.findById(book.getId());
+	}
+
+	/**
+	 * Nenhuma linha alterada: sem versão o livro não existe; com versão, só se consulta o banco
+	 * para separar o livro inexistente do alterado por outra requisição.
+	 */
+	private boolean notChanged(Long id, Long version) {
+		if (version != null && bookRepository.existsById(id)) {
+			throw new OptimisticLockingFailureException("Livro alterado por outra requisição.");
+		}
+		return false;
+	}
+
+	/**
+	 * Pesquisas por texto usam o índice invertido, ordenadas por relevância; o banco só
+	 * é consultado para carregar os livros da página. Pesquisas com ordenação explícita,
+	 * por id ou antes da carga do índice seguem pelo {@link BookRepository#findSliceByFilter}.
+	 * As listagens leem apenas as colunas devolvidas, numa transação somente leitura.
+	 */
+	@Override
+	@Transactional(readOnly = true)
+	public Page<BookView> find(Book filter, Pageable pageRequest) {
+		
+		if (filter.getId() == null && pageRequest.getSort().isUnsorted()
+				&& bookSearchIndex.canSearch(filter.getTitle(), filter.getAuthor(), filter.getIsbn())) {
+			return findInIndex(filter, pageRequest);
+		}
+		
+		String title = likePattern(filter.getTitle());
+		String author = likePattern(filter.getAuthor());
+		String isbn = likePattern(filter.getIsbn());
+		
+		Slice<BookView> slice = bookRepository.findSliceByFilter(filter.getId(), title, author, isbn, pageRequest);
+		return listingTotals.toPage(slice, 
+									ListingTotals.key("books", filter.getId(), title, author, isbn), 
+									() -> bookRepository.countByFilter(filter.getId(), title, author, isbn));
+	}
+
+	/**
+	 * Mesmo filtro do {@link #find}, mas sem o total: busca apenas uma linha a mais
+	 * que a página para saber se existe a próxima.
+	 */
+	@Override
+	@Transactional(readOnly = true)
+	public Slice<BookView> findSlice(Book filter, Pageable pageRequest) {
+		
+		if (filter.getId() == null && pageRequest.getSort().isUnsorted()
+				&& bookSearchIndex.canSearch(filter.getTitle(), filter.getAuthor(), filter.getIsbn())) {
+			return findInIndex(filter, pageRequest);
+		}
+		
+		return bookRepository.findSliceByFilter(filter.getId(), likePattern(filter.getTitle()), likePattern(filter.getAuthor()), 
+												likePattern(filter.getIsbn()), pageRequest);
+	}
+
+	private Page<BookView> findInIndex(Book filter, Pageable pageRequest) {
+		BookSearchIndex.Hits hits = bookSearchIndex.search(filter.getTitle(), filter.getAuthor(), filter.getIsbn(), 
+														   pageRequest.getOffset(), pageRequest.getPageSize());
+		
+		return new PageImpl<>(findAllInOrder(hits.getIds()), pageRequest, hits.getTotal());
 	}
 
+	/**
+	 * Paginação por cursor, sempre ordenada por id: cada página começa logo após o
+	 * último id da anterior, sem que o banco precise percorrer as páginas anteriores.
+	 */
 	@Override
-	public Page<Book> find(Book filter, Pageable pageRequest) {
+	@Transactional(readOnly = true)
+	public Slice<BookView> findAfter(Book filter, Long afterId, int size) {
+		long after = afterId == null ? 0 : afterId;
+		
+		if (filter.getId() == null && bookSearchIndex.canSearch(filter.getTitle(), filter.getAuthor(), filter.getIsbn())) {
+			List<Long> ids = bookSearchIndex.searchAfter(filter.getTitle(), filter.getAuthor(), filter.getIsbn(), after, size + 1);
+			
+			boolean hasNext = ids.size() > size;
+			List<Long> pageIds = hasNext ? ids.subList(0, size) : ids;
+			return new SliceImpl<>(findAllInOrder(pageIds), PageRequest.of(0, size), hasNext);
+		}
+		
+		return bookRepository.findAfter(after, filter.getId(), likePattern(filter.getTitle()), likePattern(filter.getAuthor()), 
+										likePattern(filter.getIsbn()), PageRequest.of(0, size));
+	}
+
+	private List<BookView> findAllInOrder(List<Long> ids) {
+		if (ids.isEmpty()) {
+			return new ArrayList<>();
+		}
 		
-		Example<Book> example = Example.of(filter, ExampleMatcher.matching()
-				                                                 .withIgnoreCase()
-				                                                 .withIgnoreNullValues()
-				                                                 .withStringMatcher(ExampleMatcher.StringMatcher.CONTAINING));
-		return bookRepository.findAll(example, pageRequest)
-;	}
+		Map<Long, BookView> booksById = bookRepository.findViewsByIdIn(ids)
+													  .stream()
+													  .collect(Collectors.toMap(BookView::getId, Function.identity()));
+		
+		return ids.stream()
+				  .map(booksById::get)
+				  .filter(book -> book != null)
+				  .collect(Collectors.toList());
+	}
+
+	private String likePattern(String value) {
+		if (value == null || value.trim().isEmpty()) {
+			return null;
+		}
+		return "%" + value.toLowerCase() + "%";
+	}
 
 	@Override
 	public Optional<Book> getBookByIsbn(String isbn) {
-		return bookRepository.findByIsbn(isbn);
+		if (isbn == null) {
+			return Optional.empty();
+		}
+		
+		return booksByIsbnCache.get(isbn, key -> bookRepository.findByIsbn(key).map(book -> {
+									bookIsbnsByIdCache.put(book.getId(), key);
+									return copyOf(book);
+							   }))
+							   .map(this::copyOf);
+	}
+
+	/**
+	 * Uma consulta por bloco de isbns, deixando de fora os que o filtro garante não existirem.
+	 */
+	@Override
+	public Map<String, Long> getIdsByIsbn(Collection<String> isbns) {
+		List<String> candidates = isbns.stream()
+									   .filter(isbn -> isbn != null && isbnFilter.mightContain(isbn))
+									   .distinct()
+									   .collect(Collectors.toList());
+		
+		Map<String, Long> idsByIsbn = new HashMap<>();
+		for (int start = 0; start < candidates.size(); start += MAX_IN_PARAMETERS) {
+			List<String> chunk = candidates.subList(start, Math.min(start + MAX_IN_PARAMETERS, candidates.size()));
+			bookRepository.findIdByIsbnIn(chunk).forEach(book -> idsByIsbn.put(book.getIsbn(), book.getId()));
+		}
+		return idsByIsbn;
+	}
+
+	/**
+	 * Remove qualquer entrada que aponte para o livro, cobrindo também isbns que ele já teve.
+	 */
+	private void evictFromCache(Long id) {
+		String isbn = bookIsbnsByIdCache.getIfPresent(id);
+		if (isbn != null) {
+			booksByIsbnCache.invalidate(isbn);
+		}
+	}
+
+	/**
+	 * O cache guarda e devolve cópias desanexadas, sem a coleção de empréstimos,
+	 * para que nenhuma requisição altere a instância compartilhada. A versão acompanha a cópia
+	 * porque, sem ela, o Hibernate trata o livro como transiente ao gravar o empréstimo.
+	 */
+	private Book copyOf(Book book) {
+		return Book.builder()
+				   .id(book.getId())
+				   .title(book.getTitle())
+				   .author(book.getAuthor())
+				   .isbn(book.getIsbn())
+				   .version(book.getVersion())
+				   .build();
 	}
 
 
@@ -0,0 +1,93 @@
+package br.com.renatoschlogel.libraryapi.service.impl;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionOperations;
+
+/**
+ * Serializa, dentro da JVM, os empréstimos de um mesmo livro. As devoluções não passam por aqui:
+ * são atualizações condicionais que dispensam o lock.
+ *
+ * <p>Os livros são distribuídos por id entre um número fixo de locks, então operações em livros
+ * diferentes quase sempre seguem em paralelo e a memória usada não cresce com o acervo. O lock é
+ * mantido até o commit, assim o próximo empréstimo do mesmo livro já enxerga o resultado do anterior
+ * em vez de disputar a mesma linha no banco. Entre instâncias da aplicação quem garante que não há
+ * empréstimo duplo continua sendo a atualização condicional do livro.</p>
+ */
+@Component
+public class CheckoutCoordinator {
+
+	private final ReentrantLock[] stripes;
+	private final TransactionOperations transactionOperations;
+
+	public CheckoutCoordinator(@Value("${application.loan.checkout-lock-stripes}") int stripes, 
+							   TransactionOperations transactionOperations) {
+		this.stripes = new ReentrantLock[Integer.highestOneBit(Math.max(1, stripes - 1)) << 1];
+		for (int i = 0; i < this.stripes.length; i++) {
+			this.stripes[i] = new ReentrantLock();
+		}
+		this.transactionOperations = transactionOperations;
+	}
+
+	/**
+	 * Executa a operação numa transação, com o lock do livro informado.
+	 */
+	public <T> T execute(Long bookId, Supplier<T> operation) {
+		ReentrantLock lock = stripeOf(bookId);
+		lock.lock();
+		try {
+			return transactionOperations.execute(status -> operation.get());
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Executa a operação numa transação, com os locks de todos os livros informados. Os locks são
+	 * obtidos sempre na mesma ordem, então duas operações em lote nunca ficam esperando uma pela outra.
+	 */
+	public <T> T execute(Collection<Long> bookIds, Supplier<T> operation) {
+		List<ReentrantLock> locks = bookIds.stream()
+										   .map(this::stripeIndexOf)
+										   .distinct()
+										   .sorted()
+										   .map(index -> stripes[index])
+										   .collect(Collectors.toList());
+		locks.forEach(ReentrantLock::lock);
+		try {
+			return transactionOperations.execute(status -> operation.get());
+		} finally {
+			for (int i = locks.size() - 1; i >= 0; i--) {
+				locks.get(i).unlock();
+			}
+		}
+	}
+
+	/**
+	 * Estimativa de quantas operações estão esperando algum lock, para monitoramento.
+	 */
+	public int getQueueLength() {
+		int queueLength = 0;
+		for (ReentrantLock stripe : stripes) {
+			queueLength += stripe.getQueueLength();
+		}
+		return queueLength;
+	}
+
+	private ReentrantLock stripeOf(Long bookId) {
+		return stripes[stripeIndexOf(bookId)];
+	}
+
+	private int stripeIndexOf(Long bookId) {
+		int hash = bookId == null ? 0 : bookId.hashCode();
+		hash ^= hash >>> 16;
+		return hash & (stripes.length - 1);
+	}
+
+}
@@ -1,36 +1,56 @@
 package br.com.renatoschlogel.libraryapi.service.impl;
 
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
 
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.mail.SimpleMailMessage;
-import org.springframework.mail.javamail.JavaMailSender;
 import org.springframework.stereotype.Service;
 
 import br.com.renatoschlogel.libraryapi.service.EmailService;
+import br.com.renatoschlogel.libraryapi.service.MailRecipient;
 import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
 
 @Service
 @RequiredArgsConstructor
+@Slf4j
 public class EmailServiceImpl implements EmailService {
 
-	private final JavaMailSender javaMailSender;
+	private final MailDispatcher mailDispatcher;
+	
+	private final Map<String, MailTemplate> templates = new ConcurrentHashMap<>();
 	
 	@Value("${application.mail.default-remetent}")
 	private String remetent;
 	
 	@Override
-	public void sendMails(String messageLateLoans, List<String> mails) {
-		
-		SimpleMailMessage mailMessage = new SimpleMailMessage();
-		
-		mailMessage.setFrom(remetent);
-		mailMessage.setSubject("Livro em atraso");
-		mailMessage.setText(messageLateLoans);
-		mailMessage.setTo(mails.toArray(new String[mails.size()]));
+	public void sendMails(String messageTemplate, List<MailRecipient> recipients) {
+		sendMails(messageTemplate, recipients, recipient -> { });
+	}
+	
+	@Override
+	public void sendMails(String messageTemplate, List<MailRecipient> recipients, Consumer<MailRecipient> onSent) {
 		
+		MailTemplate template = templates.computeIfAbsent(messageTemplate, MailTemplate::compile);
 		
-		javaMailSender.send(mailMessage);
+		for (MailRecipient recipient : recipients) {
+			if (recipient.getEmail() == null || recipient.getEmail().trim().isEmpty()) {
+				log.warn("Destinatário sem e-mail ignorado: {}", recipient.getVariables());
+				continue;
+			}
+			
+			SimpleMailMessage mailMessage = new SimpleMailMessage();
+			
+			mailMessage.setFrom(remetent);
+			mailMessage.setSubject("Livro em atraso");
+			mailMessage.setText(template.render(recipient.getVariables()));
+			mailMessage.setTo(recipient.getEmail());
+			
+			mailDispatcher.dispatch(mailMessage, () -> onSent.accept(recipient));
+		}
 	}
 
 }
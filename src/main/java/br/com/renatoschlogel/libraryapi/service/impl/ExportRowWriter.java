@@ -0,0 +1,125 @@
+package br.com.renatoschlogel.libraryapi.service.impl;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import br.com.renatoschlogel.libraryapi.service.DataFormat;
+
+/**
+ * Escreve as linhas de uma exportação uma a uma. As colunas seguem os nomes
+ * aceitos pela importação, para que o arquivo exportado possa ser reimportado.
+ */
+abstract class ExportRowWriter implements Closeable {
+
+	protected final String[] columns;
+
+	private ExportRowWriter(String[] columns) {
+		this.columns = columns;
+	}
+
+	static ExportRowWriter of(DataFormat format, OutputStream outputStream, ObjectMapper objectMapper, String... columns) throws IOException {
+		switch (format) {
+		case CSV:
+			return new CsvRowWriter(outputStream, columns);
+		case NDJSON:
+			return new NdjsonRowWriter(outputStream, objectMapper, columns);
+		default:
+			throw new IllegalArgumentException("Unsupported export format " + format);
+		}
+	}
+
+	/**
+	 * @param values na mesma ordem das colunas
+	 */
+	abstract void write(Object... values) throws IOException;
+
+	static class CsvRowWriter extends ExportRowWriter {
+
+		private final Writer writer;
+
+		CsvRowWriter(OutputStream outputStream, String[] columns) throws IOException {
+			super(columns);
+			this.writer = new BufferedWriter(new OutputStreamWriter(outputStream, StandardCharsets.UTF_8));
+			write((Object[]) columns);
+		}
+
+		@Override
+		void write(Object... values) throws IOException {
+			for (int i = 0; i < values.length; i++) {
+				if (i > 0) {
+					writer.write(',');
+				}
+				writeField(values[i]);
+			}
+			writer.write('\n');
+		}
+
+		private void writeField(Object value) throws IOException {
+			if (value == null) {
+				return;
+			}
+
+			String field = value.toString();
+			if (field.indexOf(',') < 0 && field.indexOf('"') < 0 && field.indexOf('\n') < 0 && field.indexOf('\r') < 0) {
+				writer.write(field);
+				return;
+			}
+
+			writer.write('"');
+			writer.write(field.replace("\"", "\"\""));
+			writer.write('"');
+		}
+
+		@Override
+		public void close() throws IOException {
+			writer.close();
+		}
+	}
+
+	static class NdjsonRowWriter extends ExportRowWriter {
+
+		private final JsonGenerator generator;
+
+		NdjsonRowWriter(OutputStream outputStream, ObjectMapper objectMapper, String[] columns) throws IOException {
+			super(columns);
+			this.generator = objectMapper.getFactory().createGenerator(outputStream);
+			this.generator.setRootValueSeparator(null);
+		}
+
+		@Override
+		void write(Object... values) throws IOException {
+			generator.writeStartObject();
+			for (int i = 0; i < values.length; i++) {
+				generator.writeFieldName(columns[i]);
+				writeValue(values[i]);
+			}
+			generator.writeEndObject();
+			generator.writeRaw('\n');
+		}
+
+		private void writeValue(Object value) throws IOException {
+			if (value == null) {
+				generator.writeNull();
+			} else if (value instanceof Long) {
+				generator.writeNumber((Long) value);
+			} else if (value instanceof Boolean) {
+				generator.writeBoolean((Boolean) value);
+			} else {
+				generator.writeString(value.toString());
+			}
+		}
+
+		@Override
+		public void close() throws IOException {
+			generator.close();
+		}
+	}
+}
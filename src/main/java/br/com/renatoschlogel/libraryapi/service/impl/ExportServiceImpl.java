@@ -0,0 +1,81 @@
+package br.com.renatoschlogel.libraryapi.service.impl;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.util.Iterator;
+import java.util.stream.Stream;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import br.com.renatoschlogel.libraryapi.model.entity.Book;
+import br.com.renatoschlogel.libraryapi.model.entity.Loan;
+import br.com.renatoschlogel.libraryapi.model.repository.BookRepository;
+import br.com.renatoschlogel.libraryapi.model.repository.LoanRepository;
+import br.com.renatoschlogel.libraryapi.service.DataFormat;
+import br.com.renatoschlogel.libraryapi.service.ExportService;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Percorre as tabelas com um cursor JDBC e escreve cada linha direto na saída.
+ * Cada entidade é desanexada do contexto de persistência logo após ser escrita,
+ * e a escrita bloqueia enquanto o cliente não consome, então a memória usada
+ * não depende do tamanho da tabela.
+ */
+@Service
+@Slf4j
+@RequiredArgsConstructor
+public class ExportServiceImpl implements ExportService {
+
+	private final BookRepository bookRepository;
+	private final LoanRepository loanRepository;
+	private final ObjectMapper objectMapper;
+	
+	@PersistenceContext
+	private EntityManager entityManager;
+
+	@Override
+	@Transactional(readOnly = true)
+	public void exportBooks(OutputStream outputStream, DataFormat format) {
+		long rows = 0;
+		try (Stream<Book> books = bookRepository.streamAll();
+			 ExportRowWriter writer = ExportRowWriter.of(format, outputStream, objectMapper, "id", "title", "author", "isbn")) {
+			
+			for (Iterator<Book> iterator = books.iterator(); iterator.hasNext(); rows++) {
+				Book book = iterator.next();
+				writer.write(book.getId(), book.getTitle(), book.getAuthor(), book.getIsbn());
+				entityManager.detach(book);
+			}
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		log.info("Exportação de livros concluída: {} linhas", rows);
+	}
+
+	@Override
+	@Transactional(readOnly = true)
+	public void exportLoans(OutputStream outputStream, DataFormat format) {
+		long rows = 0;
+		try (Stream<Loan> loans = loanRepository.streamAll();
+			 ExportRowWriter writer = ExportRowWriter.of(format, outputStream, objectMapper, "id", "isbn", "customer", "customerEmail", "loanDate", "returned")) {
+			
+			for (Iterator<Loan> iterator = loans.iterator(); iterator.hasNext(); rows++) {
+				Loan loan = iterator.next();
+				writer.write(loan.getId(), loan.getBook().getIsbn(), loan.getCustomer(), loan.getCustomerEmail(), loan.getLoanDate(), loan.getReturned());
+				entityManager.detach(loan);
+				entityManager.detach(loan.getBook());
+			}
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		log.info("Exportação de empréstimos concluída: {} linhas", rows);
+	}
+
+}
@@ -0,0 +1,24 @@
+package br.com.renatoschlogel.libraryapi.service.impl;
+
+import java.util.Map;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+@Getter
+@AllArgsConstructor
+class ImportRow {
+
+	private final long row;
+
+	private final Map<String, String> values;
+
+	/** Preenchido quando a linha não pôde ser lida; nesse caso values é nulo. */
+	private final String error;
+
+	String get(String column) {
+		String value = values.get(column);
+		return value == null || value.trim().isEmpty() ? null : value.trim();
+	}
+
+}
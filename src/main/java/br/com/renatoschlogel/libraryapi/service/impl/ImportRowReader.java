@@ -0,0 +1,272 @@
+package br.com.renatoschlogel.libraryapi.service.impl;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import br.com.renatoschlogel.libraryapi.service.DataFormat;
+
+/**
+ * Lê as linhas de uma importação uma a uma, sem carregar o conteúdo inteiro em memória. Campos e
+ * linhas acima do limite são rejeitados sem serem guardados, para que um arquivo malformado, como
+ * uma aspa sem fechamento, não acumule o resto do conteúdo em memória.
+ */
+abstract class ImportRowReader implements Closeable {
+
+	static final int MAX_FIELD_LENGTH = 8 * 1024;
+
+	static final int MAX_LINE_LENGTH = 64 * 1024;
+
+	private static final int BYTE_ORDER_MARK = '\uFEFF';
+
+	protected final BufferedReader reader;
+
+	protected long row;
+
+	private ImportRowReader(InputStream inputStream) {
+		this.reader = new BufferedReader(new InputStreamReader(inputStream, StandardCharsets.UTF_8));
+	}
+
+	/**
+	 * Descarta o BOM do UTF-8, que senão ficaria grudado no nome da primeira coluna.
+	 */
+	protected void skipByteOrderMark() throws IOException {
+		reader.mark(1);
+		if (reader.read() != BYTE_ORDER_MARK) {
+			reader.reset();
+		}
+	}
+
+	/**
+	 * Descarta o restante da linha física atual.
+	 */
+	protected void skipLine() throws IOException {
+		int c = reader.read();
+		while (c != -1 && c != '\n') {
+			c = reader.read();
+		}
+	}
+
+	static ImportRowReader of(DataFormat format, InputStream inputStream, ObjectMapper objectMapper) {
+		switch (format) {
+		case CSV:
+			return new CsvRowReader(inputStream);
+		case NDJSON:
+			return new NdjsonRowReader(inputStream, objectMapper);
+		default:
+			throw new IllegalArgumentException("Unsupported import format " + format);
+		}
+	}
+
+	/**
+	 * @return a próxima linha, ou null ao final do conteúdo
+	 */
+	abstract ImportRow next() throws IOException;
+
+	@Override
+	public void close() throws IOException {
+		reader.close();
+	}
+
+	/**
+	 * CSV separado por vírgula com cabeçalho na primeira linha. Campos entre aspas
+	 * podem conter vírgulas, quebras de linha e aspas duplicadas ("").
+	 */
+	static class CsvRowReader extends ImportRowReader {
+
+		private List<String> header;
+
+		/**
+		 * Motivo da recusa quando a última leitura parou num campo ou registro acima do limite; o
+		 * restante da linha foi descartado. Nulo quando o registro foi lido inteiro.
+		 */
+		private String oversized;
+
+		CsvRowReader(InputStream inputStream) {
+			super(inputStream);
+		}
+
+		@Override
+		ImportRow next() throws IOException {
+			if (header == null) {
+				skipByteOrderMark();
+				header = readRecord();
+				if (header == null) {
+					return null;
+				}
+				if (oversized != null) {
+					throw new IOException("Cabeçalho inválido: " + oversized);
+				}
+			}
+
+			List<String> fields = readRecord();
+			while (fields != null && fields.size() == 1 && fields.get(0).isEmpty()) {
+				fields = readRecord();
+			}
+			if (fields == null) {
+				return null;
+			}
+
+			row++;
+			if (oversized != null) {
+				return new ImportRow(row, null, oversized);
+			}
+			if (fields.size() != header.size()) {
+				return new ImportRow(row, null, String.format("Esperadas %d colunas, encontradas %d", header.size(), fields.size()));
+			}
+
+			Map<String, String> values = new HashMap<>();
+			for (int i = 0; i < header.size(); i++) {
+				values.put(header.get(i).trim(), fields.get(i));
+			}
+			return new ImportRow(row, values, null);
+		}
+
+		/**
+		 * Lê um registro, que pode ocupar mais de uma linha física quando um campo entre aspas tem quebras
+		 * de linha. Além de cada campo, o registro inteiro é limitado a {@value #MAX_LINE_LENGTH} caracteres,
+		 * para que uma linha só de vírgulas não acumule campos vazios sem fim.
+		 */
+		private List<String> readRecord() throws IOException {
+			oversized = null;
+			int c = reader.read();
+			if (c == -1) {
+				return null;
+			}
+
+			List<String> fields = new ArrayList<>();
+			StringBuilder field = new StringBuilder();
+			boolean quoted = false;
+			int length = 0;
+
+			while (c != -1) {
+				if (quoted) {
+					if (c == '"') {
+						reader.mark(1);
+						int next = reader.read();
+						if (next == '"') {
+							field.append('"');
+						} else {
+							quoted = false;
+							reader.reset();
+						}
+					} else {
+						field.append((char) c);
+					}
+				} else if (c == '"') {
+					quoted = true;
+				} else if (c == ',') {
+					fields.add(field.toString());
+					field.setLength(0);
+				} else if (c == '\n') {
+					break;
+				} else if (c != '\r') {
+					field.append((char) c);
+				}
+				
+				if (field.length() > MAX_FIELD_LENGTH) {
+					oversized = String.format("Campo maior que %d caracteres", MAX_FIELD_LENGTH);
+				} else if (++length > MAX_LINE_LENGTH) {
+					oversized = String.format("Linha maior que %d caracteres", MAX_LINE_LENGTH);
+				}
+				if (oversized != null) {
+					skipLine();
+					return fields;
+				}
+				c = reader.read();
+			}
+
+			fields.add(field.toString());
+			return fields;
+		}
+	}
+
+	/**
+	 * Um objeto JSON por linha. Uma linha inválida é rejeitada sem interromper a leitura das demais.
+	 */
+	static class NdjsonRowReader extends ImportRowReader {
+
+		private final ObjectMapper objectMapper;
+
+		private final StringBuilder line = new StringBuilder();
+
+		private boolean started;
+
+		/** A última linha lida passou do limite; o restante dela foi descartado. */
+		private boolean oversized;
+
+		NdjsonRowReader(InputStream inputStream, ObjectMapper objectMapper) {
+			super(inputStream);
+			this.objectMapper = objectMapper;
+		}
+
+		@Override
+		ImportRow next() throws IOException {
+			if (!started) {
+				skipByteOrderMark();
+				started = true;
+			}
+
+			String line = readLine();
+			while (line != null && !oversized && line.trim().isEmpty()) {
+				line = readLine();
+			}
+			if (line == null) {
+				return null;
+			}
+
+			row++;
+			if (oversized) {
+				return new ImportRow(row, null, String.format("Linha maior que %d caracteres", MAX_LINE_LENGTH));
+			}
+			try {
+				JsonNode node = objectMapper.readTree(line);
+				if (!node.isObject()) {
+					return new ImportRow(row, null, "Linha não contém um objeto JSON");
+				}
+
+				Map<String, String> values = new HashMap<>();
+				node.fields().forEachRemaining(entry -> values.put(entry.getKey(), entry.getValue().isNull() ? null : entry.getValue().asText()));
+				return new ImportRow(row, values, null);
+			} catch (JsonProcessingException e) {
+				return new ImportRow(row, null, "JSON inválido: " + e.getOriginalMessage());
+			}
+		}
+
+		/**
+		 * @return a próxima linha, ou null ao final do conteúdo
+		 */
+		private String readLine() throws IOException {
+			oversized = false;
+			int c = reader.read();
+			if (c == -1) {
+				return null;
+			}
+
+			line.setLength(0);
+			while (c != -1 && c != '\n') {
+				if (c != '\r') {
+					line.append((char) c);
+				}
+				if (line.length() > MAX_LINE_LENGTH) {
+					oversized = true;
+					skipLine();
+					break;
+				}
+				c = reader.read();
+			}
+			return line.toString();
+		}
+	}
+}
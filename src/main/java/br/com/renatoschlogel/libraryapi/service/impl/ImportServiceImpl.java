@@ -0,0 +1,249 @@
+package br.com.renatoschlogel.libraryapi.service.impl;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import javax.validation.ConstraintViolation;
+import javax.validation.Validator;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import br.com.renatoschlogel.libraryapi.api.dto.BookDTO;
+import br.com.renatoschlogel.libraryapi.api.dto.ImportRejectionDTO;
+import br.com.renatoschlogel.libraryapi.api.dto.ImportResultDTO;
+import br.com.renatoschlogel.libraryapi.exception.BusinessException;
+import br.com.renatoschlogel.libraryapi.model.entity.Book;
+import br.com.renatoschlogel.libraryapi.model.entity.Loan;
+import br.com.renatoschlogel.libraryapi.model.repository.BookIsbnView;
+import br.com.renatoschlogel.libraryapi.model.repository.BookRepository;
+import br.com.renatoschlogel.libraryapi.model.repository.LoanRepository;
+import br.com.renatoschlogel.libraryapi.service.BookService;
+import br.com.renatoschlogel.libraryapi.service.DataFormat;
+import br.com.renatoschlogel.libraryapi.service.ImportService;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Importa o conteúdo em blocos de tamanho fixo, cada bloco na sua própria transação.
+ * O contexto de persistência é limpo a cada bloco, então a memória usada não cresce
+ * com o tamanho da importação.
+ */
+@Service
+@Slf4j
+@RequiredArgsConstructor
+public class ImportServiceImpl implements ImportService {
+
+	private final BookService bookService;
+	private final BookRepository bookRepository;
+	private final LoanRepository loanRepository;
+	private final OverdueLevels overdueLevels;
+	private final TransactionTemplate transactionTemplate;
+	private final ObjectMapper objectMapper;
+	private final Validator validator;
+	
+	@PersistenceContext
+	private EntityManager entityManager;
+	
+	@Value("${application.import.chunk-size}")
+	private int chunkSize;
+	
+	@Value("${application.import.max-reported-rejections}")
+	private int maxReportedRejections;
+
+	@Override
+	public ImportResultDTO importBooks(InputStream inputStream, DataFormat format) {
+		return importRows("livros", inputStream, format, this::importBookChunk);
+	}
+
+	@Override
+	public ImportResultDTO importLoans(InputStream inputStream, DataFormat format) {
+		return importRows("empréstimos", inputStream, format, this::importLoanChunk);
+	}
+
+	private ImportResultDTO importRows(String kind, InputStream inputStream, DataFormat format,
+									   Function<List<ImportRow>, Map<Long, String>> chunkImporter) {
+		
+		ImportResultDTO result = new ImportResultDTO();
+		List<ImportRow> chunk = new ArrayList<>(chunkSize);
+		
+		try (ImportRowReader reader = ImportRowReader.of(format, inputStream, objectMapper)) {
+			ImportRow row;
+			while ((row = reader.next()) != null) {
+				result.setProcessed(result.getProcessed() + 1);
+				
+				if (row.getError() != null) {
+					reject(result, row.getRow(), row.getError());
+					continue;
+				}
+				
+				chunk.add(row);
+				if (chunk.size() == chunkSize) {
+					importChunk(kind, chunk, result, chunkImporter);
+				}
+			}
+			
+			if (!chunk.isEmpty()) {
+				importChunk(kind, chunk, result, chunkImporter);
+			}
+		} catch (IOException e) {
+			log.error("Falha ao ler a importação de {} após {} linhas", kind, result.getProcessed(), e);
+			throw new BusinessException("Falha ao ler o conteúdo da importação.");
+		}
+		
+		log.info("Importação de {} concluída: {} linhas, {} importadas, {} rejeitadas",
+				 kind, result.getProcessed(), result.getImported(), result.getRejected());
+		return result;
+	}
+
+	private void importChunk(String kind, List<ImportRow> chunk, ImportResultDTO result,
+							 Function<List<ImportRow>, Map<Long, String>> chunkImporter) {
+		try {
+			Map<Long, String> rejected = transactionTemplate.execute(status -> {
+				Map<Long, String> rejectedRows = chunkImporter.apply(chunk);
+				entityManager.flush();
+				entityManager.clear();
+				return rejectedRows;
+			});
+			
+			result.setImported(result.getImported() + chunk.size() - rejected.size());
+			rejected.forEach((row, error) -> reject(result, row, error));
+		} catch (BusinessException | DataIntegrityViolationException e) {
+			log.warn("Bloco de {} linhas de {} rejeitado: {}", chunk.size(), kind, e.getMessage());
+			chunk.forEach(row -> reject(result, row.getRow(), "Bloco rejeitado: " + e.getMessage()));
+		}
+		
+		chunk.clear();
+		log.info("Importação de {}: {} linhas processadas, {} importadas, {} rejeitadas",
+				 kind, result.getProcessed(), result.getImported(), result.getRejected());
+	}
+
+	private Map<Long, String> importBookChunk(List<ImportRow> rows) {
+		Map<Long, String> rejected = new TreeMap<>();
+		List<Book> books = new ArrayList<>(rows.size());
+		List<Long> bookRows = new ArrayList<>(rows.size());
+		
+		for (ImportRow row : rows) {
+			BookDTO bookDTO = BookDTO.builder()
+									 .title(row.get("title"))
+									 .author(row.get("author"))
+									 .isbn(row.get("isbn"))
+									 .build();
+			
+			Set<ConstraintViolation<BookDTO>> violations = validator.validate(bookDTO);
+			if (!violations.isEmpty()) {
+				rejected.put(row.getRow(), violations.stream()
+													 .map(violation -> violation.getPropertyPath() + " " + violation.getMessage())
+													 .sorted()
+													 .collect(Collectors.joining(", ")));
+				continue;
+			}
+			
+			books.add(Book.builder().title(bookDTO.getTitle()).author(bookDTO.getAuthor()).isbn(bookDTO.getIsbn()).build());
+			bookRows.add(row.getRow());
+		}
+		
+		bookService.incluirLote(books);
+		
+		for (int i = 0; i < books.size(); i++) {
+			if (books.get(i).getId() == null) {
+				rejected.put(bookRows.get(i), "Isbn já utilizado por outro livro!");
+			}
+		}
+		return rejected;
+	}
+
+	private Map<Long, String> importLoanChunk(List<ImportRow> rows) {
+		Map<Long, String> rejected = new TreeMap<>();
+		
+		Set<String> isbns = rows.stream()
+								.map(row -> row.get("isbn"))
+								.filter(isbn -> isbn != null)
+								.collect(Collectors.toSet());
+		
+		Map<String, Long> bookIdsByIsbn = isbns.isEmpty() ? new TreeMap<>() 
+														  : bookRepository.findIdByIsbnIn(isbns)
+																		  .stream()
+																		  .collect(Collectors.toMap(BookIsbnView::getIsbn, BookIsbnView::getId));
+		
+		List<Loan> loans = new ArrayList<>(rows.size());
+		Map<Long, Loan> activeLoansByRow = new TreeMap<>();
+		for (ImportRow row : rows) {
+			String isbn = row.get("isbn");
+			String customer = row.get("customer");
+			
+			if (isbn == null || customer == null || row.get("loanDate") == null) {
+				rejected.put(row.getRow(), "Os campos isbn, customer e loanDate são obrigatórios");
+				continue;
+			}
+			
+			Long bookId = bookIdsByIsbn.get(isbn);
+			if (bookId == null) {
+				rejected.put(row.getRow(), "Book not found fot passad isbn.");
+				continue;
+			}
+			
+			LocalDate loanDate;
+			try {
+				loanDate = LocalDate.parse(row.get("loanDate"));
+			} catch (DateTimeParseException e) {
+				rejected.put(row.getRow(), "Data do empréstimo inválida: " + row.get("loanDate"));
+				continue;
+			}
+			
+			Loan loan = Loan.builder()
+							.book(entityManager.getReference(Book.class, bookId))
+							.customer(customer)
+							.customerEmail(row.get("customerEmail"))
+							.loanDate(loanDate)
+							.returned(Boolean.valueOf(row.get("returned")))
+							.nextNotificationDate(overdueLevels.nextNotificationDate(loanDate, 0))
+							.build();
+			loans.add(loan);
+			if (!loan.getReturned()) {
+				activeLoansByRow.put(row.getRow(), loan);
+			}
+		}
+		
+		loanRepository.saveAll(loans);
+		
+		Set<Long> booksWithReturnedLoans = loans.stream()
+												.filter(Loan::getReturned)
+												.map(loan -> loan.getBook().getId())
+												.collect(Collectors.toSet());
+		if (!booksWithReturnedLoans.isEmpty()) {
+			bookRepository.incrementVersionByIdIn(booksWithReturnedLoans);
+		}
+		
+		activeLoansByRow.forEach((row, loan) -> {
+			if (bookRepository.markLoaned(loan.getBook().getId(), loan.getId()) == 0) {
+				rejected.put(row, "Book already loaned.");
+				loanRepository.delete(loan);
+			}
+		});
+		return rejected;
+	}
+
+	private void reject(ImportResultDTO result, long row, String error) {
+		result.setRejected(result.getRejected() + 1);
+		if (result.getRejections().size() < maxReportedRejections) {
+			result.getRejections().add(new ImportRejectionDTO(row, error));
+		}
+	}
+
+}
@@ -0,0 +1,111 @@
+package br.com.renatoschlogel.libraryapi.service.impl;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Filtro de Bloom para responder se um isbn certamente não existe na base sem ir ao banco.
+ *
+ * <p>Enquanto não for carregado com os isbns da base, toda consulta responde "talvez".
+ * Isbns de livros excluídos continuam no filtro e apenas levam à consulta no banco, assim
+ * como os falsos positivos; a constraint unique do isbn continua sendo a garantia final
+ * contra duplicidade.</p>
+ */
+@Component
+public class IsbnFilter {
+
+	private static final int BITS_PER_WORD = 64;
+
+	private final AtomicLongArray words;
+	private final long numberOfBits;
+	private final int numberOfHashes;
+
+	private volatile boolean loaded;
+
+	@Autowired
+	public IsbnFilter(@Value("${application.isbn-filter.expected-insertions}") long expectedInsertions,
+					  @Value("${application.isbn-filter.false-positive-probability}") double falsePositiveProbability) {
+
+		if (expectedInsertions <= 0 || falsePositiveProbability <= 0 || falsePositiveProbability >= 1) {
+			throw new IllegalArgumentException("Invalid isbn filter sizing");
+		}
+
+		long bits = (long) Math.ceil(-expectedInsertions * Math.log(falsePositiveProbability) / (Math.log(2) * Math.log(2)));
+		this.numberOfHashes = Math.max(1, (int) Math.round((double) bits / expectedInsertions * Math.log(2)));
+		this.words = new AtomicLongArray((int) ((bits + BITS_PER_WORD - 1) / BITS_PER_WORD));
+		this.numberOfBits = (long) words.length() * BITS_PER_WORD;
+	}
+
+	public boolean mightContain(String isbn) {
+		if (!loaded || isbn == null) {
+			return true;
+		}
+
+		long hash = hash(isbn);
+		for (int i = 0; i < numberOfHashes; i++) {
+			if (!isSet(index(hash, i))) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	public void put(String isbn) {
+		if (isbn == null) {
+			return;
+		}
+
+		long hash = hash(isbn);
+		for (int i = 0; i < numberOfHashes; i++) {
+			set(index(hash, i));
+		}
+	}
+
+	public void markLoaded() {
+		loaded = true;
+	}
+
+	private long index(long hash, int i) {
+		int h1 = (int) hash;
+		int h2 = (int) (hash >>> 32);
+		return ((h1 + (long) i * h2) & Long.MAX_VALUE) % numberOfBits;
+	}
+
+	private boolean isSet(long index) {
+		return (words.get((int) (index / BITS_PER_WORD)) & mask(index)) != 0;
+	}
+
+	private void set(long index) {
+		int wordIndex = (int) (index / BITS_PER_WORD);
+		long mask = mask(index);
+
+		while (true) {
+			long word = words.get(wordIndex);
+			if ((word & mask) != 0 || words.compareAndSet(wordIndex, word, word | mask)) {
+				return;
+			}
+		}
+	}
+
+	private long mask(long index) {
+		return 1L << (index % BITS_PER_WORD);
+	}
+
+	private long hash(String isbn) {
+		long hash = 0xcbf29ce484222325L;
+		for (int i = 0; i < isbn.length(); i++) {
+			hash ^= isbn.charAt(i);
+			hash *= 0x100000001b3L;
+		}
+
+		hash ^= hash >>> 33;
+		hash *= 0xff51afd7ed558ccdL;
+		hash ^= hash >>> 33;
+		hash *= 0xc4ceb9fe1a85ec53L;
+		hash ^= hash >>> 33;
+		return hash;
+	}
+}
@@ -0,0 +1,53 @@
+package br.com.renatoschlogel.libraryapi.service.impl;
+
+import java.util.Objects;
+import java.util.function.LongSupplier;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+import org.springframework.stereotype.Component;
+
+import com.github.benmanes.caffeine.cache.Cache;
+
+/**
+ * Completa uma {@link Slice} com o total de registros do filtro, transformando-a em {@link Page}.
+ *
+ * <p>Na última página o total é conhecido sem consultar o banco. Nas demais, o count é
+ * feito uma vez por filtro e reaproveitado enquanto estiver no cache, por isso pode
+ * estar levemente desatualizado.</p>
+ */
+@Component
+public class ListingTotals {
+
+	private final Cache<String, Long> listingTotalsCache;
+
+	public ListingTotals(Cache<String, Long> listingTotalsCache) {
+		this.listingTotalsCache = listingTotalsCache;
+	}
+
+	public static String key(String listing, Object... filter) {
+		return Stream.of(filter).map(Objects::toString).collect(Collectors.joining("|", listing + ":", ""));
+	}
+
+	public <T> Page<T> toPage(Slice<T> slice, String key, LongSupplier count) {
+		Pageable pageable = slice.getPageable();
+		if (pageable.isUnpaged()) {
+			return new PageImpl<>(slice.getContent(), pageable, slice.getNumberOfElements());
+		}
+
+		long seen = pageable.getOffset() + slice.getNumberOfElements();
+		if (!slice.hasNext() && (slice.hasContent() || pageable.getOffset() == 0)) {
+			listingTotalsCache.put(key, seen);
+			return new PageImpl<>(slice.getContent(), pageable, seen);
+		}
+
+		long total = listingTotalsCache.get(key, k -> count.getAsLong());
+		long minimum = slice.hasNext() ? seen + 1 : seen;
+		return new PageImpl<>(slice.getContent(), pageable, Math.max(total, minimum));
+	}
+
+}
@@ -1,44 +1,227 @@
 package br.com.renatoschlogel.libraryapi.service.impl;
 
 import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 
+
+import org.springframework.dao.OptimisticLockingFailureException;
 import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.SliceImpl;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
 import br.com.renatoschlogel.libraryapi.api.dto.LoanFilterDTO;
 import br.com.renatoschlogel.libraryapi.exception.BusinessException;
-import br.com.renatoschlogel.libraryapi.model.entity.Book;
 import br.com.renatoschlogel.libraryapi.model.entity.Loan;
+import br.com.renatoschlogel.libraryapi.model.repository.BookRepository;
+import br.com.renatoschlogel.libraryapi.model.repository.LateLoanView;
 import br.com.renatoschlogel.libraryapi.model.repository.LoanRepository;
+import br.com.renatoschlogel.libraryapi.model.repository.LoanView;
 import br.com.renatoschlogel.libraryapi.service.LoanService;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
 
 @Service
 public class LoanServiceImpl implements LoanService{
 	
+	private static final int MAX_IN_PARAMETERS = 1000;
+
 	private LoanRepository loanRepository;
+	private BookRepository bookRepository;
+	private ListingTotals listingTotals;
+	private OverdueLevels overdueLevels;
+	private CheckoutCoordinator checkoutCoordinator;
+	private Counter bookAlreadyLoaned;
+	private Counter loanNotFound;
 
-	public LoanServiceImpl(LoanRepository loanRepository) {
+	public LoanServiceImpl(LoanRepository loanRepository, BookRepository bookRepository, ListingTotals listingTotals, 
+						   OverdueLevels overdueLevels, CheckoutCoordinator checkoutCoordinator, MeterRegistry meterRegistry) {
 		this.loanRepository = loanRepository;
+		this.bookRepository = bookRepository;
+		this.listingTotals = listingTotals;
+		this.overdueLevels = overdueLevels;
+		this.checkoutCoordinator = checkoutCoordinator;
+		this.bookAlreadyLoaned = Counter.builder("library.loans.rejected").tag("reason", "book_already_loaned").register(meterRegistry);
+		this.loanNotFound = Counter.builder("library.loans.rejected").tag("reason", "loan_not_found").register(meterRegistry);
 	}
 
+	/**
+	 * O livro só é marcado com o novo empréstimo se não tiver outro em aberto, numa única atualização
+	 * condicional; se isso falhar a transação é desfeita e o empréstimo não é gravado.
+	 */
 	@Override
 	public Loan save(Loan loan) {
+		return checkoutCoordinator.execute(loan.getBook().getId(), () -> {
+			
+			if (loan.getLoanDate() != null) {
+				loan.setNextNotificationDate(overdueLevels.nextNotificationDate(loan.getLoanDate(), 0));
+			}
+			Loan savedLoan = loanRepository.save(loan);
+			
+			if (bookRepository.markLoaned(loan.getBook().getId(), savedLoan.getId()) == 0) {
+				bookAlreadyLoaned.increment();
+				throw new BusinessException("Book already loaned.");
+			}
+			return savedLoan;
+		});
+	}
+
+	/**
+	 * Com os locks de todos os livros do lote, a disponibilidade é consultada de uma vez, os empréstimos
+	 * aceitos são inseridos em lote e os livros marcados numa única atualização. Se outra instância
+	 * emprestar algum dos livros nesse meio tempo, o lote inteiro é desfeito.
+	 */
+	@Override
+	public List<Loan> saveBatch(List<Loan> loans) {
+		List<Long> bookIds = loans.stream()
+								  .map(loan -> loan.getBook().getId())
+								  .distinct()
+								  .collect(Collectors.toList());
+		if (bookIds.isEmpty()) {
+			return loans;
+		}
 		
-		if(loanRepository.existsByBookAndNotReturned(loan.getBook())) {
-			throw new BusinessException("Book already loaned.");
+		return checkoutCoordinator.execute(bookIds, () -> {
+			
+			Set<Long> availableBookIds = new HashSet<>(bookIds.size());
+			for (List<Long> chunk : chunks(bookIds)) {
+				availableBookIds.addAll(bookRepository.findAvailableIdsByIdIn(chunk));
+			}
+			List<Loan> acceptedLoans = new ArrayList<>(availableBookIds.size());
+			for (Loan loan : loans) {
+				Long bookId = loan.getBook().getId();
+				if (!availableBookIds.remove(bookId)) {
+					continue;
+				}
+				
+				loan.setBook(bookRepository.getOne(bookId));
+				if (loan.getLoanDate() != null) {
+					loan.setNextNotificationDate(overdueLevels.nextNotificationDate(loan.getLoanDate(), 0));
+				}
+				acceptedLoans.add(loan);
+			}
+			bookAlreadyLoaned.increment(loans.size() - acceptedLoans.size());
+			if (acceptedLoans.isEmpty()) {
+				return loans;
+			}
+			
+			loanRepository.saveAll(acceptedLoans);
+			loanRepository.flush();
+			
+			List<Long> loanIds = acceptedLoans.stream().map(Loan::getId).collect(Collectors.toList());
+			int markedBooks = 0;
+			for (List<Long> chunk : chunks(loanIds)) {
+				markedBooks += bookRepository.markLoanedByLoanIdIn(chunk);
+			}
+			if (markedBooks != acceptedLoans.size()) {
+				bookAlreadyLoaned.increment(acceptedLoans.size());
+				throw new BusinessException("Book already loaned.");
+			}
+			return loans;
+		});
+	}
+
+	/**
+	 * Uma atualização no empréstimo e outra no livro, localizado pelo empréstimo em aberto, sem leituras
+	 * antes. As duas são condicionais, então dispensam o bloqueio por livro usado nos empréstimos.
+	 */
+	@Override
+	@Transactional
+	public boolean updateReturnedBook(Long idLoan, Boolean retorned, Long version) {
+		boolean returned = Boolean.TRUE.equals(retorned);
+		
+		if (loanRepository.updateReturned(idLoan, returned, version) == 0) {
+			if (version != null && loanRepository.existsById(idLoan)) {
+				throw new OptimisticLockingFailureException("Empréstimo alterado por outra requisição.");
+			}
+			loanNotFound.increment();
+			return false;
 		}
 		
-		return loanRepository.save(loan);
+		if (returned) {
+			bookRepository.markReturned(idLoan);
+		} else if (bookRepository.markReopened(idLoan) == 0) {
+			bookAlreadyLoaned.increment();
+			throw new BusinessException("Book already loaned.");
+		}
+		return true;
 	}
 
+	/**
+	 * As devoluções são gravadas com uma atualização para os empréstimos e outra para os livros, e as
+	 * devoluções desfeitas, depois delas, com uma atualização nos livros e uma leitura de quais voltaram
+	 * a ficar com o empréstimo. Cada comando recebe até {@value #MAX_IN_PARAMETERS} ids.
+	 */
 	@Override
-	public Loan updateReturnedBook(Long idLoan, Boolean retorned) {
-		Loan loan = loanRepository.findById(idLoan).orElseThrow(() -> new BusinessException("Empréstimo não encontrado!") );
-		loan.setReturned(retorned);
-		return loanRepository.save(loan);
+	@Transactional
+	public Map<Long, String> updateReturnedBooks(Map<Long, Boolean> returnedByLoan) {
+		Map<Long, String> rejected = new HashMap<>();
+		if (returnedByLoan.isEmpty()) {
+			return rejected;
+		}
+		
+		List<Long> loanIds = new ArrayList<>(returnedByLoan.keySet());
+		Set<Long> existingIds = new HashSet<>(loanIds.size());
+		for (List<Long> chunk : chunks(loanIds)) {
+			existingIds.addAll(loanRepository.findIdsByIdIn(chunk));
+		}
+		List<Long> returnedIds = new ArrayList<>();
+		List<Long> reopenedIds = new ArrayList<>();
+		returnedByLoan.forEach((id, returned) -> {
+			if (!existingIds.contains(id)) {
+				loanNotFound.increment();
+				rejected.put(id, "Empréstimo não encontrado.");
+			} else if (Boolean.TRUE.equals(returned)) {
+				returnedIds.add(id);
+			} else {
+				reopenedIds.add(id);
+			}
+		});
+		
+		for (List<Long> chunk : chunks(returnedIds)) {
+			loanRepository.updateReturnedByIdIn(chunk, true);
+			bookRepository.markReturnedByLoanIdIn(chunk);
+		}
+		
+		for (List<Long> chunk : chunks(reopenedIds)) {
+			bookRepository.markReopenedByLoanIdIn(chunk);
+			Set<Long> reopenedLoanIds = new HashSet<>(bookRepository.findActiveLoanIdsIn(chunk));
+			if (!reopenedLoanIds.isEmpty()) {
+				loanRepository.updateReturnedByIdIn(reopenedLoanIds, false);
+			}
+			for (Long id : chunk) {
+				if (!reopenedLoanIds.contains(id)) {
+					bookAlreadyLoaned.increment();
+					rejected.put(id, "Book already loaned.");
+				}
+			}
+		}
+		return rejected;
+	}
+
+	/**
+	 * Blocos de até {@value #MAX_IN_PARAMETERS} ids, para que nenhuma lista do "in" passe desse tamanho.
+	 */
+	private static List<List<Long>> chunks(List<Long> ids) {
+		List<List<Long>> chunks = new ArrayList<>((ids.size() + MAX_IN_PARAMETERS - 1) / MAX_IN_PARAMETERS);
+		for (int start = 0; start < ids.size(); start += MAX_IN_PARAMETERS) {
+			chunks.add(ids.subList(start, Math.min(start + MAX_IN_PARAMETERS, ids.size())));
+		}
+		return chunks;
 	}
 
 	@Override
@@ -47,22 +230,148 @@ public class LoanServiceImpl implements LoanService{
 	}
 
 	@Override
-	public Page<Loan> find(LoanFilterDTO loanFilter, Pageable pageable) {
-		return loanRepository.findByBookIsbnOrCustomer(loanFilter.getIsbn(), loanFilter.getCustumer(), pageable);
+	@Transactional(readOnly = true)
+	public Page<LoanView> find(LoanFilterDTO loanFilter, Pageable pageable) {
+		String isbn = loanFilter.getIsbn();
+		String customer = loanFilter.getCustumer();
+		Long bookId = bookIdOf(isbn);
+		
+		return listingTotals.toPage(findSlice(bookId, customer, pageable), 
+									ListingTotals.key("loans", isbn, customer), 
+									() -> count(bookId, customer));
+	}
+
+	@Override
+	@Transactional(readOnly = true)
+	public Slice<LoanView> findSlice(LoanFilterDTO loanFilter, Pageable pageable) {
+		return findSlice(bookIdOf(loanFilter.getIsbn()), loanFilter.getCustumer(), pageable);
+	}
+
+	/**
+	 * Empréstimos do livro ou do cliente. Cada filtro informado vira uma consulta pelo seu próprio índice;
+	 * com os dois, os ids vêm da união das duas consultas, ordenados por data e id, e os empréstimos são
+	 * lidos depois já com as colunas do livro.
+	 */
+	private Slice<LoanView> findSlice(Long bookId, String customer, Pageable pageable) {
+		if (bookId == null && customer == null) {
+			return new SliceImpl<>(Collections.emptyList(), pageable, false);
+		}
+		if (bookId == null) {
+			return loanRepository.findSliceByCustomer(customer, pageable);
+		}
+		if (customer == null) {
+			return loanRepository.findSliceByBookId(bookId, pageable);
+		}
+		
+		List<Long> ids = loanRepository.findIdsByBookOrCustomer(bookId, customer, pageable.getPageSize() + 1, pageable.getOffset());
+		return toSlice(ids, pageable);
+	}
+
+	private long count(Long bookId, String customer) {
+		if (bookId == null && customer == null) {
+			return 0;
+		}
+		if (bookId == null) {
+			return loanRepository.countByCustomer(customer);
+		}
+		if (customer == null) {
+			return loanRepository.countByBookId(bookId);
+		}
+		return loanRepository.countByBookOrCustomer(bookId, customer);
+	}
+
+	@Override
+	@Transactional(readOnly = true)
+	public Page<LoanView> getloansByBook(Long bookId, Pageable pageable) {
+		return listingTotals.toPage(getLoansByBookSlice(bookId, pageable), 
+									ListingTotals.key("loansByBook", bookId), 
+									() -> loanRepository.countByBookId(bookId));
 	}
 
 	@Override
-	public Page<Loan> getloansByBook(Book book, Pageable pageable) {
-		return loanRepository.findByBook(book, pageable);
+	@Transactional(readOnly = true)
+	public Slice<LoanView> getLoansByBookSlice(Long bookId, Pageable pageable) {
+		return loanRepository.findSliceByBookId(bookId, pageable);
 	}
 
 	@Override
-	public List<Loan> getAllLateLoans() {
+	@Transactional(readOnly = true)
+	public Slice<LoanView> findAfter(LoanFilterDTO loanFilter, LocalDate loanDate, Long id, int size) {
+		Long bookId = bookIdOf(loanFilter.getIsbn());
+		String customer = loanFilter.getCustumer();
+		PageRequest pageRequest = PageRequest.of(0, size);
+		boolean firstPage = loanDate == null || id == null;
+		
+		if (bookId == null && customer == null) {
+			return new SliceImpl<>(Collections.emptyList(), pageRequest, false);
+		}
+		if (bookId == null) {
+			return firstPage ? loanRepository.findByCustomerOrderByLoanDate(customer, pageRequest)
+							 : loanRepository.findByCustomerAfter(customer, loanDate, id, pageRequest);
+		}
+		if (customer == null) {
+			return firstPage ? loanRepository.findByBookIdOrderByLoanDate(bookId, pageRequest)
+							 : loanRepository.findByBookIdAfter(bookId, loanDate, id, pageRequest);
+		}
 		
-		final Integer loanDays = 4;
-		LocalDate theeDaysAgo = LocalDate.now().minusDays(loanDays);
+		List<Long> ids = firstPage ? loanRepository.findIdsByBookOrCustomer(bookId, customer, size + 1, 0)
+								   : loanRepository.findIdsByBookOrCustomerAfter(bookId, customer, loanDate, id, size + 1);
+		return toSlice(ids, pageRequest);
+	}
+
+	@Override
+	@Transactional(readOnly = true)
+	public Slice<LoanView> getLoansByBookAfter(Long bookId, LocalDate loanDate, Long id, int size) {
+		if (loanDate == null || id == null) {
+			return loanRepository.findByBookIdOrderByLoanDate(bookId, PageRequest.of(0, size));
+		}
+		return loanRepository.findByBookIdAfter(bookId, loanDate, id, PageRequest.of(0, size));
+	}
+
+	@Override
+	public List<LateLoanView> getLoansToNotify(LocalDate referenceDate, String afterCustomerEmail, int customers) {
+		List<String> customerEmails = loanRepository.findCustomersToNotify(referenceDate, afterCustomerEmail == null ? "" : afterCustomerEmail, 
+																		   PageRequest.of(0, customers));
+		if (customerEmails.isEmpty()) {
+			return Collections.emptyList();
+		}
+		return loanRepository.findLoansToNotify(customerEmails, referenceDate);
+	}
+
+	@Override
+	@Transactional
+	public void markNotified(List<Long> loanIds, LocalDate referenceDate) {
+		LocalDateTime notifiedAt = LocalDateTime.now();
+		for (Loan loan : loanRepository.findAllById(loanIds)) {
+			int level = overdueLevels.reachedLevel(loan.getLoanDate(), referenceDate);
+			loan.setNotificationLevel(level);
+			loan.setNotifiedAt(notifiedAt);
+			loan.setNextNotificationDate(overdueLevels.nextNotificationDate(loan.getLoanDate(), level));
+		}
+	}
+
+	private Long bookIdOf(String isbn) {
+		return isbn == null ? null : bookRepository.findIdByIsbn(isbn).orElse(null);
+	}
+
+	/**
+	 * Lê os empréstimos dos ids, na mesma ordem, usando o id a mais buscado só para saber se há próxima página.
+	 */
+	private Slice<LoanView> toSlice(List<Long> ids, Pageable pageable) {
+		boolean hasNext = ids.size() > pageable.getPageSize();
+		List<Long> pageIds = hasNext ? ids.subList(0, pageable.getPageSize()) : ids;
+		if (pageIds.isEmpty()) {
+			return new SliceImpl<>(Collections.emptyList(), pageable, hasNext);
+		}
 		
-		return loanRepository.findByLoanDateLessThanAndNotReturned(theeDaysAgo);
+		Map<Long, LoanView> loansById = loanRepository.findViewsByIdIn(pageIds)
+													  .stream()
+													  .collect(Collectors.toMap(LoanView::getId, Function.identity()));
+		List<LoanView> loans = pageIds.stream()
+									  .map(loansById::get)
+									  .filter(Objects::nonNull)
+									  .collect(Collectors.toList());
+		return new SliceImpl<>(loans, pageable, hasNext);
 	}
 
 }
@@ -0,0 +1,224 @@
+package br.com.renatoschlogel.libraryapi.service.impl;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.mail.MailException;
+import org.springframework.mail.MailSendException;
+import org.springframework.mail.SimpleMailMessage;
+import org.springframework.mail.javamail.JavaMailSender;
+import org.springframework.stereotype.Component;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Fila limitada de e-mails consumida por threads próprias, fora da thread de quem pede o envio.
+ *
+ * <p>Cada worker retira até {@code batch-size} mensagens e as envia em uma única chamada ao
+ * {@link JavaMailSender}, que reaproveita a mesma conexão SMTP para o lote. Os envios respeitam a
+ * taxa configurada e as mensagens que falharem são reenviadas com espera exponencial, até o
+ * limite de tentativas. Com a fila cheia, {@link #dispatch} aguarda espaço.</p>
+ *
+ * <p>O callback de cada mensagem roda na thread do worker, apenas depois que o servidor aceitar a
+ * mensagem; falhas nele são registradas e não afetam as demais mensagens do lote.</p>
+ */
+@Component
+@Slf4j
+public class MailDispatcher {
+
+	private static final long POLL_MILLIS = 200;
+
+	private final JavaMailSender javaMailSender;
+	private final BlockingQueue<MailJob> queue;
+	private final MailRateLimiter rateLimiter;
+	private final int workers;
+	private final int batchSize;
+	private final int maxAttempts;
+	private final Duration initialBackoff;
+	private final Duration shutdownTimeout;
+
+	private final List<Thread> threads = new ArrayList<>();
+	private volatile boolean running;
+	private volatile boolean stopped;
+
+	@Autowired
+	public MailDispatcher(JavaMailSender javaMailSender,
+						  @Value("${application.mail.dispatcher.queue-capacity}") int queueCapacity,
+						  @Value("${application.mail.dispatcher.workers}") int workers,
+						  @Value("${application.mail.dispatcher.batch-size}") int batchSize,
+						  @Value("${application.mail.dispatcher.rate-per-second}") double ratePerSecond,
+						  @Value("${application.mail.dispatcher.max-attempts}") int maxAttempts,
+						  @Value("${application.mail.dispatcher.initial-backoff}") Duration initialBackoff,
+						  @Value("${application.mail.dispatcher.shutdown-timeout}") Duration shutdownTimeout) {
+		this.javaMailSender = javaMailSender;
+		this.queue = new ArrayBlockingQueue<>(queueCapacity);
+		this.rateLimiter = new MailRateLimiter(ratePerSecond);
+		this.workers = workers;
+		this.batchSize = batchSize;
+		this.maxAttempts = maxAttempts;
+		this.initialBackoff = initialBackoff;
+		this.shutdownTimeout = shutdownTimeout;
+	}
+
+	@PostConstruct
+	public void start() {
+		running = true;
+		for (int i = 1; i <= workers; i++) {
+			Thread thread = new Thread(this::work, "mail-dispatcher-" + i);
+			thread.setDaemon(true);
+			thread.start();
+			threads.add(thread);
+		}
+	}
+
+	/**
+	 * Termina de enviar o que já está na fila, aguardando no máximo {@code shutdown-timeout}.
+	 */
+	@PreDestroy
+	public void stop() throws InterruptedException {
+		stopped = true;
+		running = false;
+		long deadline = System.nanoTime() + shutdownTimeout.toNanos();
+		for (Thread thread : threads) {
+			thread.join(Math.max(1, TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime())));
+			thread.interrupt();
+		}
+		if (!queue.isEmpty()) {
+			log.warn("{} e-mails não enviados ao encerrar a aplicação", queue.size());
+		}
+	}
+
+	public void dispatch(SimpleMailMessage message) {
+		dispatch(message, () -> { });
+	}
+
+	/**
+	 * @param onSent chamado depois que o servidor aceitar a mensagem
+	 */
+	public void dispatch(SimpleMailMessage message, Runnable onSent) {
+		if (stopped) {
+			throw new IllegalStateException("Mail dispatcher is stopped");
+		}
+
+		try {
+			queue.put(new MailJob(message, onSent));
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrupted while queueing mail", e);
+		}
+	}
+
+	public int getQueueSize() {
+		return queue.size();
+	}
+
+	private void work() {
+		List<MailJob> batch = new ArrayList<>(batchSize);
+		while (running || !queue.isEmpty()) {
+			try {
+				MailJob first = queue.poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+				if (first == null) {
+					continue;
+				}
+
+				batch.add(first);
+				queue.drainTo(batch, batchSize - 1);
+				send(batch);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return;
+			} catch (RuntimeException e) {
+				log.error("Erro inesperado ao enviar e-mails", e);
+			} finally {
+				batch.clear();
+			}
+		}
+	}
+
+	private void send(List<MailJob> batch) throws InterruptedException {
+		List<MailJob> pending = batch;
+		int attempt = 1;
+
+		while (!pending.isEmpty()) {
+			rateLimiter.acquire(pending.size());
+			List<MailJob> failed = trySend(pending);
+			pending.stream()
+				   .filter(job -> !failed.contains(job))
+				   .forEach(this::confirm);
+			if (failed.isEmpty()) {
+				return;
+			}
+
+			if (attempt >= maxAttempts) {
+				failed.forEach(job -> log.error("Não foi possível enviar e-mail para {} após {} tentativas", 
+												String.join(",", job.message.getTo()), maxAttempts));
+				return;
+			}
+
+			Thread.sleep(initialBackoff.toMillis() << (attempt - 1));
+			pending = failed;
+			attempt++;
+		}
+	}
+
+	private void confirm(MailJob job) {
+		try {
+			job.onSent.run();
+		} catch (RuntimeException e) {
+			log.error("Erro ao confirmar o envio do e-mail para {}", String.join(",", job.message.getTo()), e);
+		}
+	}
+
+	/**
+	 * @return as mensagens do lote que não foram enviadas
+	 */
+	private List<MailJob> trySend(List<MailJob> jobs) {
+		SimpleMailMessage[] messages = jobs.stream().map(job -> job.message).toArray(SimpleMailMessage[]::new);
+		try {
+			javaMailSender.send(messages);
+			return new ArrayList<>();
+		} catch (MailSendException e) {
+			Map<Object, Exception> failedMessages = e.getFailedMessages();
+			log.warn("Falha ao enviar {} de {} e-mails: {}", failedMessages.isEmpty() ? jobs.size() : failedMessages.size(), 
+					 jobs.size(), e.getMessage());
+
+			if (failedMessages.isEmpty()) {
+				return new ArrayList<>(jobs);
+			}
+
+			List<MailJob> failed = new ArrayList<>();
+			for (MailJob job : jobs) {
+				if (failedMessages.containsKey(job.message)) {
+					failed.add(job);
+				}
+			}
+			return failed;
+		} catch (MailException e) {
+			log.warn("Falha ao enviar {} e-mails: {}", jobs.size(), e.getMessage());
+			return new ArrayList<>(jobs);
+		}
+	}
+
+	private static class MailJob {
+
+		private final SimpleMailMessage message;
+
+		private final Runnable onSent;
+
+		MailJob(SimpleMailMessage message, Runnable onSent) {
+			this.message = message;
+			this.onSent = onSent;
+		}
+	}
+
+}
@@ -0,0 +1,46 @@
+package br.com.renatoschlogel.libraryapi.service.impl;
+
+/**
+ * Token bucket: libera até {@code permitsPerSecond} envios por segundo, acumulando no máximo
+ * um segundo de envios não utilizados.
+ */
+class MailRateLimiter {
+
+	private static final long NANOS_PER_SECOND = 1_000_000_000L;
+
+	private final double permitsPerSecond;
+	private double availablePermits;
+	private long lastRefill;
+
+	MailRateLimiter(double permitsPerSecond) {
+		if (permitsPerSecond <= 0) {
+			throw new IllegalArgumentException("Invalid mail rate: " + permitsPerSecond);
+		}
+		this.permitsPerSecond = permitsPerSecond;
+		this.availablePermits = permitsPerSecond;
+		this.lastRefill = System.nanoTime();
+	}
+
+	/**
+	 * Bloqueia até que os envios possam ser feitos sem ultrapassar a taxa configurada.
+	 */
+	void acquire(int permits) throws InterruptedException {
+		long waitNanos;
+		synchronized (this) {
+			refill();
+			availablePermits -= permits;
+			waitNanos = availablePermits >= 0 ? 0 : (long) (-availablePermits / permitsPerSecond * NANOS_PER_SECOND);
+		}
+
+		if (waitNanos > 0) {
+			Thread.sleep(waitNanos / 1_000_000, (int) (waitNanos % 1_000_000));
+		}
+	}
+
+	private void refill() {
+		long now = System.nanoTime();
+		availablePermits = Math.min(permitsPerSecond, availablePermits + (now - lastRefill) * permitsPerSecond / NANOS_PER_SECOND);
+		lastRefill = now;
+	}
+
+}
@@ -0,0 +1,52 @@
+package br.com.renatoschlogel.libraryapi.service.impl;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Texto com variáveis no formato {nome}, analisado uma única vez. Variáveis sem valor
+ * são mantidas como estão no texto.
+ */
+class MailTemplate {
+
+	private static final Pattern VARIABLE = Pattern.compile("\\{(\\w+)\\}");
+
+	private final List<String> literals = new ArrayList<>();
+	private final List<String> variables = new ArrayList<>();
+	private final int estimatedLength;
+
+	private MailTemplate(String text) {
+		Matcher matcher = VARIABLE.matcher(text);
+		int start = 0;
+		while (matcher.find()) {
+			literals.add(text.substring(start, matcher.start()));
+			variables.add(matcher.group(1));
+			start = matcher.end();
+		}
+		literals.add(text.substring(start));
+		estimatedLength = text.length() + variables.size() * 16;
+	}
+
+	static MailTemplate compile(String text) {
+		return new MailTemplate(text);
+	}
+
+	String render(Map<String, String> values) {
+		Map<String, String> safeValues = values == null ? Collections.emptyMap() : values;
+
+		StringBuilder builder = new StringBuilder(estimatedLength);
+		for (int i = 0; i < variables.size(); i++) {
+			builder.append(literals.get(i));
+
+			String variable = variables.get(i);
+			String value = safeValues.get(variable);
+			builder.append(value != null ? value : "{" + variable + "}");
+		}
+		return builder.append(literals.get(variables.size())).toString();
+	}
+
+}
@@ -0,0 +1,46 @@
+package br.com.renatoschlogel.libraryapi.service.impl;
+
+import java.time.LocalDate;
+import java.util.Arrays;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Prazos, em dias a partir da data do empréstimo, em que o cliente recebe um novo aviso de atraso.
+ *
+ * <p>O nível de um empréstimo é a quantidade de prazos já ultrapassados. Cada empréstimo guarda a
+ * data em que atinge o próximo nível, então o envio diário só lê os empréstimos que mudaram de nível.</p>
+ */
+@Component
+public class OverdueLevels {
+
+	private final int[] days;
+
+	public OverdueLevels(@Value("${application.loan.overdue-notification-days}") int... days) {
+		this.days = days.clone();
+		Arrays.sort(this.days);
+	}
+
+	/**
+	 * Quantidade de prazos ultrapassados na data de referência.
+	 */
+	public int reachedLevel(LocalDate loanDate, LocalDate referenceDate) {
+		int level = 0;
+		while (level < days.length && loanDate.plusDays(days[level]).isBefore(referenceDate)) {
+			level++;
+		}
+		return level;
+	}
+
+	/**
+	 * Primeiro dia em que o empréstimo ultrapassa o prazo seguinte ao nível informado, ou null se não houver.
+	 */
+	public LocalDate nextNotificationDate(LocalDate loanDate, int level) {
+		if (level >= days.length) {
+			return null;
+		}
+		return loanDate.plusDays(days[level] + 1l);
+	}
+
+}
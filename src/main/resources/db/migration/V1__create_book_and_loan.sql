@@ -0,0 +1,31 @@
+-- Tabelas e sequências de Book e Loan, antes geradas pelo Hibernate a cada subida do banco em memória.
+
+create sequence book_seq start with 1 increment by 50;
+create sequence loan_seq start with 1 increment by 50;
+
+create table book (
+    id bigint not null,
+    title varchar(255),
+    author varchar(255),
+    isbn varchar(255),
+    active_loan_id bigint,
+    primary key (id)
+);
+
+create table loan (
+    id bigint not null,
+    customer varchar(100),
+    customer_email varchar(255),
+    id_book bigint,
+    loan_date date,
+    -- empréstimo sem devolução informada está em aberto: as consultas usam "returned = false", que o índice atende
+    returned boolean default false not null,
+    notification_level integer,
+    notified_at timestamp,
+    next_notification_date date,
+    primary key (id)
+);
+
+alter table book add constraint uk_book_isbn unique (isbn);
+alter table book add constraint uk_book_active_loan unique (active_loan_id);
+alter table loan add constraint fk_loan_book foreign key (id_book) references book (id);
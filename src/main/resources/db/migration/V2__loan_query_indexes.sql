@@ -0,0 +1,8 @@
+-- findSliceByBookId, countByBookId, findByBookIdOrderByLoanDate, findByBookIdAfter.
+-- Cliente e e-mail completam as colunas da listagem: sem eles o H2 empata este índice com o da chave
+-- estrangeira em id_book, que tem o mesmo prefixo e não atende a ordenação por data.
+create index idx_loan_book_loan_date on loan (id_book, loan_date, id, customer, customer_email);
+-- findCustomersToNotify
+create index idx_loan_returned_next_notification on loan (returned, next_notification_date);
+-- findLoansToNotify
+create index idx_loan_customer_email on loan (customer_email, id);
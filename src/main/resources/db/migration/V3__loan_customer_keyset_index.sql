@@ -0,0 +1,2 @@
+-- A pesquisa por cliente passou a ser um ramo próprio, ordenado por data e id como a do livro.
+create index idx_loan_customer_loan_date on loan (customer, loan_date, id);
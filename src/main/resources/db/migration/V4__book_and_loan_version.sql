@@ -0,0 +1,3 @@
+-- Versão usada no controle de concorrência otimista e nas ETags das respostas.
+alter table book add column version bigint default 0 not null;
+alter table loan add column version bigint default 0 not null;
@@ -0,0 +1,89 @@
+package br.com.renatoschlogel.libraryapi.api.mapper;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.time.LocalDate;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.projection.SpelAwareProxyProjectionFactory;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import br.com.renatoschlogel.libraryapi.api.dto.BookDTO;
+import br.com.renatoschlogel.libraryapi.model.entity.Book;
+import br.com.renatoschlogel.libraryapi.model.entity.Loan;
+import br.com.renatoschlogel.libraryapi.model.repository.LoanView;
+
+@ExtendWith(SpringExtension.class)
+@ActiveProfiles("test")
+@ContextConfiguration(classes = {BookMapperImpl.class, LoanMapperImpl.class})
+public class LoanMapperTest {
+
+	@Autowired
+	LoanMapper loanMapper;
+	
+	@Autowired
+	BookMapper bookMapper;
+	
+	ObjectMapper objectMapper = new ObjectMapper();
+	
+	@Test
+	@DisplayName("Deve mapear o empréstimo com o livro, mantendo o isbn do DTO vazio")
+	void loanToDTO() throws Exception {
+		Book book = Book.builder().id(1l).title("GO TEAM!").author("Ken").isbn("123").build();
+		Loan loan = Loan.builder().id(2l).book(book).customer("Renato").customerEmail("renato@email.com")
+								  .loanDate(LocalDate.now()).returned(true).build();
+		
+		String json = objectMapper.writeValueAsString(loanMapper.toDTO(loan));
+		
+		assertThat(json).isEqualTo("{\"id\":2,\"isbn\":null,\"customer\":\"Renato\",\"customerEmail\":\"renato@email.com\","
+								 + "\"book\":{\"id\":1,\"title\":\"GO TEAM!\",\"author\":\"Ken\",\"isbn\":\"123\"}}");
+	}
+	
+	@Test
+	@DisplayName("Deve mapear o empréstimo sem livro")
+	void loanWithoutBookToDTO() throws Exception {
+		String json = objectMapper.writeValueAsString(loanMapper.toDTO(Loan.builder().id(4l).build()));
+		
+		assertThat(json).isEqualTo("{\"id\":4,\"isbn\":null,\"customer\":null,\"customerEmail\":null,\"book\":null}");
+	}
+	
+	@Test
+	@DisplayName("Deve mapear as colunas lidas da listagem para o mesmo DTO do empréstimo")
+	void loanViewToDTO() throws Exception {
+		Map<String, Object> columns = new HashMap<>();
+		columns.put("id", 2l);
+		columns.put("customer", "Renato");
+		columns.put("customerEmail", "renato@email.com");
+		columns.put("bookId", 1l);
+		columns.put("bookTitle", "GO TEAM!");
+		columns.put("bookAuthor", "Ken");
+		columns.put("bookIsbn", "123");
+		LoanView view = new SpelAwareProxyProjectionFactory().createProjection(LoanView.class, columns);
+		
+		String json = objectMapper.writeValueAsString(loanMapper.toDTO(view));
+		
+		assertThat(json).isEqualTo("{\"id\":2,\"isbn\":null,\"customer\":\"Renato\",\"customerEmail\":\"renato@email.com\","
+								 + "\"book\":{\"id\":1,\"title\":\"GO TEAM!\",\"author\":\"Ken\",\"isbn\":\"123\"}}");
+	}
+	
+	@Test
+	@DisplayName("Deve converter o DTO em livro e o livro em DTO")
+	void bookRoundTrip() throws Exception {
+		BookDTO bookDTO = BookDTO.builder().id(3l).title("GO TEAM!").build();
+		
+		Book book = bookMapper.toEntity(bookDTO);
+		
+		assertThat(book).isEqualTo(Book.builder().id(3l).title("GO TEAM!").build());
+		assertThat(objectMapper.writeValueAsString(bookMapper.toDTO(book)))
+			.isEqualTo("{\"id\":3,\"title\":\"GO TEAM!\",\"author\":null,\"isbn\":null}");
+	}
+}
@@ -1,10 +1,17 @@
 package br.com.renatoschlogel.libraryapi.api.resource;
 
 import static org.hamcrest.Matchers.hasSize;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
 import java.util.Arrays;
+import java.util.List;
 import java.util.Optional;
 
 import org.hamcrest.Matchers;
@@ -17,28 +24,40 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
 import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.context.annotation.Import;
+import org.springframework.dao.OptimisticLockingFailureException;
 import org.springframework.data.domain.PageImpl;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.SliceImpl;
+import org.springframework.data.projection.SpelAwareProxyProjectionFactory;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
 import org.springframework.test.context.ActiveProfiles;
 import org.springframework.test.context.junit.jupiter.SpringExtension;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
 import org.springframework.test.web.servlet.request.MockHttpServletRequestBuilder;
 import org.springframework.test.web.servlet.request.MockMvcRequestBuilders;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
 
 import br.com.renatoschlogel.libraryapi.api.dto.BookDTO;
+import br.com.renatoschlogel.libraryapi.api.mapper.BookMapperImpl;
+import br.com.renatoschlogel.libraryapi.api.mapper.LoanMapperImpl;
 import br.com.renatoschlogel.libraryapi.exception.BusinessException;
 import br.com.renatoschlogel.libraryapi.model.entity.Book;
+import br.com.renatoschlogel.libraryapi.model.repository.BookView;
 import br.com.renatoschlogel.libraryapi.service.BookService;
+import br.com.renatoschlogel.libraryapi.service.DataFormat;
+import br.com.renatoschlogel.libraryapi.service.ExportService;
 import br.com.renatoschlogel.libraryapi.service.LoanService;
 
 @ExtendWith(SpringExtension.class)
 @ActiveProfiles("test")
 @WebMvcTest( controllers = BookController.class)
 @AutoConfigureMockMvc
+@Import({BookMapperImpl.class, LoanMapperImpl.class})
 public class BookControllerTest {
 	
 	static String BOOK_API = "/api/books";
@@ -52,6 +71,9 @@ public class BookControllerTest {
 	@MockBean
 	BookService bookService; 
 	
+	@MockBean
+	ExportService exportService;
+	
 	@Test
 	@DisplayName("Deve criar um livro com sucesso!")
 	public void createBookTest() throws Exception {
@@ -117,6 +139,41 @@ public class BookControllerTest {
 	}
 	
 	
+	@Test
+	@DisplayName("Deve criar livros em lote informando o resultado de cada item")
+	void createBookBatchTest() throws Exception {
+		
+		BookDTO validBook = createNewBookDTO();
+		BookDTO duplicatedBook = BookDTO.builder().title("Outro").author("Ken").isbn("123").build();
+		BookDTO invalidBook = new BookDTO();
+		
+		BDDMockito.given(bookService.incluirLote(Mockito.anyList())).willAnswer(invocation -> {
+			List<Book> books = invocation.getArgument(0);
+			books.get(0).setId(1L);
+			return books;
+		});
+		
+		String json = new ObjectMapper().writeValueAsString(Arrays.asList(validBook, invalidBook, duplicatedBook));
+		
+		MockHttpServletRequestBuilder request = MockMvcRequestBuilders
+				.post(BOOK_API.concat("/batch"))
+				.contentType(MediaType.APPLICATION_JSON)
+				.accept(MediaType.APPLICATION_JSON)
+				.content(json);
+		
+		mvc.perform(request)
+		   .andExpect(status().isOk())
+		   .andExpect(jsonPath("$", hasSize(3)))
+		   .andExpect(jsonPath("[0].status").value("CREATED"))
+		   .andExpect(jsonPath("[0].book.id").value(1))
+		   .andExpect(jsonPath("[1].status").value("REJECTED"))
+		   .andExpect(jsonPath("[1].errors", hasSize(3)))
+		   .andExpect(jsonPath("[2].status").value("REJECTED"))
+		   .andExpect(jsonPath("[2].errors[0]").value("Isbn já utilizado por outro livro!"));
+		
+		Mockito.verify(bookService, Mockito.times(1)).incluirLote(Mockito.argThat(books -> books.size() == 2));
+	}
+	
 	@Test
 	@DisplayName("Deve obter informações de um livro.")
 	void getBookDetailsTest() throws Exception {
@@ -141,6 +198,74 @@ public class BookControllerTest {
 		   .andExpect(jsonPath("isbn").value(book.getIsbn()));
 	}
 	
+	@Test
+	@DisplayName("Deve informar a versão do livro na ETag")
+	void getBookETagTest() throws Exception {
+		Book book = Book.builder().id(1l).title("GO TEAM!").author("Ken").isbn("123").version(3l).build();
+		BDDMockito.given(bookService.getById(1l)).willReturn(Optional.of(book));
+		
+		mvc.perform(MockMvcRequestBuilders.get(BOOK_API + "/1").accept(MediaType.APPLICATION_JSON))
+		   .andExpect(status().isOk())
+		   .andExpect(header().string(HttpHeaders.ETAG, "\"3\""));
+	}
+	
+	@Test
+	@DisplayName("Deve responder 304 pela versão, sem carregar o livro, quando a ETag ainda for a atual")
+	void getBookNotModifiedTest() throws Exception {
+		BDDMockito.given(bookService.getVersion(1l)).willReturn(Optional.of(3l));
+		
+		mvc.perform(MockMvcRequestBuilders.get(BOOK_API + "/1").header(HttpHeaders.IF_NONE_MATCH, "\"2\", W/\"3\""))
+		   .andExpect(status().isNotModified())
+		   .andExpect(header().string(HttpHeaders.ETAG, "\"3\""))
+		   .andExpect(content().string(""));
+		
+		Mockito.verify(bookService, Mockito.never()).getById(Mockito.anyLong());
+	}
+	
+	@Test
+	@DisplayName("Deve devolver o livro quando a ETag informada estiver desatualizada")
+	void getBookModifiedTest() throws Exception {
+		Book book = Book.builder().id(1l).title("GO TEAM!").version(4l).build();
+		BDDMockito.given(bookService.getVersion(1l)).willReturn(Optional.of(4l));
+		BDDMockito.given(bookService.getById(1l)).willReturn(Optional.of(book));
+		
+		mvc.perform(MockMvcRequestBuilders.get(BOOK_API + "/1").header(HttpHeaders.IF_NONE_MATCH, "\"3\""))
+		   .andExpect(status().isOk())
+		   .andExpect(header().string(HttpHeaders.ETAG, "\"4\""))
+		   .andExpect(jsonPath("title").value("GO TEAM!"));
+	}
+	
+	@Test
+	@DisplayName("Deve responder 304 para a lista de empréstimos sem consultá-la enquanto a versão do livro não mudar")
+	void loansByBookNotModifiedTest() throws Exception {
+		BDDMockito.given(bookService.getVersion(1l)).willReturn(Optional.of(7l));
+		
+		mvc.perform(MockMvcRequestBuilders.get(BOOK_API + "/1/loans").header(HttpHeaders.IF_NONE_MATCH, "\"7\""))
+		   .andExpect(status().isNotModified())
+		   .andExpect(header().string(HttpHeaders.ETAG, "W/\"7\""));
+		
+		Mockito.verifyNoInteractions(loanService);
+	}
+	
+	@Test
+	@DisplayName("Deve usar ETag forte nas listas de empréstimos sem total")
+	void loansByBookSliceStrongETagTest() throws Exception {
+		BDDMockito.given(bookService.getVersion(1l)).willReturn(Optional.of(7l));
+		
+		mvc.perform(MockMvcRequestBuilders.get(BOOK_API + "/1/loans?mode=slice").header(HttpHeaders.IF_NONE_MATCH, "W/\"7\""))
+		   .andExpect(status().isNotModified())
+		   .andExpect(header().string(HttpHeaders.ETAG, "\"7\""));
+	}
+	
+	@Test
+	@DisplayName("Deve retornar not found na lista de empréstimos de um livro inexistente")
+	void loansByBookNotFoundTest() throws Exception {
+		BDDMockito.given(bookService.getVersion(1l)).willReturn(Optional.empty());
+		
+		mvc.perform(MockMvcRequestBuilders.get(BOOK_API + "/1/loans").header(HttpHeaders.IF_NONE_MATCH, "\"7\""))
+		   .andExpect(status().isNotFound());
+	}
+	
 	@Test
 	@DisplayName("Deve retornar resourse not found quando o livro nao for encontrado")
 	void bookNotFoundTest() throws Exception {
@@ -160,14 +285,32 @@ public class BookControllerTest {
 	void deleteBookTest() throws Exception {
 			
 		long id = 1l;
-		Book book = Book.builder().id(id).build();
-		BDDMockito.given(bookService.getById(Mockito.anyLong())).willReturn(Optional.of(book));
+		BDDMockito.given(bookService.delete(id, null)).willReturn(true);
 		
 		MockHttpServletRequestBuilder request = MockMvcRequestBuilders.delete(BOOK_API + "/" + id)
                               										  .accept(MediaType.APPLICATION_JSON);
 		mvc.perform(request)
 		   .andExpect(status().isNoContent());
 		
+		Mockito.verify(bookService, Mockito.never()).getById(Mockito.anyLong());
+	}
+	
+	@Test
+	@DisplayName("Deve retornar 412 ao deletar um livro alterado desde a versão do If-Match")
+	void deleteBookPreconditionFailedTest() throws Exception {
+		BDDMockito.given(bookService.delete(1l, 2l)).willThrow(new OptimisticLockingFailureException("Livro alterado por outra requisição."));
+		
+		mvc.perform(MockMvcRequestBuilders.delete(BOOK_API + "/1").header(HttpHeaders.IF_MATCH, "\"2\""))
+		   .andExpect(status().isPreconditionFailed());
+	}
+	
+	@Test
+	@DisplayName("Deve recusar If-Match com ETag fraca")
+	void deleteBookWeakIfMatchTest() throws Exception {
+		mvc.perform(MockMvcRequestBuilders.delete(BOOK_API + "/1").header(HttpHeaders.IF_MATCH, "W/\"2\""))
+		   .andExpect(status().isPreconditionFailed());
+		
+		Mockito.verify(bookService, Mockito.never()).delete(Mockito.any(), Mockito.any());
 	}
 	
 
@@ -176,7 +319,7 @@ public class BookControllerTest {
 	void deleteInexistentBookTest() throws Exception {
 			
 		long id = 1l;
-		BDDMockito.given(bookService.getById(Mockito.anyLong())).willReturn(Optional.empty());
+		BDDMockito.given(bookService.delete(id, null)).willReturn(false);
 		
 		MockHttpServletRequestBuilder request = MockMvcRequestBuilders.delete(BOOK_API + "/" + id)
                               										  .accept(MediaType.APPLICATION_JSON);
@@ -191,32 +334,29 @@ public class BookControllerTest {
 		
 		BookDTO bookDTO = createNewBookDTO();
 		bookDTO.setId(1L);
-		
-		Book book = Book.builder().id(bookDTO.getId()).build();
-		book.setTitle("Titulo Atualizado");
-		book.setAuthor("Autor atualizado");
-		book.setIsbn(bookDTO.getIsbn());
-		
 		bookDTO.setTitle("Titulo Atualizado");
 		bookDTO.setIsbn("ISBN Atualizado");
 		bookDTO.setAuthor("Autor atualizado");
 		
-		
-		BDDMockito.given(bookService.getById(bookDTO.getId())).willReturn(Optional.of(book));
-		BDDMockito.given(bookService.update(book)).willReturn(book);
+		Book book = Book.builder().id(bookDTO.getId()).title("Titulo Atualizado").author("Autor atualizado").build();
+		Book stored = Book.builder().id(bookDTO.getId()).title("Titulo Atualizado").author("Autor atualizado").isbn("123").version(4l).build();
+		BDDMockito.given(bookService.update(book, 3l)).willReturn(Optional.of(stored));
 		String json = new ObjectMapper().writeValueAsString(bookDTO);
 
 		MockHttpServletRequestBuilder request = MockMvcRequestBuilders.put(BOOK_API + "/" + bookDTO.getId())
+																	  .header(HttpHeaders.IF_MATCH, "\"3\"")
 																	  .content(json)
 																	  .accept(MediaType.APPLICATION_JSON)
 																	  .contentType(MediaType.APPLICATION_JSON);
 		mvc.perform(request)
 			.andExpect(status().isOk())
-			.andExpect(jsonPath("id").value(book.getId()))
+			.andExpect(header().string(HttpHeaders.ETAG, "\"4\""))
+			.andExpect(jsonPath("id").value(bookDTO.getId()))
 			.andExpect(jsonPath("title").value(bookDTO.getTitle()))
 			.andExpect(jsonPath("author").value(bookDTO.getAuthor()))
-			.andExpect(jsonPath("isbn").value(book.getIsbn()));
-	
+			.andExpect(jsonPath("isbn").value("123"));
+		
+		Mockito.verify(bookService, Mockito.never()).getById(Mockito.anyLong());
 	}
 	
 	@Test
@@ -225,7 +365,7 @@ public class BookControllerTest {
 		BookDTO bookDTO = createNewBookDTO();
 		bookDTO.setId(1L);
 		
-		BDDMockito.given(bookService.getById(bookDTO.getId())).willReturn(Optional.empty());
+		BDDMockito.given(bookService.update(Mockito.any(Book.class), Mockito.isNull())).willReturn(Optional.empty());
 		String json = new ObjectMapper().writeValueAsString(bookDTO);
 
 		MockHttpServletRequestBuilder request = MockMvcRequestBuilders.put(BOOK_API + "/" + bookDTO.getId())
@@ -250,7 +390,7 @@ public class BookControllerTest {
 						.build();
 		
 		BDDMockito.given(bookService.find(Mockito.any(Book.class), Mockito.any(Pageable.class)) )
-				  .willReturn(new PageImpl<Book>(Arrays.asList(book), PageRequest.of(0, 100), 1));
+				  .willReturn(new PageImpl<BookView>(Arrays.asList(viewOf(book)), PageRequest.of(0, 100), 1));
 		
 		
 		String queryString = String.format("?title=%s&author=%s&page=0&size=100", book.getTitle(), book.getAuthor());
@@ -266,6 +406,74 @@ public class BookControllerTest {
 	}
 	
 	
+	@Test
+	@DisplayName("Deve listar livros por cursor informando o token da próxima página")
+	void findBooksAfterTest() throws Exception {
+		Book book = Book.builder().id(7l).author("Ken").title("GO TEAM!").isbn("123").build();
+		
+		BDDMockito.given(bookService.findAfter(Mockito.any(Book.class), Mockito.eq(5l), Mockito.eq(1)))
+				  .willReturn(new SliceImpl<BookView>(Arrays.asList(viewOf(book)), PageRequest.of(0, 1), true));
+		
+		mvc.perform(MockMvcRequestBuilders.get(BOOK_API)
+										  .param("after", CursorCodec.encode(5l))
+										  .param("size", "1")
+										  .accept(MediaType.APPLICATION_JSON))
+		   .andExpect(status().isOk())
+		   .andExpect(jsonPath("content", Matchers.hasSize(1)))
+		   .andExpect(jsonPath("content[0].id").value(7))
+		   .andExpect(jsonPath("size").value(1))
+		   .andExpect(jsonPath("next").value(CursorCodec.encode(7l)));
+	}
+	
+	@Test
+	@DisplayName("Deve iniciar pela primeira página quando o cursor for vazio")
+	void findBooksFirstPageAfterTest() throws Exception {
+		BDDMockito.given(bookService.findAfter(Mockito.any(Book.class), Mockito.isNull(), Mockito.eq(20)))
+				  .willReturn(new SliceImpl<BookView>(Arrays.asList(), PageRequest.of(0, 20), false));
+		
+		mvc.perform(MockMvcRequestBuilders.get(BOOK_API + "?after=").accept(MediaType.APPLICATION_JSON))
+		   .andExpect(status().isOk())
+		   .andExpect(jsonPath("content", Matchers.hasSize(0)))
+		   .andExpect(jsonPath("next").doesNotExist());
+	}
+	
+	@Test
+	@DisplayName("Deve recusar um cursor inválido")
+	void findBooksInvalidCursorTest() throws Exception {
+		mvc.perform(MockMvcRequestBuilders.get(BOOK_API + "?after=" + CursorCodec.encode("abc")))
+		   .andExpect(status().isBadRequest());
+		
+		Mockito.verify(bookService, Mockito.never()).findAfter(Mockito.any(), Mockito.any(), Mockito.anyInt());
+	}
+	
+	@Test
+	@DisplayName("Deve exportar o catálogo em CSV")
+	void exportBooksTest() throws Exception {
+		
+		BDDMockito.willAnswer(invocation -> {
+			OutputStream outputStream = invocation.getArgument(0);
+			outputStream.write("id,title,author,isbn\n1,GO TEAM!,Ken,123\n".getBytes(StandardCharsets.UTF_8));
+			return null;
+		}).given(exportService).exportBooks(Mockito.any(OutputStream.class), Mockito.eq(DataFormat.CSV));
+		
+		MvcResult result = mvc.perform(MockMvcRequestBuilders.get(BOOK_API + "/export?format=csv"))
+							  .andExpect(request().asyncStarted())
+							  .andReturn();
+		
+		mvc.perform(asyncDispatch(result))
+		   .andExpect(status().isOk())
+		   .andExpect(header().string(HttpHeaders.CONTENT_TYPE, "text/csv"))
+		   .andExpect(content().string("id,title,author,isbn\n1,GO TEAM!,Ken,123\n"));
+	}
+	
+	@Test
+	@DisplayName("Deve recusar a exportação em formato não suportado")
+	void exportBooksInvalidFormatTest() throws Exception {
+		mvc.perform(MockMvcRequestBuilders.get(BOOK_API + "/export?format=xml"))
+		   .andExpect(status().isBadRequest())
+		   .andExpect(jsonPath("errors[0]").value("Formato não suportado: xml"));
+	}
+	
 	private BookDTO createNewBookDTO() {
 		BookDTO bookDTO = BookDTO.builder().title("GO TEAM!")
 		                 				   .author("Ken")
@@ -273,4 +481,9 @@ public class BookControllerTest {
 		                 				   .build();
 		return bookDTO;
 	}
+	
+	private BookView viewOf(Book book) {
+		return new SpelAwareProxyProjectionFactory().createProjection(BookView.class, book);
+	}
+	
 }
@@ -0,0 +1,271 @@
+package br.com.renatoschlogel.libraryapi.api.resource;
+
+import static br.com.renatoschlogel.libraryapi.support.SqlStatementsAssert.assertThatSql;
+
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.RequestBuilder;
+import org.springframework.test.web.servlet.ResultMatcher;
+import org.springframework.test.web.servlet.request.MockHttpServletRequestBuilder;
+import org.springframework.test.web.servlet.request.MockMvcRequestBuilders;
+import org.springframework.test.web.servlet.result.MockMvcResultMatchers;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.benmanes.caffeine.cache.Cache;
+
+import br.com.renatoschlogel.libraryapi.api.dto.BookDTO;
+import br.com.renatoschlogel.libraryapi.api.dto.LoanDTO;
+import br.com.renatoschlogel.libraryapi.api.dto.ReturnedLoanDTO;
+import br.com.renatoschlogel.libraryapi.config.SqlRecorder;
+import br.com.renatoschlogel.libraryapi.model.entity.Book;
+import br.com.renatoschlogel.libraryapi.model.entity.Loan;
+import br.com.renatoschlogel.libraryapi.model.repository.BookRepository;
+import br.com.renatoschlogel.libraryapi.model.repository.LoanRepository;
+import br.com.renatoschlogel.libraryapi.service.BookService;
+import br.com.renatoschlogel.libraryapi.support.SqlStatementsAssert;
+
+/**
+ * Orçamento de comandos SQL de cada endpoint de livros e empréstimos. Os testes de controller simulam os
+ * serviços, então o orçamento é medido aqui com a aplicação completa sobre o banco de teste.
+ */
+@SpringBootTest
+@AutoConfigureMockMvc
+@ActiveProfiles("test")
+public class EndpointStatementsTest {
+
+	private static final String BOOK_API = "/api/books";
+	private static final String LOAN_API = "/api/loans";
+
+	@Autowired
+	MockMvc mvc;
+
+	@Autowired
+	ObjectMapper objectMapper;
+
+	@Autowired
+	SqlRecorder sqlRecorder;
+
+	@Autowired
+	BookService bookService;
+
+	@Autowired
+	BookRepository bookRepository;
+
+	@Autowired
+	LoanRepository loanRepository;
+
+	@Autowired
+	Cache<String, Optional<Book>> booksByIsbnCache;
+
+	@Autowired
+	Cache<String, Long> listingTotalsCache;
+
+	private List<Book> books;
+
+	private Loan openLoan;
+
+	@BeforeEach
+	public void setUp() {
+		books = bookService.incluirLote(IntStream.range(0, 10)
+												 .mapToObj(i -> Book.builder().title("Livro " + i).author("Autor").isbn("isbn-" + i).build())
+												 .collect(Collectors.toList()));
+
+		LocalDate today = LocalDate.now();
+		loanRepository.saveAll(books.stream()
+									.map(book -> Loan.builder().book(book).customer("Renato").loanDate(today.minusDays(10)).returned(true).build())
+									.collect(Collectors.toList()));
+
+		openLoan = loanRepository.save(Loan.builder().book(books.get(0)).customer("Renato").loanDate(today).build());
+		Book loanedBook = books.get(0);
+		loanedBook.setActiveLoanId(openLoan.getId());
+		books.set(0, bookRepository.save(loanedBook));
+
+		booksByIsbnCache.invalidateAll();
+		listingTotalsCache.invalidateAll();
+	}
+
+	@AfterEach
+	public void tearDown() {
+		loanRepository.deleteAll();
+		bookRepository.findAll().forEach(book -> bookService.delete(book.getId(), null));
+	}
+
+	@Test
+	@DisplayName("Deve consultar o livro com um único select")
+	void getBook() throws Exception {
+		Book book = books.get(1);
+
+		perform(MockMvcRequestBuilders.get(BOOK_API + "/" + book.getId()), MockMvcResultMatchers.status().isOk())
+			.hasSelects(1).hasNoWrites();
+
+		perform(MockMvcRequestBuilders.get(BOOK_API + "/" + book.getId()).header(HttpHeaders.IF_NONE_MATCH, "\"" + book.getVersion() + "\""),
+				MockMvcResultMatchers.status().isNotModified())
+			.hasSelects(1).hasNoWrites();
+	}
+
+	@Test
+	@DisplayName("Deve incluir o livro novo com um único insert, sem consultar o isbn que o filtro garante livre")
+	void createBook() throws Exception {
+		BookDTO book = BookDTO.builder().title("Clean Code").author("Uncle Bob").isbn("novo-isbn").build();
+
+		perform(post(BOOK_API, book), MockMvcResultMatchers.status().isCreated())
+			.hasSelects(0).hasInserts(1).hasSequenceCallsAtMost(1).hasUpdates(0).hasDeletes(0);
+	}
+
+	@Test
+	@DisplayName("Deve incluir livros em lote com uma única verificação dos isbns e um único lote de inserts")
+	void createBooksBatch() throws Exception {
+		List<BookDTO> batch = IntStream.range(0, 5)
+									   .mapToObj(i -> BookDTO.builder().title("Lote " + i).author("Autor").isbn("lote-" + i).build())
+									   .collect(Collectors.toList());
+		batch.add(BookDTO.builder().title("Repetido").author("Autor").isbn("isbn-1").build());
+
+		perform(post(BOOK_API + "/batch", batch), MockMvcResultMatchers.status().isOk())
+			.hasSelects(1).hasInserts(1).hasSequenceCallsAtMost(1).hasUpdates(0).hasDeletes(0);
+	}
+
+	@Test
+	@DisplayName("Deve alterar o livro com um único update condicional e relê-lo pela chave")
+	void updateBook() throws Exception {
+		Book book = books.get(1);
+		BookDTO changes = BookDTO.builder().title("Clean Architecture").author("Uncle Bob").isbn(book.getIsbn()).build();
+
+		perform(put(BOOK_API + "/" + book.getId(), changes).header(HttpHeaders.IF_MATCH, "\"" + book.getVersion() + "\""),
+				MockMvcResultMatchers.status().isOk())
+			.hasSelects(1).hasUpdates(1).hasInserts(0).hasDeletes(0);
+	}
+
+	@Test
+	@DisplayName("Deve excluir o livro com um único delete condicional")
+	void deleteBook() throws Exception {
+		Book book = bookService.incluir(Book.builder().title("Sem empréstimos").author("Autor").isbn("avulso").build());
+
+		perform(MockMvcRequestBuilders.delete(BOOK_API + "/" + book.getId()).header(HttpHeaders.IF_MATCH, "\"" + book.getVersion() + "\""),
+				MockMvcResultMatchers.status().isNoContent())
+			.hasSelects(0).hasDeletes(1).hasInserts(0).hasUpdates(0);
+	}
+
+	@Test
+	@DisplayName("Deve filtrar os livros sem comandos por linha")
+	void findBooks() throws Exception {
+		perform(MockMvcRequestBuilders.get(BOOK_API + "?author=autor&page=0&size=5"), MockMvcResultMatchers.status().isOk())
+			.hasSelects(1).hasNoWrites();
+
+		perform(MockMvcRequestBuilders.get(BOOK_API + "?author=autor&mode=slice&page=0&size=5"), MockMvcResultMatchers.status().isOk())
+			.hasSelects(1).hasNoWrites();
+
+		perform(MockMvcRequestBuilders.get(BOOK_API + "?author=autor&after=&size=5"), MockMvcResultMatchers.status().isOk())
+			.hasSelects(1).hasNoWrites();
+	}
+
+	@Test
+	@DisplayName("Deve listar os empréstimos do livro sem comandos por linha")
+	void loansByBook() throws Exception {
+		String url = BOOK_API + "/" + books.get(0).getId() + "/loans";
+
+		perform(MockMvcRequestBuilders.get(url + "?page=0&size=5"), MockMvcResultMatchers.status().isOk())
+			.hasSelects(2).hasNoWrites().hasNoRepeatedStatements();
+
+		perform(MockMvcRequestBuilders.get(url + "?mode=slice&page=0&size=5"), MockMvcResultMatchers.status().isOk())
+			.hasSelects(2).hasNoWrites().hasNoRepeatedStatements();
+
+		perform(MockMvcRequestBuilders.get(url + "?after=&size=5"), MockMvcResultMatchers.status().isOk())
+			.hasSelects(2).hasNoWrites().hasNoRepeatedStatements();
+	}
+
+	@Test
+	@DisplayName("Deve registrar o empréstimo marcando o livro com um único update")
+	void createLoan() throws Exception {
+		LoanDTO loan = LoanDTO.builder().isbn("isbn-1").customer("Fulano").customerEmail("fulano@email.com").build();
+
+		perform(post(LOAN_API, loan), MockMvcResultMatchers.status().isCreated())
+			.hasSelects(1).hasInserts(1).hasSequenceCallsAtMost(1).hasUpdates(1).hasDeletes(0);
+	}
+
+	@Test
+	@DisplayName("Deve registrar empréstimos em lote com comandos fixos para todo o lote")
+	void createLoansBatch() throws Exception {
+		List<LoanDTO> batch = IntStream.range(0, 6)
+									   .mapToObj(i -> LoanDTO.builder().isbn("isbn-" + i).customer("Fulano").customerEmail("fulano@email.com").build())
+									   .collect(Collectors.toList());
+		batch.add(LoanDTO.builder().isbn("inexistente").customer("Fulano").customerEmail("fulano@email.com").build());
+
+		perform(post(LOAN_API + "/batch", batch), MockMvcResultMatchers.status().isOk())
+			.hasSelects(2).hasInserts(1).hasSequenceCallsAtMost(1).hasUpdates(1).hasDeletes(0);
+	}
+
+	@Test
+	@DisplayName("Deve devolver o empréstimo com updates condicionais, sem carregá-lo")
+	void returnLoan() throws Exception {
+		ReturnedLoanDTO returned = ReturnedLoanDTO.builder().retorned(true).build();
+
+		perform(patch(LOAN_API + "/" + openLoan.getId(), returned).header(HttpHeaders.IF_MATCH, "\"" + openLoan.getVersion() + "\""),
+				MockMvcResultMatchers.status().isOk())
+			.hasSelects(0).hasUpdates(2).hasInserts(0).hasDeletes(0);
+	}
+
+	@Test
+	@DisplayName("Deve devolver empréstimos em lote com comandos fixos para todo o lote")
+	void returnLoansBatch() throws Exception {
+		List<ReturnedLoanDTO> batch = Arrays.asList(ReturnedLoanDTO.builder().id(openLoan.getId()).retorned(true).build(),
+													ReturnedLoanDTO.builder().id(openLoan.getId() + 100).retorned(true).build(),
+													ReturnedLoanDTO.builder().retorned(true).build());
+
+		perform(patch(LOAN_API + "/batch", batch), MockMvcResultMatchers.status().isOk())
+			.hasSelects(1).hasUpdates(2).hasInserts(0).hasDeletes(0);
+	}
+
+	@Test
+	@DisplayName("Deve filtrar os empréstimos sem comandos por linha")
+	void findLoans() throws Exception {
+		perform(MockMvcRequestBuilders.get(LOAN_API + "?custumer=Renato&page=0&size=5"), MockMvcResultMatchers.status().isOk())
+			.hasSelects(2).hasNoWrites().hasNoRepeatedStatements();
+
+		perform(MockMvcRequestBuilders.get(LOAN_API + "?custumer=Renato&isbn=isbn-0&page=0&size=5"), MockMvcResultMatchers.status().isOk())
+			.hasSelects(4).hasNoWrites().hasNoRepeatedStatements();
+
+		perform(MockMvcRequestBuilders.get(LOAN_API + "?custumer=Renato&mode=slice&page=0&size=5"), MockMvcResultMatchers.status().isOk())
+			.hasSelects(1).hasNoWrites().hasNoRepeatedStatements();
+
+		perform(MockMvcRequestBuilders.get(LOAN_API + "?custumer=Renato&after=&size=5"), MockMvcResultMatchers.status().isOk())
+			.hasSelects(1).hasNoWrites().hasNoRepeatedStatements();
+	}
+
+	private SqlStatementsAssert perform(RequestBuilder request, ResultMatcher expectedStatus) {
+		return assertThatSql(sqlRecorder, () -> mvc.perform(request).andExpect(expectedStatus));
+	}
+
+	private MockHttpServletRequestBuilder post(String url, Object body) throws Exception {
+		return json(MockMvcRequestBuilders.post(url), body);
+	}
+
+	private MockHttpServletRequestBuilder put(String url, Object body) throws Exception {
+		return json(MockMvcRequestBuilders.put(url), body);
+	}
+
+	private MockHttpServletRequestBuilder patch(String url, Object body) throws Exception {
+		return json(MockMvcRequestBuilders.patch(url), body);
+	}
+
+	private MockHttpServletRequestBuilder json(MockHttpServletRequestBuilder request, Object body) throws Exception {
+		return request.contentType(MediaType.APPLICATION_JSON)
+					  .accept(MediaType.APPLICATION_JSON)
+					  .content(objectMapper.writeValueAsString(body));
+	}
+}
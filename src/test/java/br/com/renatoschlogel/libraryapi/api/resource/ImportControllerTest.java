@@ -0,0 +1,73 @@
+package br.com.renatoschlogel.libraryapi.api.resource;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.BDDMockito.given;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+import java.io.InputStream;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.http.MediaType;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+import org.springframework.test.web.servlet.MockMvc;
+
+import br.com.renatoschlogel.libraryapi.api.dto.ImportResultDTO;
+import br.com.renatoschlogel.libraryapi.service.DataFormat;
+import br.com.renatoschlogel.libraryapi.service.ImportService;
+
+@ExtendWith(SpringExtension.class)
+@ActiveProfiles("test")
+@WebMvcTest( controllers = ImportController.class)
+@AutoConfigureMockMvc
+public class ImportControllerTest {
+	
+	static final String IMPORT_API = "/api/imports";
+
+	@Autowired
+	MockMvc mvc;
+	
+	@MockBean
+	ImportService importService;
+	
+	@Test
+	@DisplayName("Deve importar livros de um CSV")
+	void importBooksCsv() throws Exception {
+		given(importService.importBooks(any(InputStream.class), eq(DataFormat.CSV)))
+				.willReturn(ImportResultDTO.builder().processed(2).imported(2).build());
+		
+		mvc.perform(post(IMPORT_API.concat("/books")).contentType("text/csv")
+													  .content("title,author,isbn\nClean Code,Uncle Bob,123\n"))
+		   .andExpect(status().isOk())
+		   .andExpect(jsonPath("processed").value(2))
+		   .andExpect(jsonPath("imported").value(2));
+	}
+	
+	@Test
+	@DisplayName("Deve importar empréstimos de um NDJSON")
+	void importLoansNdjson() throws Exception {
+		given(importService.importLoans(any(InputStream.class), eq(DataFormat.NDJSON)))
+				.willReturn(ImportResultDTO.builder().processed(1).imported(1).build());
+		
+		mvc.perform(post(IMPORT_API.concat("/loans")).contentType(MediaType.APPLICATION_NDJSON)
+													  .content("{\"isbn\":\"123\",\"customer\":\"Renato\",\"loanDate\":\"2020-01-01\"}\n"))
+		   .andExpect(status().isOk())
+		   .andExpect(jsonPath("imported").value(1));
+	}
+	
+	@Test
+	@DisplayName("Deve recusar formatos não suportados")
+	void unsupportedFormat() throws Exception {
+		mvc.perform(post(IMPORT_API.concat("/books")).contentType(MediaType.APPLICATION_XML).content("<books/>"))
+		   .andExpect(status().isUnsupportedMediaType());
+	}
+}
@@ -0,0 +1,119 @@
+package br.com.renatoschlogel.libraryapi.api.resource;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import javax.persistence.EntityManagerFactory;
+
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.request.MockMvcRequestBuilders;
+import org.springframework.test.web.servlet.result.MockMvcResultMatchers;
+
+import com.github.benmanes.caffeine.cache.Cache;
+
+import br.com.renatoschlogel.libraryapi.model.entity.Book;
+import br.com.renatoschlogel.libraryapi.model.entity.Loan;
+import br.com.renatoschlogel.libraryapi.model.repository.BookRepository;
+import br.com.renatoschlogel.libraryapi.model.repository.LoanRepository;
+
+/**
+ * Quantidade de comandos SQL das listagens de empréstimos, que não pode crescer com o tamanho da página.
+ */
+@SpringBootTest(properties = "spring.jpa.properties.hibernate.generate_statistics=true")
+@AutoConfigureMockMvc
+@ActiveProfiles("test")
+public class ListingStatementsTest {
+
+	private static final long MAX_STATEMENTS = 4;
+	
+	@Autowired
+	MockMvc mvc;
+	
+	@Autowired
+	BookRepository bookRepository;
+	
+	@Autowired
+	LoanRepository loanRepository;
+	
+	@Autowired
+	EntityManagerFactory entityManagerFactory;
+	
+	@Autowired
+	Cache<String, Long> listingTotalsCache;
+	
+	private Book popularBook;
+	
+	@BeforeEach
+	public void setUp() {
+		List<Book> books = bookRepository.saveAll(IntStream.range(0, 30)
+														   .mapToObj(i -> Book.builder().title("Livro " + i).author("Autor").isbn("isbn-" + i).build())
+														   .collect(Collectors.toList()));
+		popularBook = books.get(0);
+		
+		LocalDate today = LocalDate.now();
+		loanRepository.saveAll(books.stream()
+									.map(book -> Loan.builder().book(book).customer("Renato").loanDate(today).returned(true).build())
+									.collect(Collectors.toList()));
+		loanRepository.saveAll(IntStream.range(0, 30)
+										.mapToObj(i -> Loan.builder().book(popularBook).customer("Cliente " + i).loanDate(today.minusDays(i)).returned(true).build())
+										.collect(Collectors.toList()));
+	}
+	
+	@AfterEach
+	public void tearDown() {
+		loanRepository.deleteAll();
+		bookRepository.deleteAll();
+	}
+	
+	@Test
+	@DisplayName("Deve listar os empréstimos filtrados com a mesma quantidade de comandos para qualquer tamanho de página")
+	void findLoans() throws Exception {
+		assertFixedStatements("/api/loans?custumer=Renato&page=0&size=");
+		assertFixedStatements("/api/loans?custumer=Renato&isbn=isbn-0&page=0&size=");
+		assertFixedStatements("/api/loans?custumer=Renato&isbn=isbn-0&mode=slice&page=0&size=");
+		assertFixedStatements("/api/loans?custumer=Renato&after=&size=");
+	}
+	
+	@Test
+	@DisplayName("Deve listar os empréstimos do livro com a mesma quantidade de comandos para qualquer tamanho de página")
+	void loansByBook() throws Exception {
+		String url = "/api/books/" + popularBook.getId() + "/loans";
+		
+		assertFixedStatements(url + "?page=0&size=");
+		assertFixedStatements(url + "?mode=slice&page=0&size=");
+		assertFixedStatements(url + "?after=&size=");
+	}
+	
+	private void assertFixedStatements(String url) throws Exception {
+		long small = statements(url + 2);
+		long large = statements(url + 25);
+		
+		assertThat(large).as(url).isEqualTo(small).isLessThanOrEqualTo(MAX_STATEMENTS);
+	}
+	
+	private long statements(String url) throws Exception {
+		Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+		statistics.clear();
+		listingTotalsCache.invalidateAll();
+		
+		mvc.perform(MockMvcRequestBuilders.get(url).accept(MediaType.APPLICATION_JSON))
+		   .andExpect(MockMvcResultMatchers.status().isOk());
+		
+		return statistics.getPrepareStatementCount();
+	}
+}
@@ -0,0 +1,79 @@
+package br.com.renatoschlogel.libraryapi.api.resource;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.request.MockHttpServletRequestBuilder;
+import org.springframework.test.web.servlet.request.MockMvcRequestBuilders;
+import org.springframework.test.web.servlet.result.MockMvcResultMatchers;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import br.com.renatoschlogel.libraryapi.api.dto.BookDTO;
+import br.com.renatoschlogel.libraryapi.api.dto.LoanDTO;
+import br.com.renatoschlogel.libraryapi.api.dto.ReturnedLoanDTO;
+import br.com.renatoschlogel.libraryapi.model.repository.BookRepository;
+import br.com.renatoschlogel.libraryapi.model.repository.LoanRepository;
+
+/**
+ * Empréstimo pela aplicação completa, com o livro vindo da cópia guardada no cache por isbn.
+ */
+@SpringBootTest
+@AutoConfigureMockMvc
+@ActiveProfiles("test")
+public class LoanCheckoutTest {
+
+	private static final String BOOK_API = "/api/books";
+	private static final String LOAN_API = "/api/loans";
+	
+	@Autowired
+	MockMvc mvc;
+	
+	@Autowired
+	ObjectMapper objectMapper;
+	
+	@Autowired
+	BookRepository bookRepository;
+	
+	@Autowired
+	LoanRepository loanRepository;
+	
+	@AfterEach
+	public void tearDown() {
+		loanRepository.deleteAll();
+		bookRepository.deleteAll();
+	}
+	
+	@Test
+	@DisplayName("Deve emprestar novamente o livro devolvido usando o livro do cache")
+	void loanCachedBook() throws Exception {
+		BookDTO book = BookDTO.builder().title("Clean Code").author("Uncle Bob").isbn("checkout-123").build();
+		mvc.perform(json(MockMvcRequestBuilders.post(BOOK_API), book))
+		   .andExpect(MockMvcResultMatchers.status().isCreated());
+		
+		LoanDTO loan = LoanDTO.builder().isbn("checkout-123").customer("Renato").build();
+		MvcResult created = mvc.perform(json(MockMvcRequestBuilders.post(LOAN_API), loan))
+							   .andExpect(MockMvcResultMatchers.status().isCreated())
+							   .andReturn();
+		String loanId = created.getResponse().getContentAsString();
+		
+		mvc.perform(json(MockMvcRequestBuilders.patch(LOAN_API + "/" + loanId), ReturnedLoanDTO.builder().retorned(true).build()))
+		   .andExpect(MockMvcResultMatchers.status().isOk());
+		
+		mvc.perform(json(MockMvcRequestBuilders.post(LOAN_API), loan))
+		   .andExpect(MockMvcResultMatchers.status().isCreated());
+	}
+	
+	private MockHttpServletRequestBuilder json(MockHttpServletRequestBuilder request, Object body) throws Exception {
+		return request.contentType(MediaType.APPLICATION_JSON)
+					  .accept(MediaType.APPLICATION_JSON)
+					  .content(objectMapper.writeValueAsString(body));
+	}
+}
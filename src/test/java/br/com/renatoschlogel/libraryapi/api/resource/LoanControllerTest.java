@@ -4,13 +4,22 @@ import static org.hamcrest.Matchers.hasSize;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.BDDMockito.given;
 import static org.mockito.Mockito.times;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.patch;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
 import java.time.LocalDate;
 import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 
 import org.hamcrest.Matchers;
@@ -23,13 +32,19 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
 import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.context.annotation.Import;
+import org.springframework.dao.OptimisticLockingFailureException;
 import org.springframework.data.domain.PageImpl;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.SliceImpl;
+import org.springframework.data.projection.SpelAwareProxyProjectionFactory;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
 import org.springframework.test.context.ActiveProfiles;
 import org.springframework.test.context.junit.jupiter.SpringExtension;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
 import org.springframework.test.web.servlet.request.MockHttpServletRequestBuilder;
 import org.springframework.test.web.servlet.request.MockMvcRequestBuilders;
 import org.springframework.test.web.servlet.result.MockMvcResultMatchers;
@@ -39,17 +54,23 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 import br.com.renatoschlogel.libraryapi.api.dto.LoanDTO;
 import br.com.renatoschlogel.libraryapi.api.dto.LoanFilterDTO;
 import br.com.renatoschlogel.libraryapi.api.dto.ReturnedLoanDTO;
+import br.com.renatoschlogel.libraryapi.api.mapper.BookMapperImpl;
+import br.com.renatoschlogel.libraryapi.api.mapper.LoanMapperImpl;
 import br.com.renatoschlogel.libraryapi.exception.BusinessException;
 import br.com.renatoschlogel.libraryapi.model.entity.Book;
 import br.com.renatoschlogel.libraryapi.model.entity.Loan;
 import br.com.renatoschlogel.libraryapi.model.entity.Loan.LoanBuilder;
+import br.com.renatoschlogel.libraryapi.model.repository.LoanView;
 import br.com.renatoschlogel.libraryapi.service.BookService;
+import br.com.renatoschlogel.libraryapi.service.DataFormat;
+import br.com.renatoschlogel.libraryapi.service.ExportService;
 import br.com.renatoschlogel.libraryapi.service.LoanService;
 
 @ExtendWith(SpringExtension.class)
 @ActiveProfiles("test")
 @WebMvcTest( controllers = LoanController.class)
 @AutoConfigureMockMvc
+@Import({BookMapperImpl.class, LoanMapperImpl.class})
 public class LoanControllerTest {
 	
 	static final String LOAN_API = "/api/loans";
@@ -63,6 +84,9 @@ public class LoanControllerTest {
 	@MockBean
 	LoanService loanService;
 	
+	@MockBean
+	ExportService exportService;
+	
 	@Test
 	@DisplayName("Deve realizar um emprestimo")
 	void createLoanTest() throws Exception {
@@ -131,6 +155,70 @@ public class LoanControllerTest {
 						    ;
 	}
 
+	@Test
+	@DisplayName("Deve realizar empréstimos em lote, informando o resultado de cada item")
+	void createLoanBatch() throws Exception {
+		String json = new ObjectMapper().writeValueAsString(Arrays.asList(
+				LoanDTO.builder().isbn("123").customer("Renato").customerEmail("renato@hotmail.com").build(),
+				LoanDTO.builder().isbn("999").customer("Renato").build(),
+				LoanDTO.builder().isbn("456").customer("Renato").build()));
+		
+		Map<String, Long> bookIdsByIsbn = new HashMap<>();
+		bookIdsByIsbn.put("123", 1l);
+		bookIdsByIsbn.put("456", 2l);
+		given(bookService.getIdsByIsbn(Arrays.asList("123", "999", "456"))).willReturn(bookIdsByIsbn);
+		given(loanService.saveBatch(Mockito.anyList())).willAnswer(invocation -> {
+			List<Loan> loans = invocation.getArgument(0);
+			loans.get(0).setId(10l);
+			return loans;
+		});
+		
+		mvc.perform(post(LOAN_API.concat("/batch")).accept(MediaType.APPLICATION_JSON)
+												   .contentType(MediaType.APPLICATION_JSON)
+												   .content(json))
+		   .andExpect(status().isOk())
+		   .andExpect(jsonPath("$", hasSize(3)))
+		   .andExpect(jsonPath("[0].status").value("CREATED"))
+		   .andExpect(jsonPath("[0].id").value(10))
+		   .andExpect(jsonPath("[1].status").value("REJECTED"))
+		   .andExpect(jsonPath("[1].errors[0]").value("Book not found fot passad isbn."))
+		   .andExpect(jsonPath("[2].index").value(2))
+		   .andExpect(jsonPath("[2].status").value("REJECTED"))
+		   .andExpect(jsonPath("[2].errors[0]").value("Book already loaned."));
+		
+		Mockito.verify(bookService, Mockito.never()).getBookByIsbn(Mockito.anyString());
+	}
+	
+	@Test
+	@DisplayName("Deve devolver livros em lote, informando o resultado de cada item")
+	void returnBooksBatch() throws Exception {
+		String json = new ObjectMapper().writeValueAsString(Arrays.asList(
+				ReturnedLoanDTO.builder().id(1l).retorned(true).build(),
+				ReturnedLoanDTO.builder().id(2l).retorned(true).build(),
+				ReturnedLoanDTO.builder().retorned(true).build()));
+		
+		Map<Long, String> rejected = new HashMap<>();
+		rejected.put(2l, "Empréstimo não encontrado.");
+		given(loanService.updateReturnedBooks(Mockito.anyMap())).willReturn(rejected);
+		
+		mvc.perform(patch(LOAN_API.concat("/batch")).accept(MediaType.APPLICATION_JSON)
+													.contentType(MediaType.APPLICATION_JSON)
+													.content(json))
+		   .andExpect(status().isOk())
+		   .andExpect(jsonPath("$", hasSize(3)))
+		   .andExpect(jsonPath("[0].status").value("UPDATED"))
+		   .andExpect(jsonPath("[1].status").value("REJECTED"))
+		   .andExpect(jsonPath("[1].errors[0]").value("Empréstimo não encontrado."))
+		   .andExpect(jsonPath("[2].status").value("REJECTED"))
+		   .andExpect(jsonPath("[2].errors[0]").value("Empréstimo não informado."));
+		
+		Map<Long, Boolean> returnedByLoan = new HashMap<>();
+		returnedByLoan.put(1l, true);
+		returnedByLoan.put(2l, true);
+		Mockito.verify(loanService).updateReturnedBooks(returnedByLoan);
+		Mockito.verify(loanService, Mockito.never()).updateReturnedBook(any(), any(), any());
+	}
+	
 	@Test
 	@DisplayName("Deve devolver o livro emprestado")
 	void returnBook() throws Exception {
@@ -139,12 +227,41 @@ public class LoanControllerTest {
 		
 		String jsonRetornedLoan = new ObjectMapper().writeValueAsString(retornedLoanDTO);
 		
-		given(loanService.findById(1l)).willReturn(Optional.of(Loan.builder().id(1l).build()));
+		given(loanService.updateReturnedBook(1l, true, null)).willReturn(true);
 		MockHttpServletRequestBuilder request = patch(LOAN_API.concat("/1")).accept(MediaType.APPLICATION_JSON)
 																	  		.contentType(MediaType.APPLICATION_JSON)
 																	  		.content(jsonRetornedLoan);
 		mvc.perform(request).andExpect(status().isOk());
-		BDDMockito.verify(loanService, times(1)).updateReturnedBook(1l, retornedLoanDTO.getRetorned());
+		BDDMockito.verify(loanService, times(1)).updateReturnedBook(1l, retornedLoanDTO.getRetorned(), null);
+		BDDMockito.verify(loanService, Mockito.never()).findById(Mockito.anyLong());
+	}
+	
+	@Test
+	@DisplayName("Deve devolver o livro na versão do If-Match, informando a nova ETag")
+	void returnBookIfMatch() throws Exception {
+		
+		String jsonRetornedLoan = new ObjectMapper().writeValueAsString(ReturnedLoanDTO.builder().retorned(true).build());
+		given(loanService.updateReturnedBook(1l, true, 4l)).willReturn(true);
+		
+		mvc.perform(patch(LOAN_API.concat("/1")).header(HttpHeaders.IF_MATCH, "\"4\"")
+												.contentType(MediaType.APPLICATION_JSON)
+												.content(jsonRetornedLoan))
+		   .andExpect(status().isOk())
+		   .andExpect(header().string(HttpHeaders.ETAG, "\"5\""));
+	}
+	
+	@Test
+	@DisplayName("Deve retornar 412 quando o empréstimo estiver em outra versão")
+	void returnBookPreconditionFailed() throws Exception {
+		
+		String jsonRetornedLoan = new ObjectMapper().writeValueAsString(ReturnedLoanDTO.builder().retorned(true).build());
+		given(loanService.updateReturnedBook(1l, true, 4l)).willThrow(new OptimisticLockingFailureException("Empréstimo alterado por outra requisição."));
+		
+		mvc.perform(patch(LOAN_API.concat("/1")).header(HttpHeaders.IF_MATCH, "\"4\"")
+												.contentType(MediaType.APPLICATION_JSON)
+												.content(jsonRetornedLoan))
+		   .andExpect(status().isPreconditionFailed())
+		   .andExpect(jsonPath("errors", hasSize(1)));
 	}
 	
 	@Test
@@ -166,7 +283,7 @@ public class LoanControllerTest {
 		
 		Loan loan = loanBuilder().build();
 		given(loanService.find(any(LoanFilterDTO.class), any(Pageable.class)) )
-				  .willReturn(new PageImpl<Loan>(Arrays.asList(loan), PageRequest.of(0, 10), 1));
+				  .willReturn(new PageImpl<LoanView>(Arrays.asList(viewOf(loan)), PageRequest.of(0, 10), 1));
 		
 		
 		String queryString = String.format("?isbn=%s&costumer=%s&page=0&size=10", loan.getBook().getIsbn(), loan.getCustomer());
@@ -181,6 +298,57 @@ public class LoanControllerTest {
 		   .andExpect(jsonPath("pageable.pageNumber").value(0));
 	}
 	
+	@Test
+	@DisplayName("Deve informar o total de empréstimos retornado pelo serviço")
+	void findLoansTotal() throws Exception {
+		
+		Loan loan = loanBuilder().build();
+		given(loanService.find(any(LoanFilterDTO.class), any(Pageable.class)) )
+				  .willReturn(new PageImpl<LoanView>(Arrays.asList(viewOf(loan)), PageRequest.of(0, 1), 25));
+		
+		mvc.perform(MockMvcRequestBuilders.get(LOAN_API + "?customer=Renato&page=0&size=1").accept(MediaType.APPLICATION_JSON))
+		   .andExpect(status().isOk())
+		   .andExpect(jsonPath("totalElements").value(25))
+		   .andExpect(jsonPath("totalPages").value(25));
+	}
+	
+	@Test
+	@DisplayName("Deve filtrar empréstimos sem calcular o total")
+	void findLoansSlice() throws Exception {
+		
+		Loan loan = loanBuilder().build();
+		given(loanService.findSlice(any(LoanFilterDTO.class), any(Pageable.class)) )
+				  .willReturn(new SliceImpl<LoanView>(Arrays.asList(viewOf(loan)), PageRequest.of(0, 1), true));
+		
+		mvc.perform(MockMvcRequestBuilders.get(LOAN_API + "?mode=slice&size=1").accept(MediaType.APPLICATION_JSON))
+		   .andExpect(status().isOk())
+		   .andExpect(jsonPath("content", Matchers.hasSize(1)))
+		   .andExpect(jsonPath("last").value(false))
+		   .andExpect(jsonPath("totalElements").doesNotExist());
+		
+		Mockito.verify(loanService, Mockito.never()).find(any(LoanFilterDTO.class), any(Pageable.class));
+	}
+	
+	@Test
+	@DisplayName("Deve exportar os empréstimos em NDJSON por padrão")
+	void exportLoans() throws Exception {
+		
+		BDDMockito.willAnswer(invocation -> {
+			OutputStream outputStream = invocation.getArgument(0);
+			outputStream.write("{\"id\":1}\n".getBytes(StandardCharsets.UTF_8));
+			return null;
+		}).given(exportService).exportLoans(any(OutputStream.class), Mockito.eq(DataFormat.NDJSON));
+		
+		MvcResult result = mvc.perform(MockMvcRequestBuilders.get(LOAN_API + "/export"))
+							  .andExpect(request().asyncStarted())
+							  .andReturn();
+		
+		mvc.perform(asyncDispatch(result))
+		   .andExpect(status().isOk())
+		   .andExpect(header().string(HttpHeaders.CONTENT_TYPE, "application/x-ndjson"))
+		   .andExpect(content().string("{\"id\":1}\n"));
+	}
+	
 	private LoanBuilder loanBuilder() {
 		return Loan.builder().id(1l)
 						     .book(Book.builder().id(1l).isbn("123").build())
@@ -188,5 +356,14 @@ public class LoanControllerTest {
 							 .loanDate(LocalDate.now());
 	}
 	
+	private LoanView viewOf(Loan loan) {
+		Map<String, Object> columns = new HashMap<>();
+		columns.put("id", loan.getId());
+		columns.put("customer", loan.getCustomer());
+		columns.put("loanDate", loan.getLoanDate());
+		columns.put("bookId", loan.getBook().getId());
+		columns.put("bookIsbn", loan.getBook().getIsbn());
+		return new SpelAwareProxyProjectionFactory().createProjection(LoanView.class, columns);
+	}
 	
 }
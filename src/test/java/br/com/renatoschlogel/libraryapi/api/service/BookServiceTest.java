@@ -16,18 +16,31 @@ import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.Mockito;
 import org.springframework.boot.test.mock.mockito.MockBean;
-import org.springframework.data.domain.Example;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.dao.OptimisticLockingFailureException;
 import org.springframework.data.domain.Page;
-import org.springframework.data.domain.PageImpl;
 import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.SliceImpl;
+import org.springframework.data.projection.SpelAwareProxyProjectionFactory;
 import org.springframework.test.context.ActiveProfiles;
 import org.springframework.test.context.junit.jupiter.SpringExtension;
 
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+
+import br.com.renatoschlogel.libraryapi.config.CacheConfig;
 import br.com.renatoschlogel.libraryapi.exception.BusinessException;
 import br.com.renatoschlogel.libraryapi.model.entity.Book;
 import br.com.renatoschlogel.libraryapi.model.repository.BookRepository;
+import br.com.renatoschlogel.libraryapi.model.repository.BookView;
 import br.com.renatoschlogel.libraryapi.service.BookService;
+import br.com.renatoschlogel.libraryapi.service.impl.BookSearchIndex;
 import br.com.renatoschlogel.libraryapi.service.impl.BookServiceImpl;
+import br.com.renatoschlogel.libraryapi.service.impl.IsbnFilter;
+import br.com.renatoschlogel.libraryapi.service.impl.ListingTotals;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 
 @ExtendWith(SpringExtension.class)
 @ActiveProfiles("test")
@@ -35,12 +48,24 @@ public class BookServiceTest {
 
 	BookService bookService;
 	
+	IsbnFilter isbnFilter;
+	
+	BookSearchIndex bookSearchIndex;
+	
 	@MockBean
 	BookRepository bookRepository;
 	
+	SimpleMeterRegistry meterRegistry;
+	
 	@BeforeEach
 	public void setUp() {
-		this.bookService = new BookServiceImpl(bookRepository);
+		meterRegistry = new SimpleMeterRegistry();
+		this.isbnFilter = new IsbnFilter(1000, 0.01);
+		this.bookSearchIndex = new BookSearchIndex();
+		Cache<Long, String> bookIsbnsByIdCache = Caffeine.newBuilder().build();
+		Cache<String, Optional<Book>> booksByIsbnCache = Caffeine.newBuilder().writer(CacheConfig.isbnsById(bookIsbnsByIdCache)).build();
+		this.bookService = new BookServiceImpl(bookRepository, booksByIsbnCache, bookIsbnsByIdCache, isbnFilter, bookSearchIndex, 
+											   new ListingTotals(Caffeine.newBuilder().build()), meterRegistry);
 	}
 	
 	@Test
@@ -73,6 +98,53 @@ public class BookServiceTest {
 		assertThat(exception).isInstanceOf(BusinessException.class)
 		                     .hasMessage("Isbn já utilizado por outro livro!");
 		Mockito.verify(bookRepository, Mockito.never()).save(book);
+		assertThat(meterRegistry.get("library.books.rejected").tag("reason", "isbn_in_use").counter().count()).isEqualTo(1);
+	}
+	
+	@Test
+	@DisplayName("Não deve consultar a existência do isbn quando o filtro garantir que ele não existe")
+	void shouldSkipExistsQueryWhenFilterRulesOutIsbn() throws Exception {
+		Book book = createValidBook();
+		isbnFilter.put("999");
+		isbnFilter.markLoaded();
+		Mockito.when(bookRepository.save(book)).thenReturn(book);
+		
+		bookService.incluir(book);
+		
+		Mockito.verify(bookRepository, Mockito.never()).existsByIsbn(book.getIsbn());
+		assertThat(isbnFilter.mightContain(book.getIsbn())).isTrue();
+	}
+	
+	@Test
+	@DisplayName("Deve lançar erro de negócio quando a constraint de isbn rejeitar a inclusão")
+	void shouldTranslateIsbnConstraintViolation() throws Exception {
+		Book book = createValidBook();
+		isbnFilter.markLoaded();
+		Mockito.when(bookRepository.save(book)).thenThrow(new DataIntegrityViolationException("isbn"));
+		
+		Throwable exception = Assertions.catchThrowable(() -> bookService.incluir(book) );
+		
+		assertThat(exception).isInstanceOf(BusinessException.class)
+		                     .hasMessage("Isbn já utilizado por outro livro!");
+	}
+	
+	@Test
+	@DisplayName("Deve incluir em lote apenas os livros com isbn ainda não utilizado")
+	void saveBooksBatchTest() throws Exception {
+		Book newBook = createValidBook();
+		Book usedIsbnBook = Book.builder().title("Titulo").author("Autor").isbn("456").build();
+		Book repeatedIsbnBook = createValidBook();
+		
+		when(bookRepository.findIsbnByIsbnIn(Mockito.anyCollection())).thenReturn(Arrays.asList("456"));
+		
+		List<Book> books = bookService.incluirLote(Arrays.asList(newBook, usedIsbnBook, repeatedIsbnBook));
+		
+		assertThat(books).hasSize(3);
+		verify(bookRepository, Mockito.times(1)).findIsbnByIsbnIn(Mockito.anyCollection());
+		assertThat(meterRegistry.get("library.books.rejected").tag("reason", "isbn_in_use").counter().count()).isEqualTo(2);
+		verify(bookRepository, Mockito.times(1)).saveAll(Arrays.asList(newBook));
+		verify(bookRepository, Mockito.times(1)).flush();
+		verify(bookRepository, Mockito.never()).existsByIsbn(Mockito.anyString());
 	}
 	
 	@Test
@@ -116,62 +188,75 @@ public class BookServiceTest {
 		String title = "Titulo Atualizado";
 		book.setId(id);	
 		book.setTitle(title);
+		bookSearchIndex.index(id, "Titulo", "Autor", "123");
 		
-		Mockito.when(bookRepository.save(book)).thenReturn(book);
-		
-		book = bookService.update(book);
+		Book stored = Book.builder().id(id).title(title).author("Autor").isbn("123").version(3l).build();
+		Mockito.when(bookRepository.updateTitleAndAuthor(id, title, "Autor", 2l)).thenReturn(1);
+		Mockito.when(bookRepository.findById(id)).thenReturn(Optional.of(stored));
 		
-		assertThat(book.getId()).isEqualTo(id);
-		assertThat(book.getTitle()).isEqualTo(title);
+		assertThat(bookService.update(book, 2l)).containsSame(stored);
 		
+		assertThat(bookSearchIndex.search("atualizado", null, "123")).containsExactly(id);
+		verify(bookRepository, Mockito.never()).save(Mockito.any(Book.class));
 	}
 	
 	@Test
 	@DisplayName("Deve lancar uma exceção ao tentar atualizar pois o livro não esta persistido")
 	void updateNotPersitBookTest() throws Exception {
 		Book bookNullId = createValidBook();
-		assertThrows(IllegalArgumentException.class, () ->bookService.update(bookNullId) );
+		assertThrows(IllegalArgumentException.class, () ->bookService.update(bookNullId, null) );
 		
-		Mockito.verify(bookRepository, Mockito.never()).save(bookNullId);
+		Mockito.verify(bookRepository, Mockito.never()).updateTitleAndAuthor(Mockito.any(), Mockito.any(), Mockito.any(), Mockito.any());
+	}
+	
+	@Test
+	@DisplayName("Deve separar o livro inexistente do alterado por outra requisição quando nenhuma linha for atualizada")
+	void updateBookNotChangedTest() throws Exception {
+		Book book = createValidBook();
+		book.setId(1l);
+		
+		assertThat(bookService.update(book, null)).isEmpty();
+		verify(bookRepository, Mockito.never()).existsById(Mockito.any());
+		
+		when(bookRepository.existsById(1l)).thenReturn(true);
+		assertThrows(OptimisticLockingFailureException.class, () -> bookService.update(book, 2l));
 	}
 	
 	@Test
 	@DisplayName("Deve deletar um  livro")
 	void deleteBookTest() throws Exception {
-		Book book = createValidBook();
 		long id = 1L;
-		book.setId(id);	
-			
-		org.junit.jupiter.api.Assertions.assertDoesNotThrow(() -> bookService.delete(book));
+		when(bookRepository.deleteByIdAndVersion(id, null)).thenReturn(1);
 		
-		Mockito.verify(bookRepository, Mockito.times(1)).delete(book);
+		assertThat(bookService.delete(id, null)).isTrue();
+		
+		Mockito.verify(bookRepository, Mockito.never()).findById(id);
 	}
 	
 	@Test
 	@DisplayName("Deve lancar uma exceção ao tentar deletar pois o livro não esta persistido")
 	void deleteNotPersitBookTest() throws Exception {
-		Book bookNullId = new Book();
-		org.junit.jupiter.api.Assertions.assertThrows(IllegalArgumentException.class, () -> bookService.delete(bookNullId) );
+		org.junit.jupiter.api.Assertions.assertThrows(IllegalArgumentException.class, () -> bookService.delete(null, null) );
 		
-		Mockito.verify(bookRepository, Mockito.never()).delete(bookNullId);
+		Mockito.verify(bookRepository, Mockito.never()).deleteByIdAndVersion(Mockito.any(), Mockito.any());
 	}
 
 
 	
-	@SuppressWarnings("unchecked")
 	@Test
 	@DisplayName("Deve filtrar livros pelas propriedades ")
 	void filterBooksByProperties () throws Exception {
 		Book book = createValidBook();
 		
 		PageRequest pageRequest = PageRequest.of(0, 10);
-		List<Book> list = Arrays.asList(book);
-		Page<Book> page = new PageImpl<Book>(list, pageRequest , 1);
+		List<BookView> list = Arrays.asList(viewOf(book));
+		Slice<BookView> slice = new SliceImpl<BookView>(list, pageRequest , false);
 		
-		when(bookRepository.findAll(Mockito.any(Example.class), Mockito.any(PageRequest.class)))
-			   .thenReturn(page);
+		when(bookRepository.findSliceByFilter(Mockito.isNull(), Mockito.eq("%titulo%"), Mockito.eq("%autor%"), 
+											  Mockito.eq("%123%"), Mockito.eq(pageRequest)))
+			   .thenReturn(slice);
 		
-		Page<Book> booksPage = bookService.find(book, pageRequest);
+		Page<BookView> booksPage = bookService.find(book, pageRequest);
 		
 		assertThat(booksPage.getTotalElements()).isEqualTo(1);
 		assertThat(booksPage.getContent()).isEqualTo(list);
@@ -179,6 +264,91 @@ public class BookServiceTest {
 		assertThat(booksPage.getPageable().getPageSize()).isEqualTo(10);
 	}
 	
+	@Test
+	@DisplayName("Deve filtrar livros pelo índice de pesquisa, carregando do banco apenas a página")
+	void filterBooksBySearchIndex() throws Exception {
+		Book cleanCode = Book.builder().id(1l).title("Clean Code").author("Robert Martin").isbn("111").build();
+		Book cleanArchitecture = Book.builder().id(2l).title("Clean Architecture").author("Robert Martin").isbn("222").build();
+		bookSearchIndex.index(cleanCode.getId(), cleanCode.getTitle(), cleanCode.getAuthor(), cleanCode.getIsbn());
+		bookSearchIndex.index(cleanArchitecture.getId(), cleanArchitecture.getTitle(), cleanArchitecture.getAuthor(), cleanArchitecture.getIsbn());
+		bookSearchIndex.markLoaded();
+		
+		when(bookRepository.findViewsByIdIn(Arrays.asList(2l))).thenReturn(Arrays.asList(viewOf(cleanArchitecture)));
+		
+		Book filter = Book.builder().title("clean arch").build();
+		Page<BookView> booksPage = bookService.find(filter, PageRequest.of(0, 10));
+		
+		assertThat(booksPage.getTotalElements()).isEqualTo(1);
+		assertThat(booksPage.getContent()).extracting(BookView::getId).containsExactly(cleanArchitecture.getId());
+		verify(bookRepository, Mockito.never()).findSliceByFilter(Mockito.any(), Mockito.any(), Mockito.any(), Mockito.any(), Mockito.any(Pageable.class));
+	}
+	
+	@Test
+	@DisplayName("Deve contar os livros do filtro apenas uma vez enquanto o total estiver no cache")
+	void filterBooksReusesCachedTotal() throws Exception {
+		PageRequest pageRequest = PageRequest.of(0, 1);
+		Book book = createValidBook();
+		
+		when(bookRepository.findSliceByFilter(null, "%as aventuras%", null, null, pageRequest))
+			   .thenReturn(new SliceImpl<BookView>(Arrays.asList(viewOf(book)), pageRequest, true));
+		when(bookRepository.countByFilter(null, "%as aventuras%", null, null)).thenReturn(5l);
+		
+		Book filter = Book.builder().title("As aventuras").build();
+		bookService.find(filter, pageRequest);
+		Page<BookView> booksPage = bookService.find(filter, pageRequest);
+		
+		assertThat(booksPage.getTotalElements()).isEqualTo(5);
+		verify(bookRepository, Mockito.times(1)).countByFilter(null, "%as aventuras%", null, null);
+	}
+	
+	@Test
+	@DisplayName("Deve filtrar livros sem contar o total")
+	void filterBooksSlice() throws Exception {
+		PageRequest pageRequest = PageRequest.of(0, 1);
+		BookView book = viewOf(createValidBook());
+		Slice<BookView> slice = new SliceImpl<BookView>(Arrays.asList(book), pageRequest, true);
+		
+		when(bookRepository.findSliceByFilter(null, "%as aventuras%", null, null, pageRequest)).thenReturn(slice);
+		
+		Slice<BookView> result = bookService.findSlice(Book.builder().title("As aventuras").build(), pageRequest);
+		
+		assertThat(result.getContent()).containsExactly(book);
+		assertThat(result.hasNext()).isTrue();
+		verify(bookRepository, Mockito.never()).countByFilter(Mockito.any(), Mockito.any(), Mockito.any(), Mockito.any());
+	}
+	
+	@Test
+	@DisplayName("Deve paginar por cursor os livros encontrados no índice, em ordem de id")
+	void findBooksAfterBySearchIndex() throws Exception {
+		Book cleanCode = Book.builder().id(1l).title("Clean Code").author("Robert Martin").isbn("111").build();
+		Book cleanArchitecture = Book.builder().id(2l).title("Clean Architecture").author("Robert Martin").isbn("222").build();
+		Book cleanCoder = Book.builder().id(3l).title("The Clean Coder").author("Robert Martin").isbn("333").build();
+		Arrays.asList(cleanCode, cleanArchitecture, cleanCoder)
+			  .forEach(book -> bookSearchIndex.index(book.getId(), book.getTitle(), book.getAuthor(), book.getIsbn()));
+		bookSearchIndex.markLoaded();
+		
+		when(bookRepository.findViewsByIdIn(Arrays.asList(2l))).thenReturn(Arrays.asList(viewOf(cleanArchitecture)));
+		
+		Book filter = Book.builder().title("clean").build();
+		Slice<BookView> slice = bookService.findAfter(filter, 1l, 1);
+		
+		assertThat(slice.getContent()).extracting(BookView::getId).containsExactly(cleanArchitecture.getId());
+		assertThat(slice.hasNext()).isTrue();
+	}
+	
+	@Test
+	@DisplayName("Deve paginar por cursor no banco quando o índice não puder ser usado")
+	void findBooksAfterByRepository() throws Exception {
+		Book book = Book.builder().id(5l).title("Clean Code").author("Robert Martin").isbn("111").build();
+		Slice<BookView> expected = new SliceImpl<>(Arrays.asList(viewOf(book)), PageRequest.of(0, 10), false);
+		
+		when(bookRepository.findAfter(0l, null, "%clean%", null, null, PageRequest.of(0, 10))).thenReturn(expected);
+		
+		Slice<BookView> slice = bookService.findAfter(Book.builder().title("Clean").build(), null, 10);
+		
+		assertThat(slice).isSameAs(expected);
+	}
+	
 	@Test
 	@DisplayName("Deve obter o livro pelo isbn")
 	void shoudBeBookByIsbn() throws Exception {
@@ -195,8 +365,82 @@ public class BookServiceTest {
 		verify(bookRepository, Mockito.times(1)).findByIsbn(isbn);
 	}
 	
+	@Test
+	@DisplayName("Deve obter o livro pelo isbn a partir do cache na segunda consulta")
+	void shouldCacheBookByIsbn() throws Exception {
+		String isbn = "1234";
+		Book book = Book.builder().id(1l).isbn(isbn).build();
+		when(bookRepository.findByIsbn(isbn)).thenReturn(Optional.of(book));
+		
+		bookService.getBookByIsbn(isbn);
+		Optional<Book> optBook = bookService.getBookByIsbn(isbn);
+		
+		assertThat(optBook.isPresent()).isTrue();
+		assertThat(optBook.get().getId()).isEqualTo(1l);
+		
+		verify(bookRepository, Mockito.times(1)).findByIsbn(isbn);
+	}
+	
+	@Test
+	@DisplayName("Deve guardar no cache o isbn não encontrado até que um livro seja incluído")
+	void shouldCacheMissingIsbnUntilBookIsSaved() throws Exception {
+		Book book = createValidBook();
+		book.setId(1l);
+		when(bookRepository.findByIsbn(book.getIsbn())).thenReturn(Optional.empty());
+		
+		assertThat(bookService.getBookByIsbn(book.getIsbn()).isPresent()).isFalse();
+		assertThat(bookService.getBookByIsbn(book.getIsbn()).isPresent()).isFalse();
+		verify(bookRepository, Mockito.times(1)).findByIsbn(book.getIsbn());
+		
+		when(bookRepository.save(book)).thenReturn(book);
+		when(bookRepository.findByIsbn(book.getIsbn())).thenReturn(Optional.of(book));
+		bookService.incluir(book);
+		
+		assertThat(bookService.getBookByIsbn(book.getIsbn()).isPresent()).isTrue();
+		verify(bookRepository, Mockito.times(2)).findByIsbn(book.getIsbn());
+	}
+	
+	@Test
+	@DisplayName("Deve remover o livro do cache ao deletar")
+	void shouldEvictCachedBookOnDelete() throws Exception {
+		Book book = createValidBook();
+		book.setId(1l);
+		when(bookRepository.findByIsbn(book.getIsbn())).thenReturn(Optional.of(book));
+		
+		when(bookRepository.deleteByIdAndVersion(1l, null)).thenReturn(1);
+		
+		bookService.getBookByIsbn(book.getIsbn());
+		bookService.delete(book.getId(), null);
+		
+		when(bookRepository.findByIsbn(book.getIsbn())).thenReturn(Optional.empty());
+		assertThat(bookService.getBookByIsbn(book.getIsbn()).isPresent()).isFalse();
+	}
+	
+	@Test
+	@DisplayName("Deve remover do cache apenas o livro alterado")
+	void shouldEvictOnlyUpdatedBook() throws Exception {
+		Book book = Book.builder().id(1l).title("Titulo").author("Autor").isbn("123").build();
+		Book other = Book.builder().id(2l).title("Outro").author("Autor").isbn("456").build();
+		when(bookRepository.findByIsbn("123")).thenReturn(Optional.of(book));
+		when(bookRepository.findByIsbn("456")).thenReturn(Optional.of(other));
+		when(bookRepository.updateTitleAndAuthor(1l, "Novo", "Autor", null)).thenReturn(1);
+		
+		bookService.getBookByIsbn("123");
+		bookService.getBookByIsbn("456");
+		bookService.update(Book.builder().id(1l).title("Novo").author("Autor").build(), null);
+		bookService.getBookByIsbn("123");
+		bookService.getBookByIsbn("456");
+		
+		verify(bookRepository, Mockito.times(2)).findByIsbn("123");
+		verify(bookRepository, Mockito.times(1)).findByIsbn("456");
+	}
+	
 	private Book createValidBook() {
 		return Book.builder().title("Titulo").author("Autor").isbn("123").build();
 	}
 	
+	private BookView viewOf(Book book) {
+		return new SpelAwareProxyProjectionFactory().createProjection(BookView.class, book);
+	}
+	
 }
@@ -0,0 +1,71 @@
+package br.com.renatoschlogel.libraryapi.config;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.hamcrest.Matchers.containsString;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.actuate.metrics.AutoConfigureMetrics;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.request.MockMvcRequestBuilders;
+import org.springframework.test.web.servlet.result.MockMvcResultMatchers;
+
+import br.com.renatoschlogel.libraryapi.model.entity.Book;
+import br.com.renatoschlogel.libraryapi.model.repository.BookRepository;
+import br.com.renatoschlogel.libraryapi.service.BookService;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+@SpringBootTest
+@AutoConfigureMockMvc
+@AutoConfigureMetrics
+@ActiveProfiles("test")
+public class OperationMetricsTest {
+
+	@Autowired
+	MockMvc mvc;
+	
+	@Autowired
+	MeterRegistry meterRegistry;
+	
+	@Autowired
+	BookService bookService;
+	
+	@Autowired
+	BookRepository bookRepository;
+	
+	@Test
+	@DisplayName("Deve medir as operações do serviço e as consultas próprias do repositório, por operação")
+	void timeOperations() throws Exception {
+		
+		bookRepository.saveAndFlush(Book.builder().title("Métricas").author("Autor").isbn("metrics-1").build());
+		bookService.getBookByIsbn("metrics-1");
+		
+		Timer service = meterRegistry.get("library.service").tag("operation", "BookServiceImpl.getBookByIsbn").timer();
+		Timer repository = meterRegistry.get("library.repository").tag("operation", "BookRepository.findByIsbn").timer();
+		assertThat(service.count()).isGreaterThanOrEqualTo(1);
+		assertThat(repository.count()).isGreaterThanOrEqualTo(1);
+		assertThat(service.takeSnapshot().histogramCounts()).isNotEmpty();
+		
+		assertThat(meterRegistry.find("library.repository").tag("operation", "JpaRepository.saveAndFlush").timer()).isNull();
+	}
+	
+	@Test
+	@DisplayName("Deve expor as métricas no formato do Prometheus")
+	void prometheusEndpoint() throws Exception {
+		
+		bookService.getBookByIsbn("metrics-2");
+		
+		mvc.perform(MockMvcRequestBuilders.get("/actuator/prometheus"))
+		   .andExpect(MockMvcResultMatchers.status().isOk())
+		   .andExpect(MockMvcResultMatchers.content().string(containsString("library_service_seconds_bucket{operation=\"BookServiceImpl.getBookByIsbn\"")))
+		   .andExpect(MockMvcResultMatchers.content().string(containsString("library_mail_queue ")))
+		   .andExpect(MockMvcResultMatchers.content().string(containsString("library_loans_checkout_waiting ")))
+		   .andExpect(MockMvcResultMatchers.content().string(containsString("library_loans_rejected_total{reason=\"book_already_loaned\"")));
+	}
+
+}
@@ -0,0 +1,92 @@
+package br.com.renatoschlogel.libraryapi.config;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.request.MockMvcRequestBuilders;
+import org.springframework.test.web.servlet.result.MockMvcResultMatchers;
+
+import br.com.renatoschlogel.libraryapi.model.entity.Book;
+import br.com.renatoschlogel.libraryapi.model.repository.BookRepository;
+import io.micrometer.core.instrument.MeterRegistry;
+
+@SpringBootTest(properties = "application.sql.response-headers=true")
+@AutoConfigureMockMvc
+@ActiveProfiles("test")
+public class SqlRecorderTest {
+
+	@Autowired
+	MockMvc mvc;
+	
+	@Autowired
+	SqlRecorder sqlRecorder;
+	
+	@Autowired
+	MeterRegistry meterRegistry;
+	
+	@Autowired
+	BookRepository bookRepository;
+	
+	@Test
+	@DisplayName("Deve informar nos cabeçalhos e nas métricas os comandos SQL da requisição")
+	void requestStatistics() throws Exception {
+		Book book = bookRepository.save(Book.builder().title("SQL").author("Autor").isbn("sql-1").build());
+		
+		MvcResult result = mvc.perform(MockMvcRequestBuilders.get("/api/books/" + book.getId()))
+							  .andExpect(MockMvcResultMatchers.status().isOk())
+							  .andReturn();
+		
+		assertThat(Integer.valueOf(result.getResponse().getHeader("X-Sql-Statements"))).isPositive();
+		assertThat(Integer.valueOf(result.getResponse().getHeader("X-Sql-Rows"))).isPositive();
+		assertThat(result.getResponse().getHeader("X-Sql-Time-Ms")).isNotNull();
+		assertThat(meterRegistry.get("library.sql.statements")
+								.tag("scope", "http")
+								.tag("operation", "GET /api/books/{id}")
+								.summary().count()).isPositive();
+	}
+	
+	@Test
+	@DisplayName("Deve apontar como N+1 o mesmo comando repetido no escopo")
+	void detectRepeatedStatements() throws Exception {
+		Book book = bookRepository.save(Book.builder().title("SQL").author("Autor").isbn("sql-2").build());
+		
+		SqlStatistics statistics = sqlRecorder.begin();
+		for (int i = 0; i < 5; i++) {
+			bookRepository.findById(book.getId());
+		}
+		sqlRecorder.end(statistics, "test", "detectRepeatedStatements");
+		
+		assertThat(statistics.getStatements()).isEqualTo(5);
+		assertThat(statistics.getRows()).isEqualTo(5);
+		assertThat(statistics.getRepeated(5)).hasSize(1);
+		assertThat(meterRegistry.get("library.sql.n_plus_one")
+								.tag("scope", "test")
+								.tag("operation", "detectRepeatedStatements")
+								.counter().count()).isEqualTo(1);
+	}
+	
+	@Test
+	@DisplayName("Deve somar ao escopo de fora os comandos de um escopo interno")
+	void nestedScopes() throws Exception {
+		Book book = bookRepository.save(Book.builder().title("SQL").author("Autor").isbn("sql-3").build());
+		
+		SqlStatistics outer = sqlRecorder.begin();
+		bookRepository.findById(book.getId());
+		SqlStatistics inner = sqlRecorder.begin();
+		bookRepository.findById(book.getId());
+		sqlRecorder.end(inner, "test", "inner");
+		sqlRecorder.end(outer, "test", "outer");
+		
+		assertThat(inner.getStatements()).isEqualTo(1);
+		assertThat(outer.getStatements()).isEqualTo(2);
+		assertThat(outer.getRepeated(5)).isEmpty();
+	}
+
+}
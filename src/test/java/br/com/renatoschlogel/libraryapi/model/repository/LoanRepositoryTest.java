@@ -1,9 +1,14 @@
 package br.com.renatoschlogel.libraryapi.model.repository;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.tuple;
+import static br.com.renatoschlogel.libraryapi.support.SqlStatementsAssert.assertThatSql;
 
 import java.time.LocalDate;
+import java.util.Arrays;
 import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
@@ -12,16 +17,20 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
 import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
 import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Slice;
 import org.springframework.test.context.ActiveProfiles;
 import org.springframework.test.context.junit.jupiter.SpringExtension;
 
 import br.com.renatoschlogel.libraryapi.model.entity.Book;
 import br.com.renatoschlogel.libraryapi.model.entity.Book.BookBuilder;
 import br.com.renatoschlogel.libraryapi.model.entity.Loan;
+import br.com.renatoschlogel.libraryapi.config.SqlRecorder;
+import br.com.renatoschlogel.libraryapi.support.RecordSql;
 
 @ExtendWith(SpringExtension.class)
 @ActiveProfiles("test")
 @DataJpaTest
+@RecordSql
 public class LoanRepositoryTest {
 
 	@Autowired
@@ -29,74 +38,203 @@ public class LoanRepositoryTest {
 
 	@Autowired
 	private LoanRepository loanRepository;
-	
-	@Test
-	@DisplayName("Deve verificar o livro esta emprestado")
-	void existsByBookAndNotReturned() throws Exception {
-		
-		Book availableBook = bookBuilder().build();
-		Book borroweBook = bookBuilder().build();
-		Loan loan = Loan.builder().book(borroweBook).customer("Renato").loanDate(LocalDate.now()).build();
-		
-		entityManager.persist(availableBook);
-		entityManager.persist(borroweBook);
-		entityManager.persist(loan);
-		
-		assertThat(loanRepository.existsByBookAndNotReturned(borroweBook)).isTrue();
-		assertThat(loanRepository.existsByBookAndNotReturned(availableBook)).isFalse();
-	}
+
+	@Autowired
+	private SqlRecorder sqlRecorder;
 	
 	@Test
 	@DisplayName("Deve buscar empréstimo por isbn do livro ou custumer")
 	void findByBookIsbnOrCustumer() throws Exception {
 		
 		Book borroweBook = bookBuilder().isbn("123").build();
+		Book otherBook = bookBuilder().isbn("456").build();
 		Loan loan = Loan.builder().book(borroweBook).customer("Renato").loanDate(LocalDate.now()).build();
 		
 		entityManager.persist(borroweBook);
+		entityManager.persist(otherBook);
 		entityManager.persist(loan);
-		
-		assertThat(loanRepository.findByBookIsbnOrCustomer("123", "Renato", PageRequest.of(0, 10)).getContent()).hasSize(1);
-		assertThat(loanRepository.findByBookIsbnOrCustomer("123", null, PageRequest.of(0, 10)).getContent()).hasSize(1);
-		assertThat(loanRepository.findByBookIsbnOrCustomer(null, "Renato", PageRequest.of(0, 10)).getContent()).hasSize(1);
-		assertThat(loanRepository.findByBookIsbnOrCustomer(null, null, PageRequest.of(0, 10)).getContent()).hasSize(0);
-		assertThat(loanRepository.findByBookIsbnOrCustomer("naodisponivel", "naodisponivel", PageRequest.of(0, 10)).getContent()).hasSize(0);
+		entityManager.flush();
+		
+		assertThatSql(sqlRecorder, () -> {
+			assertThat(loanRepository.findIdsByBookOrCustomer(borroweBook.getId(), "Renato", 10, 0)).containsExactly(loan.getId());
+			assertThat(loanRepository.findIdsByBookOrCustomer(borroweBook.getId(), "naodisponivel", 10, 0)).containsExactly(loan.getId());
+			assertThat(loanRepository.findIdsByBookOrCustomer(otherBook.getId(), "Renato", 10, 0)).containsExactly(loan.getId());
+			assertThat(loanRepository.findIdsByBookOrCustomer(otherBook.getId(), "naodisponivel", 10, 0)).isEmpty();
+			assertThat(loanRepository.countByBookOrCustomer(borroweBook.getId(), "Renato")).isEqualTo(1);
+			assertThat(loanRepository.findSliceByCustomer("Renato", PageRequest.of(0, 10)).getContent()).extracting(LoanView::getId).containsExactly(loan.getId());
+			assertThat(loanRepository.findSliceByBookId(borroweBook.getId(), PageRequest.of(0, 10)).getContent()).extracting(LoanView::getId).containsExactly(loan.getId());
+			assertThat(loanRepository.findSliceByBookId(otherBook.getId(), PageRequest.of(0, 10)).getContent()).isEmpty();
+		}).hasSelects(8).hasNoWrites();
 		
 	}
 	
 	@Test
-	@DisplayName("Deve retornar os empréstimos atrasados")
-	void findByLoanDateLessThanAndNotReturned() throws Exception {
+	@DisplayName("Deve paginar os empréstimos do livro por cursor de data e id")
+	void findByBookIdAfter() throws Exception {
 		
 		Book book = bookBuilder().isbn("123").build();
-		Loan loan = Loan.builder().book(book).customer("Renato").loanDate(LocalDate.now().minusDays(5)).build();
-		
 		entityManager.persist(book);
-		entityManager.persist(loan);
-		
-		List<Loan> overdueLoans = loanRepository.findByLoanDateLessThanAndNotReturned(LocalDate.now().minusDays(4));
-		
-		assertThat(overdueLoans).hasSize(1).contains(loan);
 		
+		LocalDate today = LocalDate.now();
+		Loan first = entityManager.persist(Loan.builder().book(book).customer("Renato").loanDate(today.minusDays(2)).build());
+		Loan second = entityManager.persist(Loan.builder().book(book).customer("Renato").loanDate(today).build());
+		Loan third = entityManager.persist(Loan.builder().book(book).customer("Renato").loanDate(today).build());
+		entityManager.flush();
+		
+		assertThatSql(sqlRecorder, () -> {
+			Slice<LoanView> firstPage = loanRepository.findByBookIdOrderByLoanDate(book.getId(), PageRequest.of(0, 2));
+			assertThat(firstPage.getContent()).extracting(LoanView::getId).containsExactly(first.getId(), second.getId());
+			assertThat(firstPage.hasNext()).isTrue();
+			
+			Slice<LoanView> secondPage = loanRepository.findByBookIdAfter(book.getId(), second.getLoanDate(), second.getId(), PageRequest.of(0, 2));
+			assertThat(secondPage.getContent()).extracting(LoanView::getId).containsExactly(third.getId());
+			assertThat(secondPage.hasNext()).isFalse();
+		}).hasSelects(2).hasNoWrites();
 	}
 	
 	@Test
-	@DisplayName("Não deve retornar os empréstimos em dia")
-	void findByLoanDateLessThanAndNotReturnedEmpty() throws Exception {
+	@DisplayName("Deve paginar por cursor os empréstimos filtrados por isbn ou custumer")
+	void findByBookIsbnOrCustomerAfter() throws Exception {
 		
 		Book book = bookBuilder().isbn("123").build();
-		Loan loan = Loan.builder().book(book).customer("Renato").loanDate(LocalDate.now()).build();
-		
+		Book otherBook = bookBuilder().isbn("456").build();
 		entityManager.persist(book);
-		entityManager.persist(loan);
-		
-		List<Loan> overdueLoans = loanRepository.findByLoanDateLessThanAndNotReturned(LocalDate.now());
-		
-		assertThat(overdueLoans).isEmpty();
+		entityManager.persist(otherBook);
+		
+		LocalDate today = LocalDate.now();
+		Loan byIsbn = entityManager.persist(Loan.builder().book(book).customer("Fulano").loanDate(today.minusDays(1)).build());
+		Loan byCustomer = entityManager.persist(Loan.builder().book(otherBook).customer("Renato").loanDate(today).build());
+		entityManager.persist(Loan.builder().book(otherBook).customer("Fulano").loanDate(today).build());
+		
+		Loan byBoth = entityManager.persist(Loan.builder().book(book).customer("Renato").loanDate(today).build());
+		entityManager.flush();
+		
+		assertThatSql(sqlRecorder, () -> {
+			List<Long> firstPage = loanRepository.findIdsByBookOrCustomer(book.getId(), "Renato", 2, 0);
+			assertThat(firstPage).containsExactly(byIsbn.getId(), byCustomer.getId());
+			
+			List<Long> secondPage = loanRepository.findIdsByBookOrCustomerAfter(book.getId(), "Renato", byCustomer.getLoanDate(), byCustomer.getId(), 2);
+			assertThat(secondPage).containsExactly(byBoth.getId());
+			
+			assertThat(loanRepository.findViewsByIdIn(secondPage)).extracting(LoanView::getBookId, LoanView::getBookIsbn)
+																.containsExactly(tuple(book.getId(), "123"));
+			assertThat(loanRepository.findByCustomerAfter("Renato", byCustomer.getLoanDate(), byCustomer.getId(), PageRequest.of(0, 2)).getContent())
+				.extracting(LoanView::getId).containsExactly(byBoth.getId());
+		}).hasSelects(4).hasNoWrites();
+	}
+	
+	@Test
+	@DisplayName("Deve retornar apenas os empréstimos que atingiram um novo nível de atraso, agrupados por cliente")
+	void findLoansToNotify() throws Exception {
 		
+		Book book = bookBuilder().isbn("123").build();
+		Book otherBook = bookBuilder().isbn("456").title("Refactoring").build();
+		entityManager.persist(book);
+		entityManager.persist(otherBook);
+		
+		LocalDate today = LocalDate.now();
+		entityManager.persist(Loan.builder().book(otherBook).customer("Bruno").customerEmail("b@email.com").nextNotificationDate(today).build());
+		Loan first = entityManager.persist(Loan.builder().book(book).customer("Ana").customerEmail("a@email.com").nextNotificationDate(today.minusDays(1)).build());
+		Loan third = entityManager.persist(Loan.builder().book(otherBook).customer("Ana").customerEmail("a@email.com").nextNotificationDate(today).build());
+		entityManager.persist(Loan.builder().book(book).customerEmail("c@email.com").nextNotificationDate(today).returned(true).build());
+		entityManager.persist(Loan.builder().book(book).customerEmail("d@email.com").nextNotificationDate(today.plusDays(1)).build());
+		entityManager.persist(Loan.builder().book(book).customerEmail("e@email.com").build());
+		entityManager.flush();
+		
+		assertThatSql(sqlRecorder, () -> {
+			List<String> customers = loanRepository.findCustomersToNotify(today, "", PageRequest.of(0, 1));
+			List<LateLoanView> loans = loanRepository.findLoansToNotify(customers, today);
+			List<String> allCustomers = loanRepository.findCustomersToNotify(today, "", PageRequest.of(0, 10));
+			List<String> nextCustomers = loanRepository.findCustomersToNotify(today, "a@email.com", PageRequest.of(0, 10));
+			
+			assertThat(customers).containsExactly("a@email.com");
+			assertThat(loans).extracting(LateLoanView::getId, LateLoanView::getCustomer, LateLoanView::getBookTitle)
+							 .containsExactly(tuple(first.getId(), "Ana", "Clean Code"), tuple(third.getId(), "Ana", "Refactoring"));
+			assertThat(allCustomers).containsExactly("a@email.com", "b@email.com");
+			assertThat(nextCustomers).containsExactly("b@email.com");
+		}).hasSelects(4).hasNoWrites();
 	}
 	
 	private BookBuilder bookBuilder() {
 		return Book.builder().title("Clean Code").author("Uncle Bob");
 	}
+	
+	@Test
+	@DisplayName("Deve alterar a devolução apenas na versão informada")
+	void updateReturned() throws Exception {
+		
+		Book book = entityManager.persist(bookBuilder().isbn("123").build());
+		Loan loan = entityManager.persist(Loan.builder().book(book).customer("Renato").loanDate(LocalDate.now()).build());
+		Long version = loan.getVersion();
+		entityManager.flush();
+		
+		assertThatSql(sqlRecorder, () -> {
+			assertThat(loanRepository.updateReturned(loan.getId(), true, version + 1)).isEqualTo(0);
+			assertThat(loanRepository.updateReturned(loan.getId(), true, version)).isEqualTo(1);
+			assertThat(loanRepository.updateReturned(loan.getId() + 1, true, null)).isEqualTo(0);
+		}).hasSelects(0).hasUpdates(3);
+		
+		entityManager.clear();
+		Loan updated = entityManager.find(Loan.class, loan.getId());
+		assertThat(updated.getReturned()).isTrue();
+		assertThat(updated.getVersion()).isEqualTo(version + 1);
+	}
+	
+	@Test
+	@DisplayName("Deve alterar a devolução em lote com um único comando")
+	void updateReturnedByIdIn() throws Exception {
+		
+		Book book = entityManager.persist(bookBuilder().isbn("123").build());
+		Loan first = entityManager.persist(Loan.builder().book(book).customer("Renato").loanDate(LocalDate.now()).build());
+		Loan second = entityManager.persist(Loan.builder().book(book).customer("Renato").loanDate(LocalDate.now()).build());
+		entityManager.flush();
+		
+		assertThatSql(sqlRecorder, () -> {
+			assertThat(loanRepository.findIdsByIdIn(Arrays.asList(first.getId(), second.getId(), 99l)))
+									 .containsExactlyInAnyOrder(first.getId(), second.getId());
+			assertThat(loanRepository.updateReturnedByIdIn(Arrays.asList(first.getId(), second.getId()), true)).isEqualTo(2);
+		}).hasSelects(1).hasUpdates(1);
+		
+		entityManager.clear();
+		assertThat(entityManager.find(Loan.class, first.getId()).getReturned()).isTrue();
+		assertThat(entityManager.find(Loan.class, second.getId()).getReturned()).isTrue();
+	}
+	
+	@Test
+	@DisplayName("Deve listar e contar os empréstimos do cliente e do livro com um comando por consulta")
+	void findAndCountByCustomerAndBook() throws Exception {
+		
+		Book book = entityManager.persist(bookBuilder().isbn("123").build());
+		Book otherBook = entityManager.persist(bookBuilder().isbn("456").build());
+		Loan first = entityManager.persist(Loan.builder().book(book).customer("Renato").loanDate(LocalDate.now().minusDays(1)).build());
+		Loan second = entityManager.persist(Loan.builder().book(otherBook).customer("Renato").loanDate(LocalDate.now()).build());
+		entityManager.persist(Loan.builder().book(book).customer("Bruno").loanDate(LocalDate.now()).build());
+		entityManager.flush();
+		entityManager.clear();
+		
+		assertThatSql(sqlRecorder, () -> {
+			assertThat(loanRepository.findByCustomerOrderByLoanDate("Renato", PageRequest.of(0, 10)).getContent())
+									 .extracting(LoanView::getId).containsExactly(first.getId(), second.getId());
+			assertThat(loanRepository.countByCustomer("Renato")).isEqualTo(2);
+			assertThat(loanRepository.countByBookId(book.getId())).isEqualTo(2);
+		}).hasSelects(3).hasNoWrites();
+	}
+	
+	@Test
+	@DisplayName("Deve percorrer todos os empréstimos com os livros em um único comando")
+	void streamAll() throws Exception {
+		
+		Book book = entityManager.persist(bookBuilder().isbn("123").build());
+		Book otherBook = entityManager.persist(bookBuilder().isbn("456").build());
+		entityManager.persist(Loan.builder().book(book).customer("Renato").loanDate(LocalDate.now()).build());
+		entityManager.persist(Loan.builder().book(otherBook).customer("Bruno").loanDate(LocalDate.now()).build());
+		entityManager.flush();
+		entityManager.clear();
+		
+		assertThatSql(sqlRecorder, () -> {
+			try (Stream<Loan> loans = loanRepository.streamAll()) {
+				assertThat(loans.map(loan -> loan.getBook().getIsbn()).collect(Collectors.toList())).containsExactly("123", "456");
+			}
+		}).hasSelects(1).hasNoWrites();
+	}
 }
@@ -0,0 +1,116 @@
+package br.com.renatoschlogel.libraryapi.model.repository;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.Set;
+import java.util.function.Supplier;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+
+import br.com.renatoschlogel.libraryapi.config.SqlRecorder;
+import br.com.renatoschlogel.libraryapi.config.SqlStatistics;
+import br.com.renatoschlogel.libraryapi.support.RecordSql;
+
+/**
+ * Confere no plano do H2 que as consultas frequentes dos repositórios usam os índices das migrations.
+ * Cada consulta é executada pelo repositório e o plano é pedido para o SQL gerado, capturado no proxy
+ * do DataSource, com os parâmetros em aberto.
+ */
+@ExtendWith(SpringExtension.class)
+@ActiveProfiles("test")
+@DataJpaTest
+@RecordSql
+public class QueryPlanTest {
+
+	@Autowired
+	private JdbcTemplate jdbcTemplate;
+
+	@Autowired
+	private SqlRecorder sqlRecorder;
+
+	@Autowired
+	private BookRepository bookRepository;
+
+	@Autowired
+	private LoanRepository loanRepository;
+
+	@BeforeEach
+	public void setUp() {
+		jdbcTemplate.update("insert into book (id, title, author, isbn) "
+						  + "select x, 'Livro ' || x, 'Autor', 'isbn-' || x from system_range(1, 2000)");
+		jdbcTemplate.update("insert into loan (id, customer, customer_email, id_book, loan_date, returned, next_notification_date) "
+						  + "select x, 'Cliente ' || mod(x, 500), 'cliente' || mod(x, 500) || '@email.com', mod(x, 2000) + 1, "
+						  + "       dateadd('DAY', -mod(x, 365), current_date), mod(x, 10) > 0, dateadd('DAY', 5 - mod(x, 365), current_date) "
+						  + "  from system_range(1, 10000)");
+	}
+
+	@Test
+	@DisplayName("Deve buscar o livro pelo isbn pelo índice único")
+	void bookByIsbn() throws Exception {
+		assertUsesIndex(() -> bookRepository.findIdByIsbn("isbn-10"), "UK_BOOK_ISBN");
+		assertUsesIndex(() -> bookRepository.findIdByIsbnIn(Arrays.asList("isbn-10", "isbn-20")), "UK_BOOK_ISBN");
+	}
+
+	@Test
+	@DisplayName("Deve listar os empréstimos do livro pelo índice de livro e data")
+	void loansByBook() throws Exception {
+		assertUsesIndex(() -> loanRepository.findByBookIdOrderByLoanDate(10l, PageRequest.of(0, 10)), "IDX_LOAN_BOOK_LOAN_DATE");
+		assertUsesIndex(() -> loanRepository.findByBookIdAfter(10l, LocalDate.now(), 5l, PageRequest.of(0, 10)), "IDX_LOAN_BOOK_LOAN_DATE");
+	}
+
+	@Test
+	@DisplayName("Deve buscar os empréstimos do cliente pelo índice de cliente")
+	void loansByCustomer() throws Exception {
+		assertUsesIndex(() -> loanRepository.findByCustomerOrderByLoanDate("Cliente 10", PageRequest.of(0, 10)),
+						"IDX_LOAN_CUSTOMER_LOAN_DATE");
+	}
+
+	@Test
+	@DisplayName("Deve pesquisar por livro ou cliente usando um índice em cada ramo da união")
+	void loansByBookOrCustomer() throws Exception {
+		assertUsesIndex(() -> loanRepository.findIdsByBookOrCustomer(10l, "Cliente 10", 11, 0),
+						"IDX_LOAN_CUSTOMER_LOAN_DATE", "IDX_LOAN_BOOK_LOAN_DATE");
+	}
+
+	@Test
+	@DisplayName("Deve buscar os avisos de atraso pelos índices de próximo aviso e e-mail")
+	void loansToNotify() throws Exception {
+		LocalDate today = LocalDate.now();
+
+		assertUsesIndex(() -> loanRepository.findCustomersToNotify(today, "", PageRequest.of(0, 500)),
+						"IDX_LOAN_RETURNED_NEXT_NOTIFICATION");
+		assertUsesIndex(() -> loanRepository.findLoansToNotify(Arrays.asList("cliente1@email.com", "cliente2@email.com"), today),
+						"IDX_LOAN_CUSTOMER_EMAIL");
+	}
+
+	private void assertUsesIndex(Supplier<?> query, String... indexes) {
+		SqlStatistics statistics = sqlRecorder.begin();
+		try {
+			query.get();
+		} finally {
+			sqlRecorder.end(statistics, "test", "queryPlan");
+		}
+
+		Set<String> statements = statistics.getExecutionsBySql().keySet();
+		assertThat(statements).hasSize(1);
+
+		String sql = statements.iterator().next();
+		String plan = jdbcTemplate.query(connection -> connection.prepareStatement("explain " + sql), resultSet -> {
+			resultSet.next();
+			return resultSet.getString(1);
+		});
+
+		assertThat(plan).as(plan).contains(indexes).doesNotContainIgnoringCase("tableScan");
+	}
+}
@@ -1,8 +1,15 @@
 package br.com.renatoschlogel.libraryapi.model.reposiutory;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.catchThrowable;
+import static br.com.renatoschlogel.libraryapi.support.SqlStatementsAssert.assertThatSql;
 
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.List;
 import java.util.Optional;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
@@ -10,15 +17,25 @@ import org.junit.jupiter.api.extension.ExtendWith;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
 import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.Sort;
 import org.springframework.test.context.ActiveProfiles;
 import org.springframework.test.context.junit.jupiter.SpringExtension;
 
+import br.com.renatoschlogel.libraryapi.config.SqlRecorder;
 import br.com.renatoschlogel.libraryapi.model.entity.Book;
+import br.com.renatoschlogel.libraryapi.model.entity.Loan;
+import br.com.renatoschlogel.libraryapi.model.repository.BookIsbnView;
 import br.com.renatoschlogel.libraryapi.model.repository.BookRepository;
+import br.com.renatoschlogel.libraryapi.model.repository.BookView;
+import br.com.renatoschlogel.libraryapi.support.RecordSql;
 
 @ExtendWith(SpringExtension.class)
 @ActiveProfiles("test")
 @DataJpaTest
+@RecordSql
 public class BookRepositoryTest {
 
 	@Autowired
@@ -27,6 +44,9 @@ public class BookRepositoryTest {
 	@Autowired
 	BookRepository bookRepository;
 	
+	@Autowired
+	SqlRecorder sqlRecorder;
+	
 	@Test
 	@DisplayName("Deve retornar verdadeiro quando existir um livro na base com o isbn informado")
 	void returnTrueWhenIsbnExists() throws Exception {
@@ -36,10 +56,13 @@ public class BookRepositoryTest {
 		Book book = createNewBook(isbn);
 		
 		entityManager.persist(book);
+		entityManager.flush();
 		
-		boolean existsByIsbn = bookRepository.existsByIsbn(isbn);
-		
-		assertThat(existsByIsbn).isTrue();
+		assertThatSql(sqlRecorder, () -> {
+			boolean existsByIsbn = bookRepository.existsByIsbn(isbn);
+			
+			assertThat(existsByIsbn).isTrue();
+		}).hasSelects(1).hasNoWrites();
 	}
 
 	private Book createNewBook(String isbn) {
@@ -53,9 +76,11 @@ public class BookRepositoryTest {
 		
 		String isbn = "123";
 		
-		boolean existsByIsbn = bookRepository.existsByIsbn(isbn);
-		
-		assertThat(existsByIsbn).isFalse();
+		assertThatSql(sqlRecorder, () -> {
+			boolean existsByIsbn = bookRepository.existsByIsbn(isbn);
+			
+			assertThat(existsByIsbn).isFalse();
+		}).hasSelects(1).hasNoWrites();
 	}
 	
 	@Test
@@ -64,20 +89,72 @@ public class BookRepositoryTest {
 		
 		Book book = createNewBook("111");
 		entityManager.persist(book);
+		entityManager.flush();
+		entityManager.clear();
 		
-		Optional<Book> optBook = bookRepository.findById(book.getId());
-
-		assertThat(optBook.isPresent()).isTrue();
-		assertThat(optBook.get().getId()).isEqualTo(book.getId());
+		assertThatSql(sqlRecorder, () -> {
+			Optional<Book> optBook = bookRepository.findById(book.getId());
+	
+			assertThat(optBook.isPresent()).isTrue();
+			assertThat(optBook.get().getId()).isEqualTo(book.getId());
+		}).hasSelects(1).hasNoWrites();
 	}
 	
 	@Test
 	@DisplayName("Deve salvar um livro")
 	void saveBookTest() throws Exception {
 		Book book = createNewBook("123");
-		Book savedBook = bookRepository.save(book);
+		entityManager.persist(createNewBook("456"));
+		entityManager.flush();
+		
+		assertThatSql(sqlRecorder, () -> {
+			Book savedBook = bookRepository.save(book);
+			entityManager.flush();
+			
+			assertThat(savedBook.getId()).isNotNull();
+		}).hasSelects(0).hasInserts(1).hasSequenceCallsAtMost(1);
+	}
+	
+	@Test
+	@DisplayName("Não deve permitir dois livros com o mesmo isbn")
+	void uniqueIsbnTest() throws Exception {
+		entityManager.persist(createNewBook("123"));
+		
+		Throwable exception = catchThrowable(() -> bookRepository.saveAndFlush(createNewBook("123")));
+		
+		assertThat(exception).isInstanceOf(DataIntegrityViolationException.class);
+	}
+	
+	@Test
+	@DisplayName("Deve retornar os isbns já utilizados dentre os informados")
+	void findIsbnByIsbnInTest() throws Exception {
+		entityManager.persist(createNewBook("123"));
+		entityManager.persist(createNewBook("456"));
+		entityManager.flush();
+		
+		assertThatSql(sqlRecorder, () -> {
+			List<String> usedIsbns = bookRepository.findIsbnByIsbnIn(Arrays.asList("123", "789"));
+			
+			assertThat(usedIsbns).containsExactly("123");
+		}).hasSelects(1).hasNoWrites();
+	}
+	
+	@Test
+	@DisplayName("Deve filtrar livros sem contar o total e contar separadamente")
+	void findSliceByFilterTest() throws Exception {
+		entityManager.persist(Book.builder().title("Clean Code").author("Robert Martin").isbn("111").build());
+		entityManager.persist(Book.builder().title("Clean Architecture").author("Robert Martin").isbn("222").build());
+		entityManager.persist(Book.builder().title("Refactoring").author("Martin Fowler").isbn("333").build());
+		entityManager.flush();
 		
-		assertThat(savedBook.getId()).isNotNull();
+		assertThatSql(sqlRecorder, () -> {
+			Slice<BookView> slice = bookRepository.findSliceByFilter(null, "%clean%", "%martin%", null, PageRequest.of(0, 1, Sort.by("title")));
+			
+			assertThat(slice.getContent()).extracting(BookView::getTitle).containsExactly("Clean Architecture");
+			assertThat(slice.hasNext()).isTrue();
+			assertThat(bookRepository.countByFilter(null, "%clean%", "%martin%", null)).isEqualTo(2);
+			assertThat(bookRepository.countByFilter(null, null, "%martin%", null)).isEqualTo(3);
+		}).hasSelects(3).hasNoWrites();
 	}
 	
 	@Test
@@ -86,12 +163,203 @@ public class BookRepositoryTest {
 		
 		Book book = createNewBook("123");
 		entityManager.persist(book);
-		book = entityManager.find(Book.class, book.getId());
+		Book managedBook = entityManager.find(Book.class, book.getId());
+		entityManager.flush();
 	
-		bookRepository.delete(book);
+		assertThatSql(sqlRecorder, () -> {
+			bookRepository.delete(managedBook);
+			entityManager.flush();
+		}).hasSelects(0).hasDeletes(1);
 		
 		book = entityManager.find(Book.class, book.getId());
 		
 		assertThat(book).isNull();
 	}
+	
+	@Test
+	@DisplayName("Deve marcar o livro como emprestado apenas quando não houver empréstimo em aberto")
+	void markLoaned() throws Exception {
+		
+		Book book = entityManager.persist(createNewBook("123"));
+		entityManager.flush();
+		
+		assertThatSql(sqlRecorder, () -> {
+			assertThat(bookRepository.markLoaned(book.getId(), 10l)).isEqualTo(1);
+			assertThat(bookRepository.markLoaned(book.getId(), 10l)).isEqualTo(1);
+			assertThat(bookRepository.markLoaned(book.getId(), 11l)).isEqualTo(0);
+			assertThat(bookRepository.markReturned(11l)).isEqualTo(0);
+			assertThat(bookRepository.markReturned(10l)).isEqualTo(1);
+			assertThat(bookRepository.markLoaned(book.getId(), 11l)).isEqualTo(1);
+		}).hasSelects(0).hasUpdates(6);
+		
+		entityManager.clear();
+		assertThat(entityManager.find(Book.class, book.getId()).getActiveLoanId()).isEqualTo(11l);
+		assertThatSql(sqlRecorder, () -> assertThat(bookRepository.findVersionById(book.getId())).contains(book.getVersion() + 4))
+			.hasSelects(1).hasNoWrites();
+	}
+	
+	@Test
+	@DisplayName("Não deve alterar o empréstimo em aberto ao salvar o livro")
+	void saveKeepsActiveLoan() throws Exception {
+		
+		Book book = entityManager.persist(createNewBook("123"));
+		bookRepository.markLoaned(book.getId(), 10l);
+		
+		entityManager.clear();
+		book = entityManager.find(Book.class, book.getId());
+		book.setTitle("Clean Architecture");
+		Book managedBook = book;
+		assertThatSql(sqlRecorder, () -> bookRepository.saveAndFlush(managedBook)).hasSelects(0).hasUpdates(1);
+		
+		entityManager.clear();
+		assertThat(entityManager.find(Book.class, book.getId()).getActiveLoanId()).isEqualTo(10l);
+	}
+	
+	@Test
+	@DisplayName("Deve alterar título e autor apenas na versão informada")
+	void updateTitleAndAuthor() throws Exception {
+		
+		Book book = entityManager.persist(createNewBook("123"));
+		Long version = book.getVersion();
+		entityManager.flush();
+		
+		assertThatSql(sqlRecorder, () -> {
+			assertThat(bookRepository.updateTitleAndAuthor(book.getId(), "Clean Architecture", "Uncle Bob", version + 1)).isEqualTo(0);
+			assertThat(bookRepository.updateTitleAndAuthor(book.getId(), "Clean Architecture", "Uncle Bob", version)).isEqualTo(1);
+			assertThat(bookRepository.updateTitleAndAuthor(book.getId() + 1, "Clean Architecture", "Uncle Bob", null)).isEqualTo(0);
+		}).hasSelects(0).hasUpdates(3);
+		
+		entityManager.clear();
+		Book updated = entityManager.find(Book.class, book.getId());
+		assertThat(updated.getTitle()).isEqualTo("Clean Architecture");
+		assertThat(updated.getAuthor()).isEqualTo("Uncle Bob");
+		assertThat(updated.getIsbn()).isEqualTo("123");
+		assertThat(updated.getVersion()).isEqualTo(version + 1);
+	}
+	
+	@Test
+	@DisplayName("Deve excluir o livro apenas na versão informada")
+	void deleteByIdAndVersion() throws Exception {
+		
+		Book book = entityManager.persist(createNewBook("123"));
+		entityManager.flush();
+		
+		assertThatSql(sqlRecorder, () -> {
+			assertThat(bookRepository.deleteByIdAndVersion(book.getId(), book.getVersion() + 1)).isEqualTo(0);
+			assertThat(bookRepository.deleteByIdAndVersion(book.getId(), book.getVersion())).isEqualTo(1);
+		}).hasSelects(0).hasDeletes(2);
+		
+		entityManager.clear();
+		assertThat(entityManager.find(Book.class, book.getId())).isNull();
+	}
+	
+	@Test
+	@DisplayName("Deve desfazer a devolução apenas quando o livro não estiver com outro empréstimo")
+	void markReopened() throws Exception {
+		
+		Book book = entityManager.persist(createNewBook("123"));
+		Loan returned = entityManager.persist(Loan.builder().book(book).customer("Renato").loanDate(LocalDate.now()).returned(true).build());
+		Loan active = entityManager.persist(Loan.builder().book(book).customer("Fulano").loanDate(LocalDate.now()).build());
+		entityManager.flush();
+		
+		assertThatSql(sqlRecorder, () -> {
+			assertThat(bookRepository.markLoaned(book.getId(), active.getId())).isEqualTo(1);
+			assertThat(bookRepository.markReopened(returned.getId())).isEqualTo(0);
+			
+			assertThat(bookRepository.markReturned(active.getId())).isEqualTo(1);
+			assertThat(bookRepository.markReopened(returned.getId())).isEqualTo(1);
+		}).hasSelects(0).hasUpdates(4);
+		
+		entityManager.clear();
+		assertThat(entityManager.find(Book.class, book.getId()).getActiveLoanId()).isEqualTo(returned.getId());
+	}
+	
+	@Test
+	@DisplayName("Deve desfazer em lote as devoluções apenas dos livros sem outro empréstimo")
+	void markReopenedBatch() throws Exception {
+		
+		Book available = entityManager.persist(createNewBook("123"));
+		Book loaned = entityManager.persist(createNewBook("456"));
+		Loan first = entityManager.persist(Loan.builder().book(available).customer("Renato").loanDate(LocalDate.now()).returned(true).build());
+		Loan second = entityManager.persist(Loan.builder().book(loaned).customer("Renato").loanDate(LocalDate.now()).returned(true).build());
+		entityManager.flush();
+		assertThat(bookRepository.markLoaned(loaned.getId(), 99l)).isEqualTo(1);
+		
+		assertThatSql(sqlRecorder, () -> {
+			assertThat(bookRepository.markReopenedByLoanIdIn(Arrays.asList(first.getId(), second.getId()))).isEqualTo(1);
+			assertThat(bookRepository.findActiveLoanIdsIn(Arrays.asList(first.getId(), second.getId()))).containsExactly(first.getId());
+		}).hasSelects(1).hasUpdates(1);
+		
+		entityManager.clear();
+		assertThat(entityManager.find(Book.class, available.getId()).getActiveLoanId()).isEqualTo(first.getId());
+		assertThat(entityManager.find(Book.class, loaned.getId()).getActiveLoanId()).isEqualTo(99l);
+	}
+	
+	@Test
+	@DisplayName("Deve marcar em lote os livros dos empréstimos, apenas os que estiverem disponíveis")
+	void markLoanedBatch() throws Exception {
+		
+		Book available = entityManager.persist(createNewBook("123"));
+		Book loaned = entityManager.persist(createNewBook("456"));
+		Loan first = entityManager.persist(Loan.builder().book(available).customer("Renato").loanDate(LocalDate.now()).build());
+		Loan second = entityManager.persist(Loan.builder().book(loaned).customer("Renato").loanDate(LocalDate.now()).build());
+		assertThat(bookRepository.markLoaned(loaned.getId(), 99l)).isEqualTo(1);
+		
+		assertThatSql(sqlRecorder, () -> {
+			assertThat(bookRepository.findAvailableIdsByIdIn(Arrays.asList(available.getId(), loaned.getId()))).containsExactly(available.getId());
+			assertThat(bookRepository.markLoanedByLoanIdIn(Arrays.asList(first.getId(), second.getId()))).isEqualTo(1);
+		}).hasSelects(1).hasUpdates(1);
+		
+		entityManager.clear();
+		assertThat(entityManager.find(Book.class, available.getId()).getActiveLoanId()).isEqualTo(first.getId());
+		assertThat(entityManager.find(Book.class, loaned.getId()).getActiveLoanId()).isEqualTo(99l);
+		
+		assertThatSql(sqlRecorder, () -> {
+			assertThat(bookRepository.markReturnedByLoanIdIn(Arrays.asList(first.getId(), 99l))).isEqualTo(2);
+			assertThat(bookRepository.findAvailableIdsByIdIn(Arrays.asList(available.getId(), loaned.getId())))
+									 .containsExactlyInAnyOrder(available.getId(), loaned.getId());
+		}).hasSelects(1).hasUpdates(1);
+	}
+	
+	@Test
+	@DisplayName("Deve buscar os livros por isbn e por id com um único comando por consulta")
+	void findByIsbnAndIds() throws Exception {
+		
+		Book cleanCode = entityManager.persist(createNewBook("123"));
+		Book refactoring = entityManager.persist(createNewBook("456"));
+		entityManager.flush();
+		entityManager.clear();
+		
+		assertThatSql(sqlRecorder, () -> {
+			assertThat(bookRepository.findByIsbn("123")).map(Book::getId).contains(cleanCode.getId());
+			assertThat(bookRepository.findIdByIsbn("456")).contains(refactoring.getId());
+			assertThat(bookRepository.findIdByIsbnIn(Arrays.asList("123", "789"))).extracting(BookIsbnView::getId).containsExactly(cleanCode.getId());
+			assertThat(bookRepository.findViewsByIdIn(Arrays.asList(cleanCode.getId(), refactoring.getId())))
+									 .extracting(BookView::getIsbn).containsExactlyInAnyOrder("123", "456");
+			assertThat(bookRepository.findAfter(cleanCode.getId(), null, null, null, null, PageRequest.of(0, 10)).getContent())
+									 .extracting(BookView::getId).containsExactly(refactoring.getId());
+		}).hasSelects(5).hasNoWrites();
+	}
+	
+	@Test
+	@DisplayName("Deve percorrer todos os livros com um único comando")
+	void streamAll() throws Exception {
+		
+		entityManager.persist(createNewBook("123"));
+		entityManager.persist(createNewBook("456"));
+		entityManager.flush();
+		entityManager.clear();
+		
+		assertThatSql(sqlRecorder, () -> {
+			try (Stream<Book> books = bookRepository.streamAll()) {
+				assertThat(books.map(Book::getIsbn).collect(Collectors.toList())).containsExactly("123", "456");
+			}
+		}).hasSelects(1).hasNoWrites();
+		
+		assertThatSql(sqlRecorder, () -> {
+			try (Stream<BookView> books = bookRepository.streamAllViews()) {
+				assertThat(books.map(BookView::getIsbn).collect(Collectors.toList())).containsExactlyInAnyOrder("123", "456");
+			}
+		}).hasSelects(1).hasNoWrites();
+	}
 }
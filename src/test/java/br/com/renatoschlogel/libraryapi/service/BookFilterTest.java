@@ -0,0 +1,80 @@
+package br.com.renatoschlogel.libraryapi.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
+import org.springframework.test.context.ActiveProfiles;
+
+import br.com.renatoschlogel.libraryapi.model.entity.Book;
+
+/**
+ * O mesmo filtro pelos dois caminhos do {@link BookService#find}: o índice em memória, sem ordenação,
+ * e o banco, com ordenação.
+ */
+@SpringBootTest
+@ActiveProfiles("test")
+public class BookFilterTest {
+
+	private static final PageRequest UNSORTED = PageRequest.of(0, 10);
+	private static final PageRequest SORTED = PageRequest.of(0, 10, Sort.by("title"));
+
+	@Autowired
+	BookService bookService;
+
+	private final List<Book> books = new ArrayList<>();
+
+	@BeforeEach
+	public void setUp() {
+		books.add(bookService.incluir(Book.builder().title("Clean Code").author("Robert Martin").isbn("filtro-1").build()));
+		books.add(bookService.incluir(Book.builder().title("Unclean Architecture").author("Fulano").isbn("filtro-2").build()));
+		books.add(bookService.incluir(Book.builder().title("Código Limpo").author("Ciclano").isbn("filtro-3").build()));
+	}
+
+	@AfterEach
+	public void tearDown() {
+		books.forEach(book -> bookService.delete(book.getId(), null));
+	}
+
+	@Test
+	@DisplayName("Deve casar o termo com o início das palavras no índice e com qualquer trecho no banco")
+	void prefixInIndexAndSubstringInDatabase() throws Exception {
+		Book filter = Book.builder().title("clean").build();
+
+		assertThat(titles(filter, UNSORTED)).containsExactly("Clean Code");
+		assertThat(titles(filter, SORTED)).containsExactly("Clean Code", "Unclean Architecture");
+	}
+
+	@Test
+	@DisplayName("Deve casar o termo curto só com a palavra inteira no índice e com qualquer trecho no banco")
+	void shortTermInIndexAndDatabase() throws Exception {
+		Book filter = Book.builder().title("co").build();
+
+		assertThat(titles(filter, UNSORTED)).isEmpty();
+		assertThat(titles(filter, SORTED)).containsExactly("Clean Code");
+	}
+
+	@Test
+	@DisplayName("Deve ignorar acentos apenas no índice")
+	void accentsOnlyInIndex() throws Exception {
+		Book filter = Book.builder().title("codigo").build();
+
+		assertThat(titles(filter, UNSORTED)).containsExactly("Código Limpo");
+		assertThat(titles(filter, SORTED)).isEmpty();
+	}
+
+	private List<String> titles(Book filter, PageRequest pageRequest) {
+		List<String> titles = new ArrayList<>();
+		bookService.find(filter, pageRequest).forEach(view -> titles.add(view.getTitle()));
+		return titles;
+	}
+}
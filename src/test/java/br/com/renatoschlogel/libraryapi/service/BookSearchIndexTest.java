@@ -0,0 +1,108 @@
+package br.com.renatoschlogel.libraryapi.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import br.com.renatoschlogel.libraryapi.service.impl.BookSearchIndex;
+
+public class BookSearchIndexTest {
+
+	BookSearchIndex bookSearchIndex;
+	
+	@BeforeEach
+	public void setUp() {
+		bookSearchIndex = new BookSearchIndex();
+		bookSearchIndex.index(1l, "Memórias Póstumas de Brás Cubas", "Machado de Assis", "978-85-359-0277-5");
+		bookSearchIndex.index(2l, "Dom Casmurro", "Machado de Assis", "978-85-7232-0");
+		bookSearchIndex.index(3l, "Clean Code", "Robert C. Martin", "0132350882");
+		bookSearchIndex.markLoaded();
+	}
+	
+	@Test
+	@DisplayName("Deve encontrar livros ignorando acentos e maiúsculas")
+	void searchIgnoringAccentsAndCase() throws Exception {
+		assertThat(bookSearchIndex.search("MEMORIAS postumas", null, null)).containsExactly(1l);
+		assertThat(bookSearchIndex.search(null, "machado", null)).containsExactly(1l, 2l);
+	}
+	
+	@Test
+	@DisplayName("Deve exigir que todos os campos informados casem")
+	void searchAllFields() throws Exception {
+		assertThat(bookSearchIndex.search("dom", "assis", null)).containsExactly(2l);
+		assertThat(bookSearchIndex.search("dom", "martin", null)).isEmpty();
+	}
+	
+	@Test
+	@DisplayName("Deve encontrar pelo prefixo dos termos e do isbn")
+	void searchByPrefix() throws Exception {
+		assertThat(bookSearchIndex.search("cle", null, null)).containsExactly(3l);
+		assertThat(bookSearchIndex.search(null, null, "97885")).containsExactly(1l, 2l);
+		assertThat(bookSearchIndex.search(null, null, "978-85-359")).containsExactly(1l);
+	}
+	
+	@Test
+	@DisplayName("Não deve casar por prefixo termos curtos demais")
+	void searchShortTermsOnlyExact() throws Exception {
+		assertThat(bookSearchIndex.search("cl", null, null)).isEmpty();
+		assertThat(bookSearchIndex.search(null, "c", null)).containsExactly(3l);
+		assertThat(bookSearchIndex.search("de", null, null)).containsExactly(1l);
+	}
+	
+	@Test
+	@DisplayName("Deve devolver apenas a página pedida com o total de livros encontrados")
+	void searchPage() throws Exception {
+		bookSearchIndex.index(4l, "Domain-Driven Design", "Eric Evans", "0321125215");
+		bookSearchIndex.index(5l, "Dom Quixote", "Miguel de Cervantes", "978-85-359-0001-6");
+		
+		BookSearchIndex.Hits firstPage = bookSearchIndex.search("dom", null, null, 0, 2);
+		BookSearchIndex.Hits lastPage = bookSearchIndex.search("dom", null, null, 2, 2);
+		
+		assertThat(firstPage.getIds()).containsExactly(2l, 5l);
+		assertThat(firstPage.getTotal()).isEqualTo(3);
+		assertThat(lastPage.getIds()).containsExactly(4l);
+		assertThat(bookSearchIndex.search("dom", null, null, 3, 2).getIds()).isEmpty();
+	}
+	
+	@Test
+	@DisplayName("Deve devolver os livros encontrados após o id informado, em ordem de id")
+	void searchAfter() throws Exception {
+		bookSearchIndex.index(4l, "Domain-Driven Design", "Eric Evans", "0321125215");
+		bookSearchIndex.index(5l, "Dom Quixote", "Miguel de Cervantes", "978-85-359-0001-6");
+		
+		assertThat(bookSearchIndex.searchAfter("dom", null, null, 0, 2)).containsExactly(2l, 4l);
+		assertThat(bookSearchIndex.searchAfter("dom", null, null, 4, 2)).containsExactly(5l);
+		assertThat(bookSearchIndex.searchAfter("dom", "miguel", null, 0, 10)).containsExactly(5l);
+	}
+	
+	@Test
+	@DisplayName("Deve ordenar os casamentos exatos antes dos casamentos por prefixo")
+	void rankExactMatchesFirst() throws Exception {
+		bookSearchIndex.index(4l, "Domain-Driven Design", "Eric Evans", "0321125215");
+		
+		assertThat(bookSearchIndex.search("dom", null, null)).containsExactly(2l, 4l);
+	}
+	
+	@Test
+	@DisplayName("Deve refletir alterações e remoções de livros")
+	void updateAndRemove() throws Exception {
+		bookSearchIndex.index(2l, "Quincas Borba", "Machado de Assis", "978-85-7232-0");
+		bookSearchIndex.remove(1l);
+		
+		assertThat(bookSearchIndex.search("dom", null, null)).isEmpty();
+		assertThat(bookSearchIndex.search("quincas", null, null)).containsExactly(2l);
+		assertThat(bookSearchIndex.search(null, "machado", null)).containsExactly(2l);
+	}
+	
+	@Test
+	@DisplayName("Não deve pesquisar pelo índice antes da carga ou sem filtro de texto")
+	void canSearch() throws Exception {
+		assertThat(bookSearchIndex.canSearch(null, null, null)).isFalse();
+		assertThat(bookSearchIndex.canSearch(" ", null, null)).isFalse();
+		assertThat(bookSearchIndex.canSearch("!!", null, null)).isFalse();
+		assertThat(bookSearchIndex.canSearch("dom", null, null)).isTrue();
+		assertThat(new BookSearchIndex().canSearch("dom", null, null)).isFalse();
+	}
+}
@@ -0,0 +1,70 @@
+package br.com.renatoschlogel.libraryapi.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.transaction.support.TransactionOperations;
+
+import br.com.renatoschlogel.libraryapi.service.impl.CheckoutCoordinator;
+
+public class CheckoutCoordinatorTest {
+
+	private final CheckoutCoordinator checkoutCoordinator = new CheckoutCoordinator(16, TransactionOperations.withoutTransaction());
+	
+	private final ExecutorService executor = Executors.newFixedThreadPool(8);
+	
+	@AfterEach
+	public void tearDown() {
+		executor.shutdownNow();
+	}
+	
+	@Test
+	@DisplayName("Deve serializar as operações de um mesmo livro")
+	void serializeSameBook() throws Exception {
+		int[] counter = new int[1];
+		
+		List<Future<?>> futures = new ArrayList<>();
+		for (int i = 0; i < 8; i++) {
+			futures.add(executor.submit(() -> {
+				for (int j = 0; j < 10_000; j++) {
+					checkoutCoordinator.execute(1l, () -> counter[0]++);
+				}
+			}));
+		}
+		for (Future<?> future : futures) {
+			future.get(30, TimeUnit.SECONDS);
+		}
+		
+		assertThat(counter[0]).isEqualTo(80_000);
+	}
+	
+	@Test
+	@DisplayName("Deve executar em paralelo as operações de livros diferentes")
+	void runDifferentBooksInParallel() throws Exception {
+		CyclicBarrier bothInside = new CyclicBarrier(2);
+		
+		Future<Integer> first = executor.submit(() -> checkoutCoordinator.execute(1l, () -> await(bothInside)));
+		Future<Integer> second = executor.submit(() -> checkoutCoordinator.execute(2l, () -> await(bothInside)));
+		
+		assertThat(first.get(10, TimeUnit.SECONDS)).isNotNegative();
+		assertThat(second.get(10, TimeUnit.SECONDS)).isNotNegative();
+	}
+	
+	private int await(CyclicBarrier barrier) {
+		try {
+			return barrier.await(5, TimeUnit.SECONDS);
+		} catch (Exception e) {
+			throw new IllegalStateException(e);
+		}
+	}
+}
@@ -0,0 +1,159 @@
+package br.com.renatoschlogel.libraryapi.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import javax.mail.internet.MimeMessage;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.RegisterExtension;
+import org.mockito.Mockito;
+import org.springframework.mail.MailSendException;
+import org.springframework.mail.SimpleMailMessage;
+import org.springframework.mail.javamail.JavaMailSender;
+import org.springframework.mail.javamail.JavaMailSenderImpl;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.icegreen.greenmail.junit5.GreenMailExtension;
+import com.icegreen.greenmail.util.ServerSetupTest;
+
+import br.com.renatoschlogel.libraryapi.service.impl.EmailServiceImpl;
+import br.com.renatoschlogel.libraryapi.service.impl.MailDispatcher;
+
+public class EmailServiceTest {
+
+	@RegisterExtension
+	static GreenMailExtension greenMail = new GreenMailExtension(ServerSetupTest.SMTP);
+	
+	private MailDispatcher mailDispatcher;
+	
+	@AfterEach
+	public void tearDown() throws Exception {
+		if (mailDispatcher != null) {
+			mailDispatcher.stop();
+		}
+	}
+	
+	@Test
+	@DisplayName("Deve enviar uma mensagem personalizada para cada destinatário")
+	void sendPersonalizedMails() throws Exception {
+		JavaMailSenderImpl javaMailSender = new JavaMailSenderImpl();
+		javaMailSender.setHost(ServerSetupTest.SMTP.getBindAddress());
+		javaMailSender.setPort(ServerSetupTest.SMTP.getPort());
+		javaMailSender.setDefaultEncoding("UTF-8");
+		
+		EmailService emailService = emailService(javaMailSender);
+		emailService.sendMails("Olá {customer}, devolva o livro do empréstimo {loan}.", Arrays.asList(
+				recipient("ana@email.com", "Ana", "1"),
+				recipient("bruno@email.com", "Bruno", "2"),
+				recipient(null, "Sem E-mail", "3"),
+				recipient("carla@email.com", "Carla", "4")));
+		
+		assertThat(greenMail.waitForIncomingEmail(5000, 3)).isTrue();
+		
+		MimeMessage[] messages = greenMail.getReceivedMessages();
+		assertThat(messages).hasSize(3);
+		
+		Map<String, String> bodiesByRecipient = new LinkedHashMap<>();
+		for (MimeMessage message : messages) {
+			assertThat(message.getAllRecipients()).hasSize(1);
+			assertThat(message.getSubject()).isEqualTo("Livro em atraso");
+			bodiesByRecipient.put(message.getAllRecipients()[0].toString(), ((String) message.getContent()).trim());
+		}
+		
+		assertThat(bodiesByRecipient).containsEntry("ana@email.com", "Olá Ana, devolva o livro do empréstimo 1.")
+									 .containsEntry("bruno@email.com", "Olá Bruno, devolva o livro do empréstimo 2.")
+									 .containsEntry("carla@email.com", "Olá Carla, devolva o livro do empréstimo 4.");
+	}
+	
+	@Test
+	@DisplayName("Deve reenviar apenas as mensagens que falharam")
+	void retryFailedMails() throws Exception {
+		JavaMailSender javaMailSender = Mockito.mock(JavaMailSender.class);
+		List<List<String>> attempts = Collections.synchronizedList(new ArrayList<>());
+		CountDownLatch retried = new CountDownLatch(2);
+		
+		Mockito.doAnswer(invocation -> {
+			SimpleMailMessage[] messages = Stream.of(invocation.getArguments()).toArray(SimpleMailMessage[]::new);
+			attempts.add(Stream.of(messages).map(message -> message.getTo()[0]).collect(Collectors.toList()));
+			retried.countDown();
+			
+			if (attempts.size() == 1) {
+				Map<Object, Exception> failedMessages = new LinkedHashMap<>();
+				failedMessages.put(messages[1], new RuntimeException("Mailbox unavailable"));
+				throw new MailSendException(failedMessages);
+			}
+			return null;
+		}).when(javaMailSender).send(Mockito.<SimpleMailMessage[]>any());
+		
+		mailDispatcher = new MailDispatcher(javaMailSender, 10, 1, 10, 1000, 3, Duration.ofMillis(10), Duration.ofSeconds(5));
+		EmailServiceImpl emailService = new EmailServiceImpl(mailDispatcher);
+		ReflectionTestUtils.setField(emailService, "remetent", "mail@library-api.com");
+		
+		emailService.sendMails("Atraso", Arrays.asList(recipient("ana@email.com", "Ana", "1"), recipient("bruno@email.com", "Bruno", "2")));
+		mailDispatcher.start();
+		
+		assertThat(retried.await(5, TimeUnit.SECONDS)).isTrue();
+		assertThat(attempts.get(0)).containsExactly("ana@email.com", "bruno@email.com");
+		assertThat(attempts.get(1)).containsExactly("bruno@email.com");
+	}
+	
+	@Test
+	@DisplayName("Deve confirmar apenas os destinatários cujas mensagens foram aceitas pelo servidor")
+	void confirmSentMails() throws Exception {
+		JavaMailSender javaMailSender = Mockito.mock(JavaMailSender.class);
+		Mockito.doAnswer(invocation -> {
+			SimpleMailMessage[] messages = Stream.of(invocation.getArguments()).toArray(SimpleMailMessage[]::new);
+			Map<Object, Exception> failedMessages = new LinkedHashMap<>();
+			Stream.of(messages)
+				  .filter(message -> message.getTo()[0].startsWith("bruno"))
+				  .forEach(message -> failedMessages.put(message, new RuntimeException("Mailbox unavailable")));
+			if (!failedMessages.isEmpty()) {
+				throw new MailSendException(failedMessages);
+			}
+			return null;
+		}).when(javaMailSender).send(Mockito.<SimpleMailMessage[]>any());
+		
+		mailDispatcher = new MailDispatcher(javaMailSender, 10, 1, 10, 1000, 2, Duration.ofMillis(10), Duration.ofSeconds(5));
+		EmailServiceImpl emailService = new EmailServiceImpl(mailDispatcher);
+		ReflectionTestUtils.setField(emailService, "remetent", "mail@library-api.com");
+		List<String> confirmed = Collections.synchronizedList(new ArrayList<>());
+		
+		emailService.sendMails("Atraso", Arrays.asList(recipient("ana@email.com", "Ana", "1"), recipient("bruno@email.com", "Bruno", "2")), 
+							   recipient -> confirmed.add(recipient.getEmail()));
+		mailDispatcher.start();
+		mailDispatcher.stop();
+		
+		assertThat(confirmed).containsExactly("ana@email.com");
+		Mockito.verify(javaMailSender, Mockito.times(2)).send(Mockito.<SimpleMailMessage[]>any());
+	}
+	
+	private EmailService emailService(JavaMailSender javaMailSender) {
+		mailDispatcher = new MailDispatcher(javaMailSender, 10, 2, 10, 1000, 3, Duration.ofMillis(10), Duration.ofSeconds(5));
+		mailDispatcher.start();
+		
+		EmailServiceImpl emailService = new EmailServiceImpl(mailDispatcher);
+		ReflectionTestUtils.setField(emailService, "remetent", "mail@library-api.com");
+		return emailService;
+	}
+	
+	private MailRecipient recipient(String email, String customer, String loan) {
+		Map<String, String> variables = new LinkedHashMap<>();
+		variables.put("customer", customer);
+		variables.put("loan", loan);
+		return new MailRecipient(email, variables);
+	}
+}
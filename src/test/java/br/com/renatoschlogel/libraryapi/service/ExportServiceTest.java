@@ -0,0 +1,87 @@
+package br.com.renatoschlogel.libraryapi.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+
+import br.com.renatoschlogel.libraryapi.api.dto.ImportResultDTO;
+import br.com.renatoschlogel.libraryapi.model.entity.Book;
+import br.com.renatoschlogel.libraryapi.model.entity.Loan;
+import br.com.renatoschlogel.libraryapi.model.repository.BookRepository;
+import br.com.renatoschlogel.libraryapi.model.repository.LoanRepository;
+
+@SpringBootTest
+@ActiveProfiles("test")
+public class ExportServiceTest {
+
+	@Autowired
+	ExportService exportService;
+	
+	@Autowired
+	ImportService importService;
+	
+	@Autowired
+	BookRepository bookRepository;
+	
+	@Autowired
+	LoanRepository loanRepository;
+	
+	@BeforeEach
+	public void setUp() {
+		Book book = bookRepository.save(Book.builder().title("Refactoring, 2nd").author("Martin \"Fowler\"").isbn("123").build());
+		loanRepository.save(Loan.builder().book(book).customer("Renato").customerEmail("renato@email.com")
+										  .loanDate(LocalDate.of(2020, 1, 1)).returned(true).build());
+	}
+	
+	@AfterEach
+	public void tearDown() {
+		loanRepository.deleteAll();
+		bookRepository.deleteAll();
+	}
+	
+	@Test
+	@DisplayName("Deve exportar os livros em CSV")
+	void exportBooksCsv() throws Exception {
+		ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+		
+		exportService.exportBooks(outputStream, DataFormat.CSV);
+		
+		String csv = new String(outputStream.toByteArray(), StandardCharsets.UTF_8);
+		assertThat(csv).startsWith("id,title,author,isbn\n")
+					   .endsWith(",\"Refactoring, 2nd\",\"Martin \"\"Fowler\"\"\",123\n");
+	}
+	
+	@Test
+	@DisplayName("Deve exportar os empréstimos em NDJSON")
+	void exportLoansNdjson() throws Exception {
+		ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+		
+		exportService.exportLoans(outputStream, DataFormat.NDJSON);
+		
+		String ndjson = new String(outputStream.toByteArray(), StandardCharsets.UTF_8);
+		assertThat(ndjson).contains("\"isbn\":\"123\",\"customer\":\"Renato\",\"customerEmail\":\"renato@email.com\",\"loanDate\":\"2020-01-01\",\"returned\":true}\n");
+	}
+	
+	@Test
+	@DisplayName("Deve permitir reimportar os empréstimos exportados")
+	void exportedLoansCanBeImported() throws Exception {
+		ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+		exportService.exportLoans(outputStream, DataFormat.CSV);
+		
+		ImportResultDTO result = importService.importLoans(new ByteArrayInputStream(outputStream.toByteArray()), DataFormat.CSV);
+		
+		assertThat(result.getImported()).isEqualTo(1);
+		assertThat(loanRepository.count()).isEqualTo(2);
+	}
+}
@@ -0,0 +1,157 @@
+package br.com.renatoschlogel.libraryapi.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.tuple;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+
+import br.com.renatoschlogel.libraryapi.api.dto.ImportResultDTO;
+import br.com.renatoschlogel.libraryapi.model.entity.Book;
+import br.com.renatoschlogel.libraryapi.model.entity.Loan;
+import br.com.renatoschlogel.libraryapi.model.repository.BookRepository;
+import br.com.renatoschlogel.libraryapi.model.repository.LoanRepository;
+
+@SpringBootTest(properties = "application.import.chunk-size=3")
+@ActiveProfiles("test")
+public class ImportServiceTest {
+
+	@Autowired
+	ImportService importService;
+	
+	@Autowired
+	BookRepository bookRepository;
+	
+	@Autowired
+	LoanRepository loanRepository;
+	
+	@AfterEach
+	public void tearDown() {
+		loanRepository.deleteAll();
+		bookRepository.deleteAll();
+	}
+	
+	@Test
+	@DisplayName("Deve importar livros de um CSV em blocos, rejeitando as linhas inválidas")
+	void importBooksFromCsv() throws Exception {
+		String csv = "title,author,isbn\n"
+				   + "Clean Code,Uncle Bob,111\n"
+				   + "\"Refactoring, 2nd\",\"Martin \"\"Fowler\"\"\",222\n"
+				   + "Sem Autor,,333\n"
+				   + "Duplicado,Alguem,111\n"
+				   + "DDD,Evans,444\n"
+				   + "Colunas,a mais,555,x\n";
+		
+		ImportResultDTO result = importService.importBooks(stream(csv), DataFormat.CSV);
+		
+		assertThat(result.getProcessed()).isEqualTo(6);
+		assertThat(result.getImported()).isEqualTo(3);
+		assertThat(result.getRejected()).isEqualTo(3);
+		assertThat(result.getRejections()).extracting("row").containsExactlyInAnyOrder(3L, 4L, 6L);
+		assertThat(bookRepository.findByIsbn("222").map(Book::getAuthor)).hasValue("Martin \"Fowler\"");
+		assertThat(bookRepository.count()).isEqualTo(3);
+	}
+	
+	@Test
+	@DisplayName("Deve importar o histórico de empréstimos de um NDJSON resolvendo os isbns")
+	void importLoansFromNdjson() throws Exception {
+		importService.importBooks(stream("{\"title\":\"Clean Code\",\"author\":\"Uncle Bob\",\"isbn\":\"111\"}\n"), DataFormat.NDJSON);
+		
+		String ndjson = IntStream.range(0, 5)
+								 .mapToObj(i -> "{\"isbn\":\"111\",\"customer\":\"Cliente " + i + "\",\"loanDate\":\"2020-01-0" + (i + 1) + "\",\"returned\":true}")
+								 .collect(Collectors.joining("\n"))
+					  + "\n{\"isbn\":\"111\",\"customer\":\"Ativo\",\"loanDate\":\"2020-02-01\"}"
+					  + "\n{\"isbn\":\"111\",\"customer\":\"Outro\",\"loanDate\":\"2020-02-02\"}"
+					  + "\n{\"isbn\":\"999\",\"customer\":\"Renato\",\"loanDate\":\"2020-01-01\"}"
+					  + "\n{\"isbn\":\"111\",\"customer\":\"Renato\",\"loanDate\":\"ontem\"}"
+					  + "\nnão é json\n";
+		
+		ImportResultDTO result = importService.importLoans(stream(ndjson), DataFormat.NDJSON);
+		
+		assertThat(result.getProcessed()).isEqualTo(10);
+		assertThat(result.getImported()).isEqualTo(6);
+		assertThat(result.getRejected()).isEqualTo(4);
+		assertThat(result.getRejections()).extracting("error").contains("Book already loaned.");
+		assertThat(loanRepository.count()).isEqualTo(6);
+		
+		Long activeLoanId = bookRepository.findByIsbn("111").get().getActiveLoanId();
+		assertThat(loanRepository.findById(activeLoanId).map(Loan::getCustomer)).hasValue("Ativo");
+	}
+	
+	@Test
+	@DisplayName("Deve mudar a versão do livro ao importar empréstimos já devolvidos")
+	void importReturnedLoansChangesBookVersion() throws Exception {
+		importService.importBooks(stream("{\"title\":\"Clean Code\",\"author\":\"Uncle Bob\",\"isbn\":\"111\"}\n"), DataFormat.NDJSON);
+		Long id = bookRepository.findIdByIsbn("111").get();
+		Long version = bookRepository.findVersionById(id).get();
+		
+		importService.importLoans(stream("{\"isbn\":\"111\",\"customer\":\"Renato\",\"loanDate\":\"2020-01-01\",\"returned\":true}\n"), 
+								  DataFormat.NDJSON);
+		
+		assertThat(bookRepository.findVersionById(id)).hasValueSatisfying(newVersion -> assertThat(newVersion).isGreaterThan(version));
+	}
+	
+	@Test
+	@DisplayName("Deve ignorar o BOM do cabeçalho e rejeitar o campo sem fechamento de aspas sem perder as linhas seguintes")
+	void importBooksWithBomAndUnclosedQuote() throws Exception {
+		String unclosed = IntStream.range(0, 10_000).mapToObj(i -> "x").collect(Collectors.joining());
+		String csv = "\uFEFFtitle,author,isbn\n"
+				   + "Clean Code,Uncle Bob,111\n"
+				   + "\"" + unclosed + ",Sem Fechamento,222\n"
+				   + "DDD,Evans,444\n";
+		
+		ImportResultDTO result = importService.importBooks(stream(csv), DataFormat.CSV);
+		
+		assertThat(result.getProcessed()).isEqualTo(3);
+		assertThat(result.getImported()).isEqualTo(2);
+		assertThat(result.getRejections()).extracting("row").containsExactly(2L);
+		assertThat(bookRepository.findByIsbn("111").map(Book::getTitle)).hasValue("Clean Code");
+		assertThat(bookRepository.findByIsbn("444")).isPresent();
+	}
+	
+	@Test
+	@DisplayName("Deve rejeitar o registro de CSV acima do limite de linha mesmo com campos curtos")
+	void importBooksWithOversizedCsvRecord() throws Exception {
+		String commas = IntStream.range(0, 100_000).mapToObj(i -> ",").collect(Collectors.joining());
+		String csv = "title,author,isbn\n"
+				   + "Clean Code,Uncle Bob,111\n"
+				   + commas + "\n"
+				   + "DDD,Evans,444\n";
+		
+		ImportResultDTO result = importService.importBooks(stream(csv), DataFormat.CSV);
+		
+		assertThat(result.getProcessed()).isEqualTo(3);
+		assertThat(result.getImported()).isEqualTo(2);
+		assertThat(result.getRejections()).extracting("row", "error").containsExactly(tuple(2L, "Linha maior que 65536 caracteres"));
+	}
+	
+	@Test
+	@DisplayName("Deve rejeitar a linha de NDJSON acima do limite e seguir com as demais")
+	void importBooksWithOversizedNdjsonLine() throws Exception {
+		String longTitle = IntStream.range(0, 70_000).mapToObj(i -> "x").collect(Collectors.joining());
+		String ndjson = "\uFEFF{\"title\":\"Clean Code\",\"author\":\"Uncle Bob\",\"isbn\":\"111\"}\n"
+					  + "{\"title\":\"" + longTitle + "\",\"author\":\"Alguem\",\"isbn\":\"222\"}\n"
+					  + "\n"
+					  + "{\"title\":\"DDD\",\"author\":\"Evans\",\"isbn\":\"444\"}";
+		
+		ImportResultDTO result = importService.importBooks(stream(ndjson), DataFormat.NDJSON);
+		
+		assertThat(result.getProcessed()).isEqualTo(3);
+		assertThat(result.getImported()).isEqualTo(2);
+		assertThat(result.getRejections()).extracting("row").containsExactly(2L);
+	}
+	
+	private InputStream stream(String content) {
+		return new ByteArrayInputStream(content.getBytes(StandardCharsets.UTF_8));
+	}
+}
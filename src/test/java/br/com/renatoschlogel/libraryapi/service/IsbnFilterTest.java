@@ -0,0 +1,51 @@
+package br.com.renatoschlogel.libraryapi.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.stream.IntStream;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import br.com.renatoschlogel.libraryapi.service.impl.IsbnFilter;
+
+public class IsbnFilterTest {
+
+	@Test
+	@DisplayName("Deve responder talvez enquanto o filtro não foi carregado")
+	void mightContainBeforeLoad() throws Exception {
+		IsbnFilter isbnFilter = new IsbnFilter(1000, 0.01);
+		
+		assertThat(isbnFilter.mightContain("123")).isTrue();
+	}
+	
+	@Test
+	@DisplayName("Deve reconhecer os isbns carregados e incluídos")
+	void mightContainLoadedAndPutIsbns() throws Exception {
+		IsbnFilter isbnFilter = new IsbnFilter(1000, 0.01);
+		isbnFilter.put("123");
+		isbnFilter.put("456");
+		isbnFilter.markLoaded();
+		isbnFilter.put("789");
+		
+		assertThat(isbnFilter.mightContain("123")).isTrue();
+		assertThat(isbnFilter.mightContain("456")).isTrue();
+		assertThat(isbnFilter.mightContain("789")).isTrue();
+		assertThat(isbnFilter.mightContain("000")).isFalse();
+	}
+	
+	@Test
+	@DisplayName("Deve manter a taxa de falsos positivos próxima da configurada")
+	void falsePositiveRate() throws Exception {
+		IsbnFilter isbnFilter = new IsbnFilter(10000, 0.01);
+		IntStream.range(0, 10000).mapToObj(i -> "978-" + i).forEach(isbnFilter::put);
+		isbnFilter.markLoaded();
+		
+		long falsePositives = IntStream.range(0, 10000)
+									   .mapToObj(i -> "979-" + i)
+									   .filter(isbnFilter::mightContain)
+									   .count();
+		
+		assertThat(falsePositives).isLessThan(300);
+	}
+}
@@ -0,0 +1,106 @@
+package br.com.renatoschlogel.libraryapi.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+
+import br.com.renatoschlogel.libraryapi.exception.BusinessException;
+import br.com.renatoschlogel.libraryapi.model.entity.Book;
+import br.com.renatoschlogel.libraryapi.model.entity.Loan;
+import br.com.renatoschlogel.libraryapi.model.repository.BookRepository;
+import br.com.renatoschlogel.libraryapi.model.repository.LoanRepository;
+
+@SpringBootTest
+@ActiveProfiles("test")
+public class LoanConcurrencyTest {
+
+	private static final int BOOKS = 20;
+	private static final int DESKS = 16;
+	
+	@Autowired
+	LoanService loanService;
+	
+	@Autowired
+	BookRepository bookRepository;
+	
+	@Autowired
+	LoanRepository loanRepository;
+	
+	@AfterEach
+	public void tearDown() {
+		loanRepository.deleteAll();
+		bookRepository.deleteAll();
+	}
+	
+	@Test
+	@DisplayName("Não deve emprestar o mesmo livro duas vezes com vários balcões emprestando ao mesmo tempo")
+	void noDoubleLoansUnderContention() throws Exception {
+		List<Book> books = bookRepository.saveAll(IntStream.range(0, BOOKS)
+														   .mapToObj(i -> Book.builder().title("Livro " + i).author("Autor").isbn("isbn-" + i).build())
+														   .collect(Collectors.toList()));
+		
+		AtomicInteger loaned = new AtomicInteger();
+		AtomicInteger refused = new AtomicInteger();
+		CyclicBarrier start = new CyclicBarrier(DESKS);
+		
+		List<Callable<Void>> desks = new ArrayList<>();
+		for (int desk = 0; desk < DESKS; desk++) {
+			String customer = "Balcão " + desk;
+			desks.add(() -> {
+				List<Book> shuffled = new ArrayList<>(books);
+				Collections.shuffle(shuffled);
+				start.await(10, TimeUnit.SECONDS);
+				
+				for (Book book : shuffled) {
+					try {
+						loanService.save(Loan.builder().book(book).customer(customer).loanDate(LocalDate.now()).build());
+						loaned.incrementAndGet();
+					} catch (BusinessException e) {
+						refused.incrementAndGet();
+					}
+				}
+				return null;
+			});
+		}
+		
+		ExecutorService executor = Executors.newFixedThreadPool(DESKS);
+		try {
+			for (Future<Void> future : executor.invokeAll(desks, 60, TimeUnit.SECONDS)) {
+				future.get();
+			}
+		} finally {
+			executor.shutdownNow();
+		}
+		
+		assertThat(loaned.get()).isEqualTo(BOOKS);
+		assertThat(refused.get()).isEqualTo(BOOKS * (DESKS - 1));
+		
+		List<Loan> loans = loanRepository.findAll();
+		Map<Long, Long> loansByBook = loans.stream().collect(Collectors.groupingBy(loan -> loan.getBook().getId(), Collectors.counting()));
+		assertThat(loans).hasSize(BOOKS);
+		assertThat(loansByBook).hasSize(BOOKS).allSatisfy((book, count) -> assertThat(count).isEqualTo(1));
+		
+		Map<Long, Long> activeLoans = bookRepository.findAll().stream().collect(Collectors.toMap(Book::getId, Book::getActiveLoanId));
+		loans.forEach(loan -> assertThat(activeLoans).containsEntry(loan.getBook().getId(), loan.getId()));
+	}
+}
@@ -11,8 +11,15 @@ import static org.mockito.Mockito.when;
 
 import java.time.LocalDate;
 import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.stream.Collectors;
+import java.util.stream.LongStream;
 
 import org.assertj.core.api.Assertions;
 import org.junit.jupiter.api.BeforeEach;
@@ -20,22 +27,32 @@ import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.AdditionalAnswers;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Mockito;
 import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.dao.OptimisticLockingFailureException;
 import org.springframework.data.domain.Page;
-import org.springframework.data.domain.PageImpl;
 import org.springframework.data.domain.PageRequest;
-import org.springframework.data.domain.Pageable;
+import org.springframework.data.projection.SpelAwareProxyProjectionFactory;
 import org.springframework.test.context.ActiveProfiles;
 import org.springframework.test.context.junit.jupiter.SpringExtension;
+import org.springframework.transaction.support.TransactionOperations;
+
+import com.github.benmanes.caffeine.cache.Caffeine;
 
 import br.com.renatoschlogel.libraryapi.api.dto.LoanFilterDTO;
 import br.com.renatoschlogel.libraryapi.exception.BusinessException;
 import br.com.renatoschlogel.libraryapi.model.entity.Book;
 import br.com.renatoschlogel.libraryapi.model.entity.Loan;
 import br.com.renatoschlogel.libraryapi.model.entity.Loan.LoanBuilder;
+import br.com.renatoschlogel.libraryapi.model.repository.BookRepository;
 import br.com.renatoschlogel.libraryapi.model.repository.LoanRepository;
+import br.com.renatoschlogel.libraryapi.model.repository.LoanView;
+import br.com.renatoschlogel.libraryapi.service.impl.CheckoutCoordinator;
+import br.com.renatoschlogel.libraryapi.service.impl.ListingTotals;
 import br.com.renatoschlogel.libraryapi.service.impl.LoanServiceImpl;
+import br.com.renatoschlogel.libraryapi.service.impl.OverdueLevels;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 
 @ExtendWith(SpringExtension.class)
 @ActiveProfiles("test")
@@ -46,15 +63,23 @@ public class LoanServiceTest {
 	@MockBean
 	private LoanRepository loanRepository;
 	
+	@MockBean
+	private BookRepository bookRepository;
+	
+	private SimpleMeterRegistry meterRegistry;
+	
 	@BeforeEach
 	public void setUp() {
-		loanService = new LoanServiceImpl(loanRepository);
+		meterRegistry = new SimpleMeterRegistry();
+		loanService = new LoanServiceImpl(loanRepository, bookRepository, new ListingTotals(Caffeine.newBuilder().build()), 
+										  new OverdueLevels(4, 10, 30), new CheckoutCoordinator(16, TransactionOperations.withoutTransaction()), 
+										  meterRegistry);
 	}
 
 	@Test
 	@DisplayName("Deve salvar um emprestimo")
 	void saveLoan() throws Exception {
-		Book book = Book.builder().build();
+		Book book = Book.builder().id(1l).build();
 		String custumer = "Renato";
 		Loan loan = Loan.builder().book(book)
 								  .customer(custumer)
@@ -68,12 +93,14 @@ public class LoanServiceTest {
 				  .build();
 		
 		when(loanRepository.save(loan)).thenReturn(loanExpected);
+		when(bookRepository.markLoaned(1l, 1l)).thenReturn(1);
 		
 		Loan loanSalved = loanService.save(loan);
 		
 		assertThat(loan).isNotNull();
 		assertThat(loanSalved.getId()).isEqualTo(1l);
 		assertThat(loanSalved.getBook()).isEqualTo(book);
+		assertThat(loan.getNextNotificationDate()).isEqualTo(LocalDate.now().plusDays(5));
 		
 	}
 	
@@ -86,13 +113,127 @@ public class LoanServiceTest {
 								  .customer(custumer)
 								  .loanDate(LocalDate.now())
 								  .build();
-		when(loanRepository.existsByBookAndNotReturned(book)).thenReturn(true);
+		when(loanRepository.save(loan)).then(AdditionalAnswers.returnsFirstArg());
+		when(bookRepository.markLoaned(any(), any())).thenReturn(0);
 		
 		Throwable exception = catchThrowable(() -> loanService.save(loan));
 		assertThat(exception).isInstanceOf(BusinessException.class)
 							 .hasMessage("Book already loaned.");
 		
-		verify(loanRepository, never()).save(loan);
+		assertThat(meterRegistry.get("library.loans.rejected").tag("reason", "book_already_loaned").counter().count()).isEqualTo(1);
+	}
+	
+	@Test
+	@DisplayName("Deve salvar em lote apenas os empréstimos de livros disponíveis, um por livro")
+	void saveLoanBatch() throws Exception {
+		Loan available = Loan.builder().book(Book.builder().id(1l).build()).customer("Renato").loanDate(LocalDate.now()).build();
+		Loan loaned = Loan.builder().book(Book.builder().id(2l).build()).customer("Renato").loanDate(LocalDate.now()).build();
+		Loan repeated = Loan.builder().book(Book.builder().id(1l).build()).customer("Fulano").loanDate(LocalDate.now()).build();
+		
+		when(bookRepository.findAvailableIdsByIdIn(Arrays.asList(1l, 2l))).thenReturn(Arrays.asList(1l));
+		when(bookRepository.getOne(1l)).thenReturn(Book.builder().id(1l).build());
+		when(loanRepository.saveAll(Mockito.anyList())).thenAnswer(invocation -> {
+			List<Loan> loans = invocation.getArgument(0);
+			loans.get(0).setId(10l);
+			return loans;
+		});
+		when(bookRepository.markLoanedByLoanIdIn(Arrays.asList(10l))).thenReturn(1);
+		
+		List<Loan> loans = loanService.saveBatch(Arrays.asList(available, loaned, repeated));
+		
+		assertThat(loans).extracting(Loan::getId).containsExactly(10l, null, null);
+		assertThat(available.getNextNotificationDate()).isEqualTo(LocalDate.now().plusDays(5));
+		verify(loanRepository).saveAll(Arrays.asList(available));
+		verify(loanRepository, never()).save(any());
+		assertThat(meterRegistry.get("library.loans.rejected").tag("reason", "book_already_loaned").counter().count()).isEqualTo(2);
+	}
+	
+	@Test
+	@DisplayName("Deve consultar e marcar os livros do lote em blocos de até mil ids")
+	void saveLoanBatchInChunks() throws Exception {
+		List<Loan> loans = LongStream.rangeClosed(1, 1500)
+									 .mapToObj(id -> Loan.builder().id(id).book(Book.builder().id(id).build()).build())
+									 .collect(Collectors.toList());
+		
+		when(bookRepository.findAvailableIdsByIdIn(Mockito.anyList())).then(AdditionalAnswers.returnsFirstArg());
+		when(bookRepository.markLoanedByLoanIdIn(Mockito.anyList())).thenAnswer(invocation -> invocation.<List<Long>>getArgument(0).size());
+		
+		loanService.saveBatch(loans);
+		
+		ArgumentCaptor<List<Long>> bookIds = ArgumentCaptor.forClass(List.class);
+		ArgumentCaptor<List<Long>> loanIds = ArgumentCaptor.forClass(List.class);
+		verify(bookRepository, times(2)).findAvailableIdsByIdIn(bookIds.capture());
+		verify(bookRepository, times(2)).markLoanedByLoanIdIn(loanIds.capture());
+		assertThat(bookIds.getAllValues()).extracting(List::size).containsExactly(1000, 500);
+		assertThat(loanIds.getAllValues()).extracting(List::size).containsExactly(1000, 500);
+	}
+	
+	@Test
+	@DisplayName("Deve desfazer o lote quando algum livro for emprestado por outra requisição")
+	void saveLoanBatchConcurrentlyLoaned() throws Exception {
+		Loan first = Loan.builder().id(10l).book(Book.builder().id(1l).build()).build();
+		Loan second = Loan.builder().id(11l).book(Book.builder().id(2l).build()).build();
+		
+		when(bookRepository.findAvailableIdsByIdIn(Arrays.asList(1l, 2l))).thenReturn(Arrays.asList(1l, 2l));
+		when(bookRepository.markLoanedByLoanIdIn(Arrays.asList(10l, 11l))).thenReturn(1);
+		
+		Throwable exception = catchThrowable(() -> loanService.saveBatch(Arrays.asList(first, second)));
+		
+		assertThat(exception).isInstanceOf(BusinessException.class)
+							 .hasMessage("Book already loaned.");
+	}
+	
+	@Test
+	@DisplayName("Deve registrar devoluções em lote, informando os empréstimos recusados")
+	void updateReturnedBooks() throws Exception {
+		Map<Long, Boolean> returnedByLoan = new LinkedHashMap<>();
+		returnedByLoan.put(1l, true);
+		returnedByLoan.put(2l, true);
+		returnedByLoan.put(3l, false);
+		returnedByLoan.put(4l, false);
+		
+		when(loanRepository.findIdsByIdIn(Arrays.asList(1l, 2l, 3l, 4l))).thenReturn(Arrays.asList(1l, 3l, 4l));
+		when(bookRepository.findActiveLoanIdsIn(Arrays.asList(3l, 4l))).thenReturn(Arrays.asList(3l));
+		
+		Map<Long, String> rejected = loanService.updateReturnedBooks(returnedByLoan);
+		
+		assertThat(rejected).containsOnlyKeys(2l, 4l)
+							.containsEntry(2l, "Empréstimo não encontrado.")
+							.containsEntry(4l, "Book already loaned.");
+		verify(loanRepository).updateReturnedByIdIn(Arrays.asList(1l), true);
+		verify(bookRepository).markReturnedByLoanIdIn(Arrays.asList(1l));
+		verify(bookRepository).markReopenedByLoanIdIn(Arrays.asList(3l, 4l));
+		verify(loanRepository).updateReturnedByIdIn(new HashSet<>(Arrays.asList(3l)), false);
+		verify(bookRepository, never()).markReopened(any());
+	}
+	
+	@Test
+	@DisplayName("Deve registrar as devoluções do lote em blocos de até mil ids")
+	void updateReturnedBooksInChunks() throws Exception {
+		Map<Long, Boolean> returnedByLoan = new LinkedHashMap<>();
+		LongStream.rangeClosed(1, 1500).forEach(id -> returnedByLoan.put(id, true));
+		LongStream.rangeClosed(1501, 2700).forEach(id -> returnedByLoan.put(id, false));
+		
+		when(loanRepository.findIdsByIdIn(Mockito.anyList())).then(AdditionalAnswers.returnsFirstArg());
+		when(bookRepository.findActiveLoanIdsIn(Mockito.anyList())).then(AdditionalAnswers.returnsFirstArg());
+		
+		assertThat(loanService.updateReturnedBooks(returnedByLoan)).isEmpty();
+		
+		ArgumentCaptor<List<Long>> loanIds = ArgumentCaptor.forClass(List.class);
+		ArgumentCaptor<List<Long>> returnedIds = ArgumentCaptor.forClass(List.class);
+		ArgumentCaptor<Collection<Long>> reopenedIds = ArgumentCaptor.forClass(Collection.class);
+		ArgumentCaptor<List<Long>> booksReturned = ArgumentCaptor.forClass(List.class);
+		ArgumentCaptor<List<Long>> booksReopened = ArgumentCaptor.forClass(List.class);
+		verify(loanRepository, times(3)).findIdsByIdIn(loanIds.capture());
+		verify(loanRepository, times(2)).updateReturnedByIdIn(returnedIds.capture(), Mockito.eq(true));
+		verify(loanRepository, times(2)).updateReturnedByIdIn(reopenedIds.capture(), Mockito.eq(false));
+		verify(bookRepository, times(2)).markReturnedByLoanIdIn(booksReturned.capture());
+		verify(bookRepository, times(2)).markReopenedByLoanIdIn(booksReopened.capture());
+		assertThat(loanIds.getAllValues()).extracting(List::size).containsExactly(1000, 1000, 700);
+		assertThat(returnedIds.getAllValues()).extracting(List::size).containsExactly(1000, 500);
+		assertThat(reopenedIds.getAllValues()).extracting(Collection::size).containsExactly(1000, 200);
+		assertThat(booksReturned.getAllValues()).extracting(List::size).containsExactly(1000, 500);
+		assertThat(booksReopened.getAllValues()).extracting(List::size).containsExactly(1000, 200);
 	}
 	
 	@Test
@@ -115,52 +256,128 @@ public class LoanServiceTest {
 	@Test
 	@DisplayName("Deve atualizaro o status do emprestimo")
 	void updateReturnedBook() throws Exception {
-
-		Loan loan = loanBuilder().build();
-		loan.setReturned(false);
 		
-		when(loanRepository.findById(loan.getId())).thenReturn(Optional.of(loan));
-		when(loanRepository.save(Mockito.any(Loan.class))).then(AdditionalAnswers.returnsFirstArg());		
+		when(loanRepository.updateReturned(1l, true, 3l)).thenReturn(1);
+		
+		assertThat(loanService.updateReturnedBook(1l, true, 3l)).isTrue();
+		
+		verify(bookRepository).markReturned(1l);
+		verify(loanRepository, never()).findById(any());
+		verify(loanRepository, never()).save(any());
+	}
+	
+	@Test
+	@DisplayName("Deve desfazer a devolução apenas se o livro não tiver sido emprestado de novo")
+	void undoReturnedBookAlreadyLoaned() throws Exception {
 		
-		Loan retornedLoan = loanService.updateReturnedBook(loan.getId(), true);
+		when(loanRepository.updateReturned(1l, false, null)).thenReturn(1);
+		when(bookRepository.markReopened(1l)).thenReturn(0);
 		
-		assertThat(retornedLoan).isNotNull();
-		assertThat(retornedLoan.getId()).isEqualTo(loan.getId());
-		assertThat(retornedLoan.getReturned()).isTrue();
+		Throwable exception = Assertions.catchThrowable(() -> loanService.updateReturnedBook(1l, false, null));
 		
-		verify(loanRepository, times(1)).save(loan);
+		assertThat(exception).isInstanceOf(BusinessException.class)
+							 .hasMessage("Book already loaned.");
 	}
 	
 	@Test
+	@DisplayName("Deve informar que o empréstimo não existe pela quantidade de linhas alteradas")
 	void updateReturnedBookNotFound() throws Exception {
-		Throwable exception = Assertions.catchThrowable(() -> loanService.updateReturnedBook(899l, true));
-		assertThat(exception).isInstanceOf(BusinessException.class)
-							 .hasMessage("Empréstimo não encontrado!");
 		
+		assertThat(loanService.updateReturnedBook(899l, true, null)).isFalse();
+		
+		verify(loanRepository, never()).existsById(any());
+		verify(bookRepository, never()).markReturned(any());
+	}
+	
+	@Test
+	@DisplayName("Deve recusar a devolução quando o empréstimo estiver em outra versão")
+	void updateReturnedBookVersionMismatch() throws Exception {
+		
+		when(loanRepository.existsById(1l)).thenReturn(true);
+		
+		Throwable exception = Assertions.catchThrowable(() -> loanService.updateReturnedBook(1l, true, 2l));
+		
+		assertThat(exception).isInstanceOf(OptimisticLockingFailureException.class);
+		verify(bookRepository, never()).markReturned(any());
 	}
 	
 	@Test
 	@DisplayName("Deve filtrar empréstimos pelas propriedades")
 	void filterLoansByProperties () throws Exception {
 		
-		Loan loan = loanBuilder().build();
 		LoanFilterDTO loanFilterDTO = LoanFilterDTO.builder().custumer("Renato").isbn("123").build();
 		
 		PageRequest pageRequest = PageRequest.of(0, 10);
-		List<Loan> list = Arrays.asList(loan);
-		
-		Page<Loan> page = new PageImpl<Loan>(list, pageRequest , 1);
+		List<LoanView> list = Arrays.asList(loanView(1l));
 		
-		when(loanRepository.findByBookIsbnOrCustomer(anyString(), anyString(), any(Pageable.class))).thenReturn(page);
+		when(bookRepository.findIdByIsbn("123")).thenReturn(Optional.of(1l));
+		when(loanRepository.findIdsByBookOrCustomer(1l, "Renato", 11, 0)).thenReturn(Arrays.asList(1l));
+		when(loanRepository.findViewsByIdIn(Arrays.asList(1l))).thenReturn(list);
 		
-		Page<Loan> loansPage = loanService.find(loanFilterDTO, pageRequest);
+		Page<LoanView> loansPage = loanService.find(loanFilterDTO, pageRequest);
 		
 		assertThat(loansPage.getTotalElements()).isEqualTo(1);
 		assertThat(loansPage.getContent()).isEqualTo(list);
 		assertThat(loansPage.getPageable().getPageNumber()).isEqualTo(0);
 		assertThat(loansPage.getPageable().getPageSize()).isEqualTo(10);
+		verify(loanRepository, never()).countByBookOrCustomer(any(), anyString());
 	}
 	
+	@Test
+	@DisplayName("Deve reaproveitar o total de empréstimos do filtro enquanto estiver no cache")
+	void filterLoansReusesCachedTotal() throws Exception {
+		
+		LoanFilterDTO loanFilterDTO = LoanFilterDTO.builder().custumer("Renato").isbn("123").build();
+		PageRequest pageRequest = PageRequest.of(0, 1);
+		when(bookRepository.findIdByIsbn("123")).thenReturn(Optional.of(1l));
+		when(loanRepository.findIdsByBookOrCustomer(1l, "Renato", 2, 0)).thenReturn(Arrays.asList(1l, 2l));
+		when(loanRepository.findViewsByIdIn(Arrays.asList(1l))).thenReturn(Arrays.asList(loanView(1l)));
+		when(loanRepository.countByBookOrCustomer(1l, "Renato")).thenReturn(3l);
+		
+		loanService.find(loanFilterDTO, pageRequest);
+		Page<LoanView> loansPage = loanService.find(loanFilterDTO, pageRequest);
+		
+		assertThat(loansPage.getTotalElements()).isEqualTo(3);
+		assertThat(loansPage.hasNext()).isTrue();
+		verify(loanRepository, times(1)).countByBookOrCustomer(1l, "Renato");
+	}
+	
+	@Test
+	@DisplayName("Deve avançar os empréstimos avisados para o nível de atraso atingido")
+	void markNotified() throws Exception {
+		
+		LocalDate today = LocalDate.now();
+		Loan firstLevel = loanBuilder().id(1l).loanDate(today.minusDays(5)).build();
+		Loan skippedLevel = loanBuilder().id(2l).loanDate(today.minusDays(12)).build();
+		Loan lastLevel = loanBuilder().id(3l).loanDate(today.minusDays(40)).build();
+		
+		when(loanRepository.findAllById(Arrays.asList(1l, 2l, 3l))).thenReturn(Arrays.asList(firstLevel, skippedLevel, lastLevel));
+		
+		loanService.markNotified(Arrays.asList(1l, 2l, 3l), today);
+		
+		assertThat(firstLevel.getNotificationLevel()).isEqualTo(1);
+		assertThat(firstLevel.getNextNotificationDate()).isEqualTo(today.plusDays(6));
+		assertThat(firstLevel.getNotifiedAt()).isNotNull();
+		assertThat(skippedLevel.getNotificationLevel()).isEqualTo(2);
+		assertThat(skippedLevel.getNextNotificationDate()).isEqualTo(today.plusDays(19));
+		assertThat(lastLevel.getNotificationLevel()).isEqualTo(3);
+		assertThat(lastLevel.getNextNotificationDate()).isNull();
+	}
+	
+	@Test
+	@DisplayName("Deve buscar os empréstimos a avisar apenas dos clientes do lote")
+	void getLoansToNotify() throws Exception {
+		
+		LocalDate today = LocalDate.now();
+		when(loanRepository.findCustomersToNotify(today, "", PageRequest.of(0, 2))).thenReturn(Arrays.asList("a@email.com", "b@email.com"));
+		when(loanRepository.findCustomersToNotify(today, "b@email.com", PageRequest.of(0, 2))).thenReturn(Arrays.asList("c@email.com"));
+		
+		loanService.getLoansToNotify(today, null, 2);
+		loanService.getLoansToNotify(today, "b@email.com", 2);
+		
+		verify(loanRepository).findLoansToNotify(Arrays.asList("a@email.com", "b@email.com"), today);
+		verify(loanRepository).findLoansToNotify(Arrays.asList("c@email.com"), today);
+	}
 	
 	private LoanBuilder loanBuilder() {
 		return Loan.builder().id(1l)
@@ -169,4 +386,8 @@ public class LoanServiceTest {
 								  .loanDate(LocalDate.now());
 	}
 	
+	private LoanView loanView(Long id) {
+		return new SpelAwareProxyProjectionFactory().createProjection(LoanView.class, Collections.singletonMap("id", id));
+	}
+	
 }
@@ -0,0 +1,132 @@
+package br.com.renatoschlogel.libraryapi.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Consumer;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mockito;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import br.com.renatoschlogel.libraryapi.model.repository.LateLoanView;
+
+@ExtendWith(SpringExtension.class)
+@ActiveProfiles("test")
+public class ScheduleServiceTest {
+
+	private ScheduleService scheduleService;
+
+	@MockBean
+	private LoanService loanService;
+
+	@MockBean
+	private EmailService emailService;
+
+	@BeforeEach
+	public void setUp() {
+		scheduleService = new ScheduleService(loanService, emailService);
+		ReflectionTestUtils.setField(scheduleService, "messageLateLoans", "Atraso");
+		ReflectionTestUtils.setField(scheduleService, "chunkSize", 2);
+	}
+
+	@Test
+	@DisplayName("Deve enviar um único e-mail por cliente e marcar os empréstimos como avisados ao confirmar cada envio")
+	void sendOneMailPerCustomer() throws Exception {
+		LocalDate today = LocalDate.now();
+		when(loanService.getLoansToNotify(today, null, 2)).thenReturn(Arrays.asList(lateLoan(1l, "a@email.com", "Clean Code"), 
+																					 lateLoan(4l, "a@email.com", "Refactoring"),
+																					 lateLoan(2l, "b@email.com", "TDD")));
+		when(loanService.getLoansToNotify(today, "b@email.com", 2)).thenReturn(Arrays.asList(lateLoan(3l, "c@email.com", "DDD")));
+		doAnswer(invocation -> {
+			List<MailRecipient> sent = invocation.getArgument(1);
+			Consumer<MailRecipient> onSent = invocation.getArgument(2);
+			sent.forEach(onSent);
+			return null;
+		}).when(emailService).sendMails(Mockito.eq("Atraso"), anyList(), any());
+
+		scheduleService.sendMaisToLoans();
+
+		ArgumentCaptor<List<MailRecipient>> recipients = recipientsCaptor();
+		verify(emailService, Mockito.times(2)).sendMails(Mockito.eq("Atraso"), recipients.capture(), any());
+		assertThat(recipients.getAllValues().get(0)).extracting(MailRecipient::getEmail).containsExactly("a@email.com", "b@email.com");
+		assertThat(recipients.getAllValues().get(0).get(0).getVariables()).containsEntry("customer", "Cliente 1")
+																		   .containsEntry("count", "2")
+																		   .containsEntry("books", "Clean Code, Refactoring")
+																		   .containsEntry("loans", "1, 4");
+		assertThat(recipients.getAllValues().get(1)).extracting(MailRecipient::getEmail).containsExactly("c@email.com");
+
+		verify(loanService).markNotified(Arrays.asList(1l, 4l), today);
+		verify(loanService).markNotified(Arrays.asList(2l), today);
+		verify(loanService).markNotified(Arrays.asList(3l), today);
+	}
+
+	@Test
+	@DisplayName("Não deve marcar como avisados os empréstimos cujo envio não foi confirmado")
+	void keepUnsentLoansPending() throws Exception {
+		LocalDate today = LocalDate.now();
+		when(loanService.getLoansToNotify(today, null, 2)).thenReturn(Arrays.asList(lateLoan(1l, "a@email.com", "Clean Code")));
+
+		scheduleService.sendMaisToLoans();
+
+		verify(emailService).sendMails(Mockito.eq("Atraso"), anyList(), any());
+		verify(loanService, never()).markNotified(anyList(), any());
+	}
+
+	@Test
+	@DisplayName("Não deve enviar e-mails quando nenhum empréstimo atingiu um novo nível de atraso")
+	void nothingToNotify() throws Exception {
+		when(loanService.getLoansToNotify(LocalDate.now(), null, 2)).thenReturn(Collections.emptyList());
+
+		scheduleService.sendMaisToLoans();
+
+		verify(emailService, never()).sendMails(any(), anyList(), any());
+		verify(loanService, never()).markNotified(anyList(), any());
+	}
+
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	private ArgumentCaptor<List<MailRecipient>> recipientsCaptor() {
+		return (ArgumentCaptor) ArgumentCaptor.forClass(List.class);
+	}
+
+	private LateLoanView lateLoan(Long id, String customerEmail, String bookTitle) {
+		return new LateLoanView() {
+
+			@Override
+			public Long getId() {
+				return id;
+			}
+
+			@Override
+			public String getCustomer() {
+				return "Cliente " + id;
+			}
+
+			@Override
+			public String getCustomerEmail() {
+				return customerEmail;
+			}
+
+			@Override
+			public String getBookTitle() {
+				return bookTitle;
+			}
+		};
+	}
+}
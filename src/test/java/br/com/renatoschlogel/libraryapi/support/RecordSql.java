@@ -0,0 +1,22 @@
+package br.com.renatoschlogel.libraryapi.support;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+import org.springframework.context.annotation.Import;
+
+/**
+ * Liga o {@link br.com.renatoschlogel.libraryapi.config.SqlRecorder} nos testes de fatia, como o
+ * {@code @DataJpaTest}, que não carregam a configuração da aplicação. Os testes com
+ * {@code @SpringBootTest} já têm o recorder e não precisam desta anotação.
+ */
+@Target(ElementType.TYPE)
+@Retention(RetentionPolicy.RUNTIME)
+@Documented
+@Import(SqlRecordingConfig.class)
+public @interface RecordSql {
+
+}
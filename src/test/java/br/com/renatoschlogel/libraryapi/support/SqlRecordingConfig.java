@@ -0,0 +1,22 @@
+package br.com.renatoschlogel.libraryapi.support;
+
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Import;
+
+import br.com.renatoschlogel.libraryapi.config.SqlRecorder;
+import br.com.renatoschlogel.libraryapi.config.SqlRecorderConfig;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+@TestConfiguration
+@Import({ SqlRecorderConfig.class, SqlRecorder.class })
+class SqlRecordingConfig {
+
+	/** Os testes de fatia não têm as métricas configuradas; o recorder registra nelas ao encerrar cada trecho. */
+	@Bean
+	MeterRegistry meterRegistry() {
+		return new SimpleMeterRegistry();
+	}
+
+}
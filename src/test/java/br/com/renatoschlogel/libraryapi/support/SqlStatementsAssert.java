@@ -0,0 +1,134 @@
+package br.com.renatoschlogel.libraryapi.support;
+
+import java.util.Locale;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import org.assertj.core.api.AbstractAssert;
+import org.assertj.core.api.ThrowableAssert.ThrowingCallable;
+
+import br.com.renatoschlogel.libraryapi.config.SqlRecorder;
+import br.com.renatoschlogel.libraryapi.config.SqlStatistics;
+
+/**
+ * Orçamento de comandos SQL de um trecho do teste, para que uma consulta a mais por linha (N+1) ou um
+ * {@code findById} extra quebre o teste em vez de chegar em produção.
+ *
+ * <pre>
+ * assertThatSql(sqlRecorder, () -&gt; bookRepository.findById(id)).hasSelects(1).hasNoWrites();
+ * </pre>
+ *
+ * <p>Cada execução conta como um comando, inclusive um lote JDBC inteiro. Como as consultas disparam o
+ * flush do que estiver pendente, os testes devem chamar {@code flush()} antes do trecho medido.</p>
+ */
+public class SqlStatementsAssert extends AbstractAssert<SqlStatementsAssert, SqlStatistics> {
+
+	private SqlStatementsAssert(SqlStatistics statistics) {
+		super(statistics, SqlStatementsAssert.class);
+	}
+
+	/**
+	 * Executa o trecho registrando os comandos SQL emitidos por ele na thread atual.
+	 */
+	public static SqlStatementsAssert assertThatSql(SqlRecorder sqlRecorder, ThrowingCallable callable) {
+		SqlStatistics statistics = sqlRecorder.begin();
+		try {
+			callable.call();
+		} catch (RuntimeException | Error e) {
+			throw e;
+		} catch (Throwable e) {
+			throw new IllegalStateException(e);
+		} finally {
+			sqlRecorder.end(statistics, "test", "assertThatSql");
+		}
+		return new SqlStatementsAssert(statistics);
+	}
+
+	public SqlStatementsAssert hasStatements(int expected) {
+		return hasCount("comandos", actual.getStatements(), expected);
+	}
+
+	public SqlStatementsAssert hasSelects(int expected) {
+		return hasCount("selects", count("select"), expected);
+	}
+
+	public SqlStatementsAssert hasInserts(int expected) {
+		return hasCount("inserts", count("insert"), expected);
+	}
+
+	public SqlStatementsAssert hasUpdates(int expected) {
+		return hasCount("updates", count("update"), expected);
+	}
+
+	public SqlStatementsAssert hasDeletes(int expected) {
+		return hasCount("deletes", count("delete"), expected);
+	}
+
+	/**
+	 * Os ids saem de blocos da sequência guardados em memória, então a chamada só acontece quando o bloco
+	 * acaba e o total exato depende dos testes anteriores; o orçamento é um limite, e não uma contagem.
+	 * No primeiro uso de cada gerador o Hibernate chama a sequência duas vezes.
+	 */
+	public SqlStatementsAssert hasSequenceCallsAtMost(int max) {
+		isNotNull();
+		int count = count("sequence");
+		if (count > max) {
+			failWithMessage("Esperava no máximo %d chamadas de sequência, mas foram %d. Comandos executados:%n%s", max, count, describe());
+		}
+		return this;
+	}
+
+	public SqlStatementsAssert hasNoWrites() {
+		return hasInserts(0).hasUpdates(0).hasDeletes(0);
+	}
+
+	/**
+	 * Nenhum comando idêntico executado mais de uma vez.
+	 */
+	public SqlStatementsAssert hasNoRepeatedStatements() {
+		isNotNull();
+		Map<String, Integer> repeated = actual.getRepeated(2);
+		if (!repeated.isEmpty()) {
+			failWithMessage("Esperava nenhum comando repetido, mas foram repetidos:%n%s", repeated);
+		}
+		return this;
+	}
+
+	private SqlStatementsAssert hasCount(String description, int count, int expected) {
+		isNotNull();
+		if (count != expected) {
+			failWithMessage("Esperava %d %s, mas foram %d. Comandos executados:%n%s", expected, description, count, describe());
+		}
+		return this;
+	}
+
+	private int count(String kind) {
+		return actual.getExecutionsBySql()
+					 .entrySet()
+					 .stream()
+					 .filter(entry -> kind.equals(kindOf(entry.getKey())))
+					 .mapToInt(Map.Entry::getValue)
+					 .sum();
+	}
+
+	private String kindOf(String sql) {
+		String statement = sql.trim().toLowerCase(Locale.ROOT);
+		if (statement.contains("next value for") || statement.contains("nextval(")) {
+			return "sequence";
+		}
+		if (statement.startsWith("with") || statement.startsWith("(")) {
+			return "select";
+		}
+		int end = statement.indexOf(' ');
+		return end < 0 ? statement : statement.substring(0, end);
+	}
+
+	private String describe() {
+		return actual.getExecutionsBySql()
+					 .entrySet()
+					 .stream()
+					 .map(entry -> entry.getValue() + "x " + entry.getKey())
+					 .collect(Collectors.joining(System.lineSeparator()));
+	}
+
+}